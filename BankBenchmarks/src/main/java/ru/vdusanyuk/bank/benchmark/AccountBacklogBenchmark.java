@@ -0,0 +1,71 @@
+package ru.vdusanyuk.bank.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.vdusanyuk.bank.dao.VersionClock;
+import ru.vdusanyuk.bank.dao.model.Account;
+import ru.vdusanyuk.bank.dao.model.OperationResult;
+import ru.vdusanyuk.bank.dao.model.Transfer;
+import ru.vdusanyuk.bank.dao.model.TransferStatus;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH suite for {@link Account} balance read and withdraw validation on a hot account with a pending backlog
+ * of the given size. The latency is expected to stay flat while the backlog grows
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Dlog4j.configuration=log4j-bench.properties"})
+public class AccountBacklogBenchmark {
+
+    private static final long INITIAL_BALANCE = 1_000_000L;
+
+    /**
+     * number of pending transfers on the account
+     */
+    @Param({"0", "100", "1000", "10000"})
+    int backlog;
+
+    private Account account;
+    private Account counterparty;
+
+    @Setup
+    public void setUp() {
+        account = new Account(1L, INITIAL_BALANCE);
+        counterparty = new Account(2L, INITIAL_BALANCE);
+        for (int i = 0; i < backlog; i++) {
+            Transfer transfer = new Transfer(i + 1, counterparty, account, 1L);
+            counterparty.addPendingTransaction(transfer, true);
+            account.addPendingTransaction(transfer, false);
+            counterparty.commitPendingTransaction(transfer, true, i + 1, VersionClock.NO_PINNED_VERSION);
+            account.commitPendingTransaction(transfer, false, i + 1, VersionClock.NO_PINNED_VERSION);
+            transfer.setStatus(TransferStatus.PENDING);
+        }
+    }
+
+    @Benchmark
+    public long getBalance() {
+        return account.getBalance();
+    }
+
+    /**
+     * withdraw exceeding the balance: full validation path, but the backlog is not changed
+     */
+    @Benchmark
+    public OperationResult validateWithdraw() {
+        return account.addPendingTransaction(new Transfer(0L, account, counterparty, Long.MAX_VALUE), true);
+    }
+}
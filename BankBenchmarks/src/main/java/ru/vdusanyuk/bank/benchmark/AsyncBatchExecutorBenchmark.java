@@ -0,0 +1,72 @@
+package ru.vdusanyuk.bank.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.vdusanyuk.bank.util.AsyncBatchExecutor;
+import ru.vdusanyuk.bank.util.BatchSettings;
+import ru.vdusanyuk.bank.util.BatchingMode;
+import ru.vdusanyuk.bank.util.QueueType;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * JMH suite for enqueue path of {@link AsyncBatchExecutor}: producers add items, the batch task only consumes them.
+ * A fresh executor is created for every iteration and stopped after it, so the not yet processed backlog is dropped
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g", "-Dlog4j.configuration=log4j-bench.properties"})
+public class AsyncBatchExecutorBenchmark {
+
+    /**
+     * batch collecting mode of the executor
+     */
+    @Param({"FIXED", "ADAPTIVE"})
+    BatchingMode mode;
+
+    /**
+     * queue implementation, RING uses overflow policy from application.properties
+     */
+    @Param({"LINKED", "RING"})
+    QueueType queue;
+
+    private AsyncBatchExecutor<Long> executor;
+
+    /**
+     * number of items consumed by batch task, keeps the task from being optimized away
+     */
+    private final LongAdder processedItems = new LongAdder();
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        BatchSettings settings = BatchSettings.fromProperties("bank.batch");
+        settings.setMode(mode);
+        settings.setQueueType(queue);
+        executor = new AsyncBatchExecutor<>(batch -> processedItems.add(batch.size()), settings);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Benchmark
+    public boolean addProcessingItem() {
+        return executor.addProcessingItem(System.nanoTime());
+    }
+}
@@ -0,0 +1,82 @@
+package ru.vdusanyuk.bank.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.vdusanyuk.bank.dao.BankHolder;
+import ru.vdusanyuk.bank.dao.model.OperationResult;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH suite for the single operations of {@link BankHolder}: submit transfer, read account and read total balance.
+ * Bank is re-initialized for every iteration, so the backlog of the previous iteration does not leak into the next one
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g", "-Dlog4j.configuration=log4j-bench.properties"})
+public class BankHolderBenchmark {
+
+    /**
+     * number of accounts in the bank
+     */
+    @Param({"10", "1000", "100000"})
+    int accountCount;
+
+    /**
+     * BankHolder locking mode, applied before the bank singleton is created in the forked JVM
+     */
+    @Param({"GLOBAL", "ACCOUNT", "SHARDED"})
+    String lockingMode;
+
+    private BankHolder bankHolder;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() {
+        System.setProperty("bank.lockingMode", lockingMode);
+    }
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        bankHolder = BankHolder.getInstance();
+        bankHolder.initBankAccounts(accountCount);
+    }
+
+    @Benchmark
+    public OperationResult submitTransfer() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long from = randomAccount(random);
+        long to = randomAccount(random);
+        if (from == to) {
+            to = to % accountCount + 1;
+        }
+        return bankHolder.submitTransfer(from, to, random.nextInt(1, 10));
+    }
+
+    @Benchmark
+    public OperationResult getAccount() {
+        return bankHolder.getAccount(randomAccount(ThreadLocalRandom.current()));
+    }
+
+    @Benchmark
+    public Long getTotalBalance() {
+        return bankHolder.getTotalBalance();
+    }
+
+    private long randomAccount(ThreadLocalRandom random) {
+        return random.nextInt(accountCount) + 1;
+    }
+}
@@ -0,0 +1,79 @@
+package ru.vdusanyuk.bank.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.vdusanyuk.bank.dao.BankHolder;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH suite for mixed load on {@link BankHolder}: every operation is a transfer with probability of writePercent,
+ * otherwise it is an account balance read. Each thousandth read asks for the total balance
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g", "-Dlog4j.configuration=log4j-bench.properties"})
+public class BankReadWriteMixBenchmark {
+
+    private static final int TOTAL_READ_RATE = 1000;
+
+    /**
+     * number of accounts in the bank
+     */
+    @Param({"10", "1000", "100000"})
+    int accountCount;
+
+    /**
+     * BankHolder locking mode, applied before the bank singleton is created in the forked JVM
+     */
+    @Param({"GLOBAL", "ACCOUNT", "SHARDED"})
+    String lockingMode;
+
+    /**
+     * share of transfers among all operations, in percents
+     */
+    @Param({"0", "10", "50", "90"})
+    int writePercent;
+
+    private BankHolder bankHolder;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() {
+        System.setProperty("bank.lockingMode", lockingMode);
+    }
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        bankHolder = BankHolder.getInstance();
+        bankHolder.initBankAccounts(accountCount);
+    }
+
+    @Benchmark
+    public Object readWriteMix() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int dice = random.nextInt(100 * TOTAL_READ_RATE);
+        if (dice < writePercent * TOTAL_READ_RATE) {
+            long from = random.nextInt(accountCount) + 1;
+            long to = from % accountCount + 1;
+            return bankHolder.submitTransfer(from, to, random.nextInt(1, 10));
+        }
+        if (dice % TOTAL_READ_RATE == 0) {
+            return bankHolder.getTotalBalance();
+        }
+        return bankHolder.getAccount((long) random.nextInt(accountCount) + 1);
+    }
+}
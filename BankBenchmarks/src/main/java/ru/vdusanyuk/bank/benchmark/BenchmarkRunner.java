@@ -0,0 +1,36 @@
+package ru.vdusanyuk.bank.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Arrays;
+
+/**
+ * Runs the bank benchmarks once per requested thread count with GC profiler, so allocation rate
+ * (gc.alloc.rate.norm) is reported next to throughput.
+ * Usage: java -jar bank-benchmarks.jar [benchmark regexp] [comma separated thread counts], e.g.
+ * java -jar bank-benchmarks.jar BankHolderBenchmark 1,4,8
+ */
+public class BenchmarkRunner {
+
+    private static final String DEFAULT_INCLUDE = "ru.vdusanyuk.bank.benchmark.*";
+    private static final String DEFAULT_THREADS = "1,4,8";
+
+    public static void main(String[] args) throws RunnerException {
+        String include = args != null && args.length > 0 ? args[0] : DEFAULT_INCLUDE;
+        String threads = args != null && args.length > 1 ? args[1] : DEFAULT_THREADS;
+
+        int[] threadCounts = Arrays.stream(threads.split(",")).mapToInt(t -> Integer.parseInt(t.trim())).toArray();
+        for (int threadCount : threadCounts) {
+            Options options = new OptionsBuilder()
+                    .include(include)
+                    .threads(threadCount)
+                    .addProfiler(GCProfiler.class)
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
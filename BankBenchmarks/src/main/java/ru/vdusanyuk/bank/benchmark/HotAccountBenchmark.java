@@ -0,0 +1,70 @@
+package ru.vdusanyuk.bank.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.vdusanyuk.bank.dao.BankHolder;
+import ru.vdusanyuk.bank.dao.model.OperationResult;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH suite for transfers to one hot destination (account 1), with and without bank.hotAccounts:
+ * 90% of transfers deposit 1 to the hot account, 10% withdraw 9 from it, so the money keeps flowing.
+ * Bank is re-initialized for every iteration
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g", "-Dlog4j.configuration=log4j-bench.properties"})
+public class HotAccountBenchmark {
+
+    private static final long HOT_ACCOUNT = 1L;
+
+    @Param({"1000"})
+    int accountCount;
+
+    @Param({"GLOBAL", "ACCOUNT"})
+    String lockingMode;
+
+    /**
+     * true to declare the destination account hot, applied before the bank singleton is created in the forked JVM
+     */
+    @Param({"false", "true"})
+    boolean hotAccount;
+
+    private BankHolder bankHolder;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() {
+        System.setProperty("bank.lockingMode", lockingMode);
+        System.setProperty("bank.hotAccounts", hotAccount ? String.valueOf(HOT_ACCOUNT) : "");
+    }
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        bankHolder = BankHolder.getInstance();
+        bankHolder.initBankAccounts(accountCount);
+    }
+
+    @Benchmark
+    public OperationResult submitTransfer() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long other = random.nextInt(accountCount - 1) + HOT_ACCOUNT + 1;
+        return random.nextInt(10) > 0 ?
+               bankHolder.submitTransfer(other, HOT_ACCOUNT, 1) :
+               bankHolder.submitTransfer(HOT_ACCOUNT, other, 9);
+    }
+}
@@ -0,0 +1,101 @@
+package ru.vdusanyuk.bank.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.vdusanyuk.bank.json.ServiceResponse;
+import ru.vdusanyuk.bank.json.TransferRequest;
+import ru.vdusanyuk.bank.rest.ServiceResponseWriter;
+import ru.vdusanyuk.bank.rest.TransferRequestReader;
+
+import javax.ws.rs.core.MediaType;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH suite of transfer request/response JSON encoding: the hand-written providers
+ * {@link ServiceResponseWriter} and {@link TransferRequestReader} against Jackson data binding
+ * which is used by Jersey JSON provider. Run it with GC profiler to compare gc.alloc.rate.norm
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g", "-Dlog4j.configuration=log4j-bench.properties"})
+public class JsonCodecBenchmark {
+
+    private static final byte[] REQUEST =
+            "{\"fromAccountNumber\":1234,\"toAccountNumber\":5678,\"amount\":100}".getBytes(StandardCharsets.UTF_8);
+
+    private final ServiceResponseWriter writer = new ServiceResponseWriter();
+    private final TransferRequestReader reader = new TransferRequestReader();
+    private ObjectWriter jacksonWriter;
+    private ObjectReader jacksonReader;
+
+    private ServiceResponse response;
+    /**
+     * counts written bytes, so the output is not optimized away and is not accumulated
+     */
+    private final CountingOutputStream output = new CountingOutputStream();
+
+    @Setup
+    public void setUp() {
+        ObjectMapper mapper = new ObjectMapper();
+        jacksonWriter = mapper.writerFor(ServiceResponse.class);
+        jacksonReader = mapper.readerFor(TransferRequest.class);
+        response = new ServiceResponse("SUCCESS", null, 1234L, 987654321L);
+        response.setTransferId(123456789L);
+    }
+
+    @Benchmark
+    public long writeCustom() throws IOException {
+        writer.writeTo(response, ServiceResponse.class, ServiceResponse.class, null, MediaType.APPLICATION_JSON_TYPE,
+                       null, output);
+        return output.count;
+    }
+
+    @Benchmark
+    public long writeJackson() throws IOException {
+        jacksonWriter.writeValue(output, response);
+        return output.count;
+    }
+
+    @Benchmark
+    public TransferRequest readCustom() throws IOException {
+        return reader.readFrom(TransferRequest.class, TransferRequest.class, null, MediaType.APPLICATION_JSON_TYPE,
+                               null, new ByteArrayInputStream(REQUEST));
+    }
+
+    @Benchmark
+    public TransferRequest readJackson() throws IOException {
+        return jacksonReader.readValue(new ByteArrayInputStream(REQUEST));
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package ru.vdusanyuk.bank.benchmark;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+import org.glassfish.jersey.jetty.JettyHttpContainer;
+import org.glassfish.jersey.server.ContainerFactory;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import ru.vdusanyuk.bank.Connectors;
+import ru.vdusanyuk.bank.VirtualThreadPool;
+import ru.vdusanyuk.bank.dao.BankHolder;
+import ru.vdusanyuk.bank.metrics.Histogram;
+import ru.vdusanyuk.bank.rest.EntryPoint;
+import ru.vdusanyuk.bank.rest.ServiceResponseWriter;
+import ru.vdusanyuk.bank.rest.TransferRequestReader;
+import ru.vdusanyuk.bank.util.ThreadMode;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH suite comparing request threads of the REST server (server.threadMode): bounded pool of platform threads
+ * against virtual thread per request, with the given number of keep-alive connections sending transfers at once.
+ * Every invocation sends one transfer on each connection of the benchmark thread and waits for all responses,
+ * the connections are split between benchmark threads. Throughput is reported as requests per second,
+ * p99 of request latency is printed after every iteration.
+ * VIRTUAL mode needs Java 21 or later, e.g.
+ * java -jar bank-benchmarks.jar RequestThreadsBenchmark 1 (with Java 21 on the path);
+ * every connection takes a file descriptor on both client and server side
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g", "-Dlog4j.configuration=log4j-bench.properties"})
+public class RequestThreadsBenchmark {
+
+    private static final int ACCOUNT_COUNT = 1000;
+    /**
+     * platform thread pool settings of application.properties
+     */
+    private static final int MAX_THREADS = 100;
+    private static final int MIN_THREADS = 10;
+    private static final int IDLE_TIMEOUT = 120;
+    private static final long RESPONSE_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    @Param({"PLATFORM", "VIRTUAL"})
+    String threadMode;
+
+    @Param({"10000"})
+    int connections;
+
+    private Server server;
+    private int port;
+    private Histogram latency;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        BankHolder.getInstance().initBankAccounts(ACCOUNT_COUNT);
+        ThreadPool threadPool = ThreadMode.valueOf(threadMode) == ThreadMode.VIRTUAL ?
+                                new VirtualThreadPool() :
+                                new QueuedThreadPool(MAX_THREADS, MIN_THREADS, IDLE_TIMEOUT);
+        server = new Server(threadPool);
+        ServerConnector connector = Connectors.http(server, 0);
+        //all the connections are opened at once
+        connector.setAcceptQueueSize(connections);
+        server.addConnector(connector);
+        server.setHandler(ContainerFactory.createContainer(JettyHttpContainer.class,
+                new ResourceConfig(EntryPoint.class, ServiceResponseWriter.class, TransferRequestReader.class)));
+        server.start();
+        port = connector.getLocalPort();
+    }
+
+    @Setup(Level.Iteration)
+    public void setUpIteration() {
+        latency = new Histogram();
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDownIteration() {
+        Histogram.Snapshot snapshot = latency.snapshot();
+        System.out.printf("%n%s request latency, us: p50 = %d, p99 = %d, max = %d (%d requests)%n", threadMode,
+                          TimeUnit.NANOSECONDS.toMicros(snapshot.valueAtQuantile(0.5)),
+                          TimeUnit.NANOSECONDS.toMicros(snapshot.valueAtQuantile(0.99)),
+                          TimeUnit.NANOSECONDS.toMicros(snapshot.getMax()), snapshot.getCount());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        server.stop();
+    }
+
+    /**
+     * connections of benchmark thread, served by one selector; requests completed are reported as operations
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Client {
+        public long requests;
+
+        private Selector selector;
+        private Connection[] connections;
+
+        @Setup(Level.Trial)
+        public void setUp(RequestThreadsBenchmark benchmark, BenchmarkParams params) throws IOException {
+            selector = Selector.open();
+            connections = new Connection[Math.max(benchmark.connections / params.getThreads(), 1)];
+            for (int i = 0; i < connections.length; i++) {
+                SocketChannel channel = SocketChannel.open(new InetSocketAddress("localhost", benchmark.port));
+                channel.configureBlocking(false);
+                connections[i] = new Connection(channel);
+                channel.register(selector, SelectionKey.OP_READ, connections[i]);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            for (Connection connection : connections) {
+                connection.channel.close();
+            }
+            selector.close();
+        }
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            requests = 0;
+        }
+    }
+
+    @Benchmark
+    public int transferOnEveryConnection(Client client) throws IOException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (Connection connection : client.connections) {
+            long from = random.nextInt(ACCOUNT_COUNT) + 1;
+            long to = (from + random.nextInt(1, ACCOUNT_COUNT) - 1) % ACCOUNT_COUNT + 1;
+            connection.send("GET /bankService/transfer?fromAccountNumber=" + from + "&toAccountNumber=" + to
+                            + "&amount=1 HTTP/1.1\r\nHost: localhost\r\n\r\n");
+        }
+        int pending = client.connections.length;
+        long deadline = System.currentTimeMillis() + RESPONSE_TIMEOUT_MILLIS;
+        while (pending > 0) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException(pending + " responses are not received in time");
+            }
+            client.selector.select(100);
+            for (Iterator<SelectionKey> keys = client.selector.selectedKeys().iterator(); keys.hasNext(); ) {
+                Connection connection = (Connection) keys.next().attachment();
+                keys.remove();
+                long sentNanos = connection.sentNanos;
+                if (connection.receive()) {
+                    latency.record(System.nanoTime() - sentNanos);
+                    pending--;
+                }
+            }
+        }
+        client.requests += client.connections.length;
+        return client.connections.length;
+    }
+
+    /**
+     * keep-alive connection with one request in flight
+     */
+    private static final class Connection {
+        private static final byte[] HEADER_END = "\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+        private static final byte[] CONTENT_LENGTH = "content-length:".getBytes(StandardCharsets.US_ASCII);
+        private static final byte[] LAST_CHUNK = "\r\n0\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+        private final SocketChannel channel;
+        private final ByteBuffer response = ByteBuffer.allocate(4096);
+        private long sentNanos;
+
+        private Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        private void send(String request) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(request.getBytes(StandardCharsets.US_ASCII));
+            sentNanos = System.nanoTime();
+            //the request is much smaller than the socket buffer, which is empty between requests
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+
+        /**
+         * read available bytes of the response
+         * @return true if the whole response is received
+         */
+        private boolean receive() throws IOException {
+            if (channel.read(response) < 0) {
+                throw new IllegalStateException("Connection is closed by server");
+            }
+            byte[] bytes = response.array();
+            int length = response.position();
+            int headerEnd = indexOf(bytes, length, HEADER_END, 0);
+            if (headerEnd < 0) {
+                return false;
+            }
+            int contentLength = indexOf(bytes, headerEnd, CONTENT_LENGTH, 0);
+            if (contentLength < 0) {
+                //asynchronous response is chunked, it ends with the last empty chunk
+                if (length < headerEnd + LAST_CHUNK.length
+                        || indexOf(bytes, length, LAST_CHUNK, length - LAST_CHUNK.length) < 0) {
+                    return false;
+                }
+            } else {
+                int bodyLength = 0;
+                for (int i = contentLength + CONTENT_LENGTH.length; bytes[i] != '\r'; i++) {
+                    if (bytes[i] >= '0' && bytes[i] <= '9') {
+                        bodyLength = bodyLength * 10 + bytes[i] - '0';
+                    }
+                }
+                if (length < headerEnd + 4 + bodyLength) {
+                    return false;
+                }
+            }
+            response.clear();
+            return true;
+        }
+
+        /**
+         * position of the pattern, letters of the content are compared in lower case
+         */
+        private static int indexOf(byte[] content, int length, byte[] pattern, int from) {
+            for (int i = from; i <= length - pattern.length; i++) {
+                int matched = 0;
+                while (matched < pattern.length
+                        && Character.toLowerCase(content[i + matched]) == pattern[matched]) {
+                    matched++;
+                }
+                if (matched == pattern.length) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
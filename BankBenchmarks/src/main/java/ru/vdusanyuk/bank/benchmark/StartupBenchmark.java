@@ -0,0 +1,126 @@
+package ru.vdusanyuk.bank.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH suite for startup of the REST server: time from launch of the server jar in a new JVM till the first
+ * served request, with and without AppCDS archive (mvn -Pappcds package).
+ * The server is run by the java of the benchmark JVM, so AppCDS needs the benchmark to be run on Java 13 or later.
+ * The server jar is looked up relative to the working directory, it can be set by -p serverJar=...;
+ * the archive is expected next to it. The output of the last server run is kept in a temporary file
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Dlog4j.configuration=log4j-bench.properties"})
+public class StartupBenchmark {
+
+    private static final long STARTUP_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(60);
+    private static final long POLL_INTERVAL_MILLIS = 2;
+
+    @Param({"BankRestServer/target/bank-rest-server.jar"})
+    String serverJar;
+
+    @Param({"false", "true"})
+    boolean appCds;
+
+    private List<String> command;
+    private File serverOutput;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        File jar = new File(serverJar);
+        if (!jar.isFile()) {
+            throw new IllegalStateException("Server jar is not found: " + jar.getAbsolutePath());
+        }
+        command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        if (appCds) {
+            File archive = new File(serverJar.replaceAll("\\.jar$", ".jsa"));
+            if (!archive.isFile()) {
+                throw new IllegalStateException("AppCDS archive is not found, it is built by mvn -Pappcds package: "
+                                                + archive.getAbsolutePath());
+            }
+            command.add("-XX:SharedArchiveFile=" + archive.getPath());
+        }
+        command.add("-jar");
+        command.add(jar.getPath());
+        serverOutput = Files.createTempFile("bank-startup", ".log").toFile();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.out.println("\nOutput of the last server run: " + serverOutput.getAbsolutePath());
+    }
+
+    @Benchmark
+    public int timeToFirstRequest() throws Exception {
+        List<String> serverCommand = new ArrayList<>(command);
+        int port = freePort();
+        serverCommand.add(String.valueOf(port));
+        Process server = new ProcessBuilder(serverCommand).redirectErrorStream(true)
+                .redirectOutput(serverOutput).start();
+        try {
+            URL url = new URL("http://localhost:" + port + "/bankService/total");
+            long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT_MILLIS;
+            while (System.currentTimeMillis() < deadline) {
+                if (!server.isAlive()) {
+                    throw new IllegalStateException("Server exited with code " + server.exitValue()
+                                                    + ", see " + serverOutput.getAbsolutePath());
+                }
+                try {
+                    return get(url);
+                } catch (IOException e) {
+                    //not listening yet
+                    Thread.sleep(POLL_INTERVAL_MILLIS);
+                }
+            }
+            throw new IllegalStateException("Server is not started in time, see " + serverOutput.getAbsolutePath());
+        } finally {
+            server.destroy();
+            server.waitFor();
+        }
+    }
+
+    private static int get(URL url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        int status = connection.getResponseCode();
+        try (InputStream input = connection.getInputStream()) {
+            while (input.read() >= 0) {
+                //the response is read to the end
+            }
+        }
+        return status;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package ru.vdusanyuk.bank.benchmark;
+
+import jnr.unixsocket.UnixSocketAddress;
+import jnr.unixsocket.UnixSocketChannel;
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpURI;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.http.MetaData;
+import org.eclipse.jetty.http2.api.Session;
+import org.eclipse.jetty.http2.api.Stream;
+import org.eclipse.jetty.http2.client.HTTP2Client;
+import org.eclipse.jetty.http2.frames.DataFrame;
+import org.eclipse.jetty.http2.frames.HeadersFrame;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.FuturePromise;
+import org.eclipse.jetty.util.Promise;
+import org.glassfish.jersey.jetty.JettyHttpContainerFactory;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.vdusanyuk.bank.Connectors;
+import ru.vdusanyuk.bank.dao.BankHolder;
+import ru.vdusanyuk.bank.rest.EntryPoint;
+import ru.vdusanyuk.bank.rest.ServiceResponseWriter;
+import ru.vdusanyuk.bank.rest.TransferRequestReader;
+import ru.vdusanyuk.bank.tcp.BinaryProtocol;
+import ru.vdusanyuk.bank.tcp.TcpTransferClient;
+import ru.vdusanyuk.bank.tcp.TcpTransferServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH suite comparing transfer over REST (HTTP/JSON through Jetty and Jersey, keep-alive connection)
+ * with the binary TCP protocol, one request at a time and pipelined. REST is measured over HTTP/1.1 on TCP,
+ * over h2c with requests multiplexed on one connection and over HTTP/1.1 on Unix domain socket.
+ * Both servers run in the benchmark JVM over the same bank; throughput and sampled latency
+ * percentiles (p0.99 of SampleTime mode) are reported
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g", "-Dlog4j.configuration=log4j-bench.properties"})
+public class TransportBenchmark {
+
+    private static final int ACCOUNT_COUNT = 1000;
+    private static final int REST_PORT = 18090;
+    private static final int PIPELINE_DEPTH = 16;
+
+    private Server restServer;
+    private ServerConnector h2cConnector;
+    private File unixSocket;
+    private TcpTransferServer tcpServer;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        BankHolder bankHolder = BankHolder.getInstance();
+        bankHolder.initBankAccounts(ACCOUNT_COUNT);
+        restServer = JettyHttpContainerFactory.createServer(URI.create("http://localhost:" + REST_PORT + "/"),
+                new ResourceConfig(EntryPoint.class, ServiceResponseWriter.class, TransferRequestReader.class),
+                false);
+        h2cConnector = Connectors.h2c(restServer, 0);
+        restServer.addConnector(h2cConnector);
+        unixSocket = new File(Files.createTempDirectory("bank").toFile(), "bank.sock");
+        restServer.addConnector(Connectors.unixSocket(restServer, unixSocket.getPath()));
+        restServer.start();
+        tcpServer = new TcpTransferServer(bankHolder, 0, 2, 8);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        tcpServer.close();
+        restServer.stop();
+        unixSocket.getParentFile().delete();
+    }
+
+    /**
+     * connections of benchmark thread
+     */
+    @State(Scope.Thread)
+    public static class Client {
+        private TcpTransferClient tcpClient;
+        private long correlationId;
+        private final byte[] body = new byte[1024];
+        private HTTP2Client h2cClient;
+        private Session h2cSession;
+        private UnixSocketChannel unixChannel;
+        private final ByteBuffer unixResponse = ByteBuffer.allocate(1024);
+
+        @Setup(Level.Trial)
+        public void setUp(TransportBenchmark benchmark) throws Exception {
+            tcpClient = new TcpTransferClient("localhost", benchmark.tcpServer.getPort());
+            h2cClient = new HTTP2Client();
+            h2cClient.start();
+            FuturePromise<Session> session = new FuturePromise<>();
+            h2cClient.connect(new InetSocketAddress("localhost", benchmark.h2cConnector.getLocalPort()),
+                              new Session.Listener.Adapter(), session);
+            h2cSession = session.get(5, TimeUnit.SECONDS);
+            unixChannel = UnixSocketChannel.open(new UnixSocketAddress(benchmark.unixSocket));
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Exception {
+            tcpClient.close();
+            h2cClient.stop();
+            unixChannel.close();
+        }
+    }
+
+    @Benchmark
+    public int restTransfer(Client client) throws IOException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long from = randomAccount(random);
+        URL url = new URL("http://localhost:" + REST_PORT + "/bankService/transfer?fromAccountNumber=" + from
+                          + "&toAccountNumber=" + otherAccount(from, random) + "&amount=1");
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        //the body is read to the end and the stream is closed, so the keep-alive connection is reused
+        int length = 0;
+        try (InputStream input = connection.getInputStream()) {
+            for (int read; (read = input.read(client.body)) > 0; ) {
+                length += read;
+            }
+        }
+        return length;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PIPELINE_DEPTH)
+    public long h2cMultiplexedTransfer(Client client) throws InterruptedException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        CountDownLatch responses = new CountDownLatch(PIPELINE_DEPTH);
+        //the streams only count the ends of responses, the body frames are released at once
+        Stream.Listener listener = new Stream.Listener.Adapter() {
+            @Override
+            public void onHeaders(Stream stream, HeadersFrame frame) {
+                if (frame.isEndStream()) {
+                    responses.countDown();
+                }
+            }
+
+            @Override
+            public void onData(Stream stream, DataFrame frame, Callback callback) {
+                callback.succeeded();
+                if (frame.isEndStream()) {
+                    responses.countDown();
+                }
+            }
+        };
+        for (int i = 0; i < PIPELINE_DEPTH; i++) {
+            long from = randomAccount(random);
+            MetaData.Request request = new MetaData.Request("GET", new HttpURI(
+                    "http://localhost/bankService/transfer?fromAccountNumber=" + from
+                    + "&toAccountNumber=" + otherAccount(from, random) + "&amount=1"),
+                    HttpVersion.HTTP_2, new HttpFields());
+            client.h2cSession.newStream(new HeadersFrame(request, null, true), new Promise.Adapter<>(), listener);
+        }
+        if (!responses.await(10, TimeUnit.SECONDS)) {
+            throw new IllegalStateException(responses.getCount() + " h2c responses are not received in time");
+        }
+        return responses.getCount();
+    }
+
+    @Benchmark
+    public int unixSocketTransfer(Client client) throws IOException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long from = randomAccount(random);
+        ByteBuffer request = ByteBuffer.wrap(("GET /bankService/transfer?fromAccountNumber=" + from
+                + "&toAccountNumber=" + otherAccount(from, random) + "&amount=1 HTTP/1.1\r\nHost: localhost\r\n\r\n")
+                .getBytes(StandardCharsets.US_ASCII));
+        while (request.hasRemaining()) {
+            client.unixChannel.write(request);
+        }
+        //keep-alive connection: the response is read till the end of its body
+        ByteBuffer response = client.unixResponse;
+        response.clear();
+        do {
+            if (client.unixChannel.read(response) < 0) {
+                throw new IllegalStateException("Unix socket connection is closed by server");
+            }
+        } while (!isResponseComplete(response));
+        return response.position();
+    }
+
+    @Benchmark
+    public int tcpTransfer(Client client) throws IOException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long from = randomAccount(random);
+        client.tcpClient.send(++client.correlationId, BinaryProtocol.OP_TRANSFER, 0,
+                              from, otherAccount(from, random), 1L);
+        return client.tcpClient.receive().getStatus();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PIPELINE_DEPTH)
+    public int tcpPipelinedTransfer(Client client) throws IOException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < PIPELINE_DEPTH; i++) {
+            long from = randomAccount(random);
+            client.tcpClient.send(++client.correlationId, BinaryProtocol.OP_TRANSFER, 0,
+                                  from, otherAccount(from, random), 1L);
+        }
+        int statuses = 0;
+        for (int i = 0; i < PIPELINE_DEPTH; i++) {
+            statuses += client.tcpClient.receive().getStatus();
+        }
+        return statuses;
+    }
+
+    /**
+     * check that HTTP/1.1 response is received to the end of its body: by Content-Length or, if the response
+     * of suspended request is chunked, by the last empty chunk
+     */
+    private static boolean isResponseComplete(ByteBuffer response) {
+        String received = new String(response.array(), 0, response.position(), StandardCharsets.US_ASCII);
+        int headerEnd = received.indexOf("\r\n\r\n");
+        if (headerEnd < 0) {
+            return false;
+        }
+        String header = received.substring(0, headerEnd).toLowerCase();
+        int contentLength = header.indexOf("content-length:");
+        if (contentLength < 0) {
+            return received.endsWith("\r\n0\r\n\r\n");
+        }
+        int valueEnd = header.indexOf('\r', contentLength);
+        return received.length() >= headerEnd + 4 + Integer.parseInt(header.substring(
+                contentLength + "content-length:".length(), valueEnd < 0 ? header.length() : valueEnd).trim());
+    }
+
+    private static long randomAccount(ThreadLocalRandom random) {
+        return random.nextInt(ACCOUNT_COUNT) + 1;
+    }
+
+    private static long otherAccount(long account, ThreadLocalRandom random) {
+        return (account + random.nextInt(1, ACCOUNT_COUNT) - 1) % ACCOUNT_COUNT + 1;
+    }
+}
@@ -1,18 +1,39 @@
 package ru.vdusanyuk.bank;
 
 
+import ru.vdusanyuk.bank.dao.BankHolder;
+import ru.vdusanyuk.bank.metrics.StartupPhases;
+import ru.vdusanyuk.bank.replication.ReplicationClient;
+import ru.vdusanyuk.bank.replication.ReplicationServer;
 import ru.vdusanyuk.bank.rest.EntryPoint;
-import org.eclipse.jetty.server.Connector;
+import ru.vdusanyuk.bank.rest.MetricsEndpoint;
+import ru.vdusanyuk.bank.rest.MetricsFilter;
+import ru.vdusanyuk.bank.rest.ServiceResponseWriter;
+import ru.vdusanyuk.bank.rest.TransferRequestReader;
+import ru.vdusanyuk.bank.tcp.TcpTransferServer;
+import ru.vdusanyuk.bank.util.BankProperties;
+import ru.vdusanyuk.bank.util.ThreadMode;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.ServerConnector;
 import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.eclipse.jetty.servlet.ServletHolder;
 import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+import org.glassfish.jersey.servlet.ServletContainer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import javax.servlet.ServletException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
 import java.net.URI;
-import java.util.Properties;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * The application to run banking service based on embedded jetty http server
@@ -20,70 +41,203 @@ import java.util.Properties;
 
 public class Application {
 
+    private final static Logger logger = LoggerFactory.getLogger(Application.class);
+
     private static final String DEFAULT_PORT = "8090";
-    private static final String DEFAULT_MAX_THREADS = "100";
-    private static final String DEFAULT_MIN_THREADS = "5";
-    private static final String DEFAULT_IDLE_TIMEOUT = "120";
+    private static final int DEFAULT_MAX_THREADS = 100;
+    private static final int DEFAULT_MIN_THREADS = 5;
+    private static final int DEFAULT_IDLE_TIMEOUT = 120;
+    private static final int DEFAULT_TCP_IO_THREADS = 2;
+    private static final int DEFAULT_TCP_REQUEST_THREADS = 8;
+    /**
+     * requests of training run, every endpoint used by clients
+     */
+    private static final String[] TRAINING_REQUESTS = {
+            "/bankService/total", "/bankService/account/1", "/bankService/accounts?ids=1,2",
+            "/bankService/transfer?fromAccountNumber=1&toAccountNumber=2&amount=1&await=processed",
+            "/bankService/transfer/1", "/bankService/replication", "/metrics"};
+    private static final String TRAINING_TRANSFER = "{\"fromAccountNumber\":2,\"toAccountNumber\":1,\"amount\":1}";
 
     private static Server server;
+    /**
+     * listener of binary protocol, null if it is disabled
+     */
+    private static TcpTransferServer tcpServer;
+    /**
+     * replication: streaming to followers on primary, following the primary on replica; null if not used
+     */
+    private static AutoCloseable replication;
 
     public static void main(String[] args) throws Exception {
+        StartupPhases phases = StartupPhases.getInstance();
+        phases.mainStarted();
 
         String port = args != null && args.length > 0 ? args[0] : DEFAULT_PORT;
 
-        Properties properties = loadApplicationProperties();
-        server = configureServer(Integer.valueOf(port),
-                                 properties);
+        long phaseStart = System.nanoTime();
+        BankProperties.getProperties();
+        phases.record("properties", phaseStart);
+        //accounts are loaded and bank metrics are registered in parallel with Jetty and Jersey start,
+        //the request reaching the bank before it is initialized waits for it
+        CompletableFuture<BankHolder> bankInit = CompletableFuture.supplyAsync(Application::initBank,
+                task -> new Thread(task, "bank-init").start());
+        phaseStart = System.nanoTime();
+        server = configureServer(Integer.valueOf(port));
+        phases.record("jetty", phaseStart);
+        boolean trainingRun = BankProperties.getBoolean("server.trainingRun", false);
         try {
+            phaseStart = System.nanoTime();
             server.start();
-            server.join();
+            phases.record("server", phaseStart);
+            BankHolder bankHolder = bankInit.join();
+            int tcpPort = BankProperties.getInt("tcp.port", 0);
+            if (tcpPort > 0) {
+                tcpServer = new TcpTransferServer(bankHolder, tcpPort,
+                        BankProperties.getInt("tcp.ioThreads", DEFAULT_TCP_IO_THREADS),
+                        BankProperties.getInt("tcp.requestThreads", DEFAULT_TCP_REQUEST_THREADS));
+            }
+            replication = startReplication(bankHolder);
+            logger.info("Application started in {} ms: {}", phases.getMillisSinceMain(), phases);
+            if (trainingRun) {
+                train(((ServerConnector) server.getConnectors()[0]).getLocalPort());
+                server.stop();
+            } else {
+                server.join();
+            }
         } finally {
             server.destroy();
+            if (tcpServer != null) {
+                tcpServer.close();
+            }
+            if (replication != null) {
+                replication.close();
+            }
+        }
+        if (trainingRun) {
+            //the bank threads would keep the JVM running, AppCDS archive is written on exit
+            System.exit(0);
+        }
+    }
+
+    private static BankHolder initBank() {
+        long phaseStart = System.nanoTime();
+        BankHolder bankHolder = BankHolder.getInstance();
+        StartupPhases.getInstance().record("bank", phaseStart);
+        return bankHolder;
+    }
+
+    /**
+     * training run (server.trainingRun = true): send a request to every endpoint, so that the classes
+     * of request handling are loaded and can be dumped into AppCDS archive
+     */
+    private static void train(int port) throws IOException {
+        for (String request : TRAINING_REQUESTS) {
+            logger.info("Training request {}, status {}", request, send(port, request, null));
+        }
+        logger.info("Training request POST transfer, status {}", send(port, "/bankService/transfer",
+                                                                      TRAINING_TRANSFER));
+    }
+
+    private static int send(int port, String pathQuery, String jsonBody) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + pathQuery)
+                .openConnection();
+        if (jsonBody != null) {
+            connection.setRequestMethod("POST");
+            connection.setRequestProperty("Content-Type", "application/json");
+            connection.setDoOutput(true);
+            try (OutputStream output = connection.getOutputStream()) {
+                output.write(jsonBody.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        int status = connection.getResponseCode();
+        InputStream input = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        if (input != null) {
+            try (InputStream response = input) {
+                while (response.read() >= 0) {
+                    //the response is read to the end
+                }
+            }
         }
+        return status;
     }
 
-    private static Server configureServer(int port, Properties properties) {
+    /**
+     * follow the primary set by bank.replication.primary (host:port) or, if it is not set, stream the processed
+     * transfers to followers on bank.replication.port (0 - disabled)
+     */
+    private static AutoCloseable startReplication(BankHolder bankHolder) throws Exception {
+        String primary = BankProperties.getProperty("bank.replication.primary", "");
+        if (!primary.isEmpty()) {
+            int separator = primary.lastIndexOf(':');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("bank.replication.primary should be host:port, got " + primary);
+            }
+            return new ReplicationClient(bankHolder, primary.substring(0, separator),
+                                         Integer.parseInt(primary.substring(separator + 1)));
+        }
+        int replicationPort = BankProperties.getInt("bank.replication.port", 0);
+        return replicationPort > 0 ? new ReplicationServer(bankHolder, replicationPort) : null;
+    }
 
-        QueuedThreadPool threadPool = configureThreadPool(properties);
+    private static Server configureServer(int port) {
+
+        ThreadPool threadPool = configureThreadPool();
 
         Server server = new Server(threadPool);
-        ServerConnector connector = new ServerConnector(server);
-        connector.setPort(port);
-        server.setConnectors(new Connector[]{connector});
+        server.addConnector(Connectors.http(server, port));
+        int h2cPort = BankProperties.getInt("server.h2cPort", 0);
+        if (h2cPort > 0) {
+            server.addConnector(Connectors.h2c(server, h2cPort));
+        }
+        String unixSocket = BankProperties.getProperty("server.unixSocket", "");
+        if (!unixSocket.isEmpty()) {
+            server.addConnector(Connectors.unixSocket(server, unixSocket));
+        }
 
         ServletContextHandler servletContextHandler = new ServletContextHandler(ServletContextHandler.SESSIONS);
         servletContextHandler.setContextPath("/");
         server.setHandler(servletContextHandler);
 
-        ServletHolder jerseyServlet = servletContextHandler.addServlet(
-                org.glassfish.jersey.servlet.ServletContainer.class, "/*");
+        //Jersey application (resource model, providers, injection) is built on server start, its time is recorded
+        ServletHolder jerseyServlet = new ServletHolder(new ServletContainer() {
+            @Override
+            public void init() throws ServletException {
+                long phaseStart = System.nanoTime();
+                super.init();
+                StartupPhases.getInstance().record("jersey", phaseStart);
+            }
+        });
+        servletContextHandler.addServlet(jerseyServlet, "/*");
         jerseyServlet.setInitOrder(0);
+        //transfer requests are suspended while waiting for acknowledgement, the request thread is released
+        jerseyServlet.setAsyncSupported(true);
 
         jerseyServlet.setInitParameter(
                 "jersey.config.server.provider.classnames",
-                EntryPoint.class.getCanonicalName());
+                Stream.of(EntryPoint.class, MetricsEndpoint.class, MetricsFilter.class,
+                          ServiceResponseWriter.class, TransferRequestReader.class)
+                        .map(Class::getCanonicalName)
+                        .collect(Collectors.joining(",")));
         return server;
     }
 
-    private static QueuedThreadPool configureThreadPool(Properties properties) {
-        int maxThreads = Integer.valueOf(properties.getProperty("server.maxThreads", DEFAULT_MAX_THREADS));
-        int minThreads = Integer.valueOf(properties.getProperty("server.minThreads", DEFAULT_MIN_THREADS));
-        int idleTimeout = Integer.valueOf(properties.getProperty("server.idleTimeout", DEFAULT_IDLE_TIMEOUT));
-        return new QueuedThreadPool(maxThreads, minThreads, idleTimeout);
-    }
-
-    private static Properties loadApplicationProperties() throws IOException {
-
-        Properties properties = new Properties();
-        try (InputStream input = Application.class.getClassLoader().getResourceAsStream("application.properties")) {
-            if (input == null) {
-                System.out.println("Unable to find application.properties");
+    /**
+     * virtual thread per task if server.threadMode = VIRTUAL and the runtime supports it,
+     * otherwise bounded pool of platform threads
+     */
+    private static ThreadPool configureThreadPool() {
+        if (BankProperties.getEnum("server.threadMode", ThreadMode.class, ThreadMode.PLATFORM) == ThreadMode.VIRTUAL) {
+            if (VirtualThreadPool.isSupported()) {
+                logger.info("Requests are handled on virtual threads");
+                return new VirtualThreadPool();
             }
-
-            //load a properties file from class path, inside static method
-            properties.load(input);
+            logger.warn("Virtual threads are not supported by Java {}, platform thread pool is used",
+                        System.getProperty("java.version"));
         }
-        return properties;
+        int maxThreads = BankProperties.getInt("server.maxThreads", DEFAULT_MAX_THREADS);
+        int minThreads = BankProperties.getInt("server.minThreads", DEFAULT_MIN_THREADS);
+        int idleTimeout = BankProperties.getInt("server.idleTimeout", DEFAULT_IDLE_TIMEOUT);
+        return new QueuedThreadPool(maxThreads, minThreads, idleTimeout);
     }
 
     static boolean waitForStarted() throws InterruptedException {
@@ -103,6 +257,16 @@ public class Application {
     }
 
     static void stop()  {
+        if (tcpServer != null) {
+            tcpServer.close();
+        }
+        if (replication != null) {
+            try {
+                replication.close();
+            } catch (Exception e) {
+                logger.warn("Unable to stop replication", e);
+            }
+        }
         if (server != null && server.isStarted()) {
             try {
                 server.stop();
@@ -0,0 +1,138 @@
+package ru.vdusanyuk.bank;
+
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.io.SelectorManager;
+import org.eclipse.jetty.server.ConnectionFactory;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.unixsocket.UnixSocketConnector;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.Scheduler;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.Executor;
+
+/**
+ * Factory of the server connectors, all of them serve the handler of the server:
+ * HTTP/1.1 on TCP port, h2c (cleartext HTTP/2) on TCP port for multiplexed clients
+ * and Unix domain socket for the clients on the same host.
+ * When the server runs requests on {@link VirtualThreadPool}, the connector gets its own small platform pool
+ * for the selector loops, which accept the connections as well (no acceptor threads); only the request tasks
+ * are dispatched to virtual threads
+ */
+public final class Connectors {
+
+    /**
+     * max threads of connector platform pool: the selectors (up to 4 by default) and short endpoint tasks
+     */
+    private static final int LOOP_THREADS = 8;
+
+    private Connectors() {
+    }
+
+    /**
+     * HTTP/1.1 connector
+     */
+    public static ServerConnector http(Server server, int port) {
+        ServerConnector connector = serverConnector(server, new HttpConnectionFactory());
+        connector.setPort(port);
+        return connector;
+    }
+
+    /**
+     * h2c connector: HTTP/2 with prior knowledge, HTTP/1.1 clients are served as well and can upgrade
+     */
+    public static ServerConnector h2c(Server server, int port) {
+        HttpConfiguration configuration = new HttpConfiguration();
+        ServerConnector connector = serverConnector(server, new HttpConnectionFactory(configuration),
+                                                    new HTTP2CServerConnectionFactory(configuration));
+        connector.setPort(port);
+        return connector;
+    }
+
+    /**
+     * Unix domain socket connector serving HTTP/1.1 and h2c with prior knowledge; the socket file is created
+     * on start and deleted on stop, the file left by the process killed before is deleted
+     * @param path path of the socket file
+     */
+    public static UnixSocketConnector unixSocket(Server server, String path) {
+        Path socketFile = Paths.get(path);
+        if (Files.exists(socketFile) && !Files.isRegularFile(socketFile) && !Files.isDirectory(socketFile)) {
+            try {
+                Files.delete(socketFile);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to delete stale socket " + path, e);
+            }
+        }
+        HttpConfiguration configuration = new HttpConfiguration();
+        ConnectionFactory[] factories = {new HttpConnectionFactory(configuration),
+                                         new HTTP2CServerConnectionFactory(configuration)};
+        UnixSocketConnector connector;
+        if (server.getThreadPool() instanceof VirtualThreadPool) {
+            connector = new UnixSocketConnector(server, loopPool("jetty-unixsocket"), null, null, -1, factories) {
+                @Override
+                public Executor getExecutor() {
+                    return getServer().getThreadPool();
+                }
+
+                @Override
+                protected SelectorManager newSelectorManager(Executor executor, Scheduler scheduler, int selectors) {
+                    Executor loops = super.getExecutor();
+                    return new UnixSocketConnectorManager(executor, scheduler, selectors) {
+                        @Override
+                        protected void execute(Runnable task) {
+                            loops.execute(task);
+                        }
+                    };
+                }
+            };
+        } else {
+            connector = new UnixSocketConnector(server, factories);
+        }
+        connector.setUnixSocket(path);
+        return connector;
+    }
+
+    /**
+     * TCP connector; with virtual request threads its own executor given to the constructor runs the selector
+     * loops, while {@link #getExecutor()} seen by the selectors and HTTP/2 sessions dispatches the requests
+     * to the server pool
+     */
+    private static ServerConnector serverConnector(Server server, ConnectionFactory... factories) {
+        if (!(server.getThreadPool() instanceof VirtualThreadPool)) {
+            return new ServerConnector(server, factories);
+        }
+        return new ServerConnector(server, loopPool("jetty-connector"), null, null, 0, -1, factories) {
+            @Override
+            public Executor getExecutor() {
+                return getServer().getThreadPool();
+            }
+
+            @Override
+            protected SelectorManager newSelectorManager(Executor executor, Scheduler scheduler, int selectors) {
+                Executor loops = super.getExecutor();
+                return new ServerConnectorManager(executor, scheduler, selectors) {
+                    @Override
+                    protected void execute(Runnable task) {
+                        loops.execute(task);
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * platform pool of the connector loops, started and stopped with the connector
+     */
+    private static QueuedThreadPool loopPool(String name) {
+        QueuedThreadPool pool = new QueuedThreadPool(LOOP_THREADS, 1);
+        pool.setName(name);
+        return pool;
+    }
+}
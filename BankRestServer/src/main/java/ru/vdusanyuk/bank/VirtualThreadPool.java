@@ -0,0 +1,129 @@
+package ru.vdusanyuk.bank;
+
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.thread.ThreadPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Jetty thread pool running every task on a new virtual thread (server.threadMode = VIRTUAL).
+ * The request blocked on a bank lock parks its virtual thread only, so the number of requests handled at once
+ * is not capped by server.maxThreads. The application is built for Java 8, so the virtual thread factory is
+ * looked up by reflection; the pool is available on Java 21 or later, see {@link #isSupported()}.
+ * It is not a {@link org.eclipse.jetty.util.thread.TryExecutor}, so the selectors never run the request
+ * on their own thread and always dispatch it to a new one
+ */
+public class VirtualThreadPool extends AbstractLifeCycle implements ThreadPool {
+
+    private final static Logger logger = LoggerFactory.getLogger(VirtualThreadPool.class);
+
+    private static final ThreadFactory virtualThreadFactory = createVirtualThreadFactory("jetty-virtual-");
+
+    /**
+     * tasks started and not finished yet
+     */
+    private final AtomicInteger runningTasks = new AtomicInteger();
+
+    /**
+     * constructor
+     * @throws UnsupportedOperationException if the runtime has no virtual threads
+     */
+    public VirtualThreadPool() {
+        if (virtualThreadFactory == null) {
+            throw new UnsupportedOperationException("Virtual threads are not supported by Java "
+                                                    + System.getProperty("java.version"));
+        }
+    }
+
+    /**
+     * check that the runtime supports virtual threads without preview features
+     */
+    public static boolean isSupported() {
+        return virtualThreadFactory != null;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (!isRunning()) {
+            throw new RejectedExecutionException("Thread pool is " + getState());
+        }
+        runningTasks.incrementAndGet();
+        virtualThreadFactory.newThread(() -> {
+            try {
+                task.run();
+            } catch (RuntimeException | Error e) {
+                logger.warn("Task failed: " + task, e);
+            } finally {
+                runningTasks.decrementAndGet();
+            }
+        }).start();
+    }
+
+    /**
+     * wait till the pool is stopped
+     */
+    @Override
+    public synchronized void join() throws InterruptedException {
+        while (isRunning()) {
+            wait();
+        }
+    }
+
+    /**
+     * the pool is stopping at this point, so the joining threads are released
+     */
+    @Override
+    protected synchronized void doStop() throws Exception {
+        super.doStop();
+        notifyAll();
+    }
+
+    /**
+     * getter, number of running tasks, every one has its own thread
+     */
+    @Override
+    public int getThreads() {
+        return runningTasks.get();
+    }
+
+    /**
+     * getter, virtual threads are never kept idle
+     */
+    @Override
+    public int getIdleThreads() {
+        return 0;
+    }
+
+    /**
+     * getter, a new thread is started for every task
+     */
+    @Override
+    public boolean isLowOnThreads() {
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s@%x{%s,running=%d}", getClass().getSimpleName(), hashCode(), getState(),
+                             runningTasks.get());
+    }
+
+    /**
+     * Thread.ofVirtual().name(prefix, 0).factory() by reflection
+     * @return null if virtual threads are not available or are preview feature
+     */
+    private static ThreadFactory createVirtualThreadFactory(String namePrefix) {
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+}
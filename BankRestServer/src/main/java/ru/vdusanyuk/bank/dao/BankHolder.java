@@ -2,21 +2,44 @@ package ru.vdusanyuk.bank.dao;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import ru.vdusanyuk.bank.dao.audit.AuditLog;
+import ru.vdusanyuk.bank.dao.journal.BalanceSnapshot;
+import ru.vdusanyuk.bank.dao.journal.DurabilityMode;
+import ru.vdusanyuk.bank.dao.journal.JournalRecord;
+import ru.vdusanyuk.bank.dao.journal.TransferJournal;
 import ru.vdusanyuk.bank.dao.model.Account;
+import ru.vdusanyuk.bank.dao.model.AccountStore;
 import ru.vdusanyuk.bank.dao.model.OperationResult;
 import ru.vdusanyuk.bank.dao.model.Transfer;
 import ru.vdusanyuk.bank.dao.model.TransferStatus;
+import ru.vdusanyuk.bank.metrics.Histogram;
+import ru.vdusanyuk.bank.metrics.Metrics;
 import ru.vdusanyuk.bank.util.AsyncBatchExecutor;
+import ru.vdusanyuk.bank.util.BankProperties;
+import ru.vdusanyuk.bank.util.BatchSettings;
+import ru.vdusanyuk.bank.util.OverflowPolicy;
+import ru.vdusanyuk.bank.util.RateLimiter;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
-import java.util.stream.LongStream;
+import java.util.stream.IntStream;
 
 /**
  * Bank Holder  holds accounts and perform the operations:
@@ -27,9 +50,20 @@ import java.util.stream.LongStream;
  */
 public class BankHolder {
 
-    private static final int MAX_ACCOUNT_NO = 10;
+    private static final int DEFAULT_ACCOUNT_COUNT = 10;
     private static final int MIN_ACCOUNT_NO = 1;
     private static final int INITIAL_BALANCE = 100;
+    /**
+     * number of account lock stripes, power of 2
+     */
+    private static final int LOCK_STRIPES = 64;
+    private static final long DEFAULT_JOURNAL_SEGMENT_SIZE = 64L * 1024 * 1024;
+    private static final int DEFAULT_RECENT_TRANSFERS = 65536;
+    private static final int DEFAULT_IDEMPOTENCY_KEYS = 65536;
+    private static final long DEFAULT_IDEMPOTENCY_TTL_SEC = 600;
+    private static final int DEFAULT_AUDIT_CAPACITY = 65536;
+    private static final int DEFAULT_DIAGNOSTIC_LOG_RATE = 10;
+    private static final int DEFAULT_SHARDS = Runtime.getRuntime().availableProcessors();
 
     private final static Logger logger = LoggerFactory.getLogger(BankHolder.class);
 
@@ -44,22 +78,202 @@ public class BankHolder {
     private final AsyncBatchExecutor<Transfer> transferAsyncExecutor;
 
     /**
-     * in-memory bank accounts
+     * batch application stage, one net delta per account
+     */
+    private final BatchApplier batchApplier = new BatchApplier(ForkJoinPool.commonPool());
+
+    /**
+     * transfer id sequence
+     */
+    private final AtomicLong transferSequence = new AtomicLong();
+
+    /**
+     * the latest transfers by id, for status lookup
+     */
+    private final RecentTransfers recentTransfers =
+            new RecentTransfers(BankProperties.getInt("bank.transfer.recentCapacity", DEFAULT_RECENT_TRANSFERS));
+
+    /**
+     * results of the latest transfer requests by client idempotency key, retries are answered from it
+     */
+    private final IdempotencyCache idempotencyCache = new IdempotencyCache(
+            BankProperties.getInt("bank.idempotency.capacity", DEFAULT_IDEMPOTENCY_KEYS),
+            TimeUnit.SECONDS.toMillis(BankProperties.getLong("bank.idempotency.ttlSec", DEFAULT_IDEMPOTENCY_TTL_SEC)));
+
+    /**
+     * commit version sequence and pinned snapshots of readers
+     */
+    private final VersionClock versionClock = new VersionClock();
+
+    /**
+     * number of accounts created on initialization
+     */
+    private final int accountCount = BankProperties.getInt("bank.accountCount", DEFAULT_ACCOUNT_COUNT);
+    /**
+     * in-memory bank accounts, replaced as a whole on re-initialization
      */
-    private final Map<Long, Account> bankAccounts = new HashMap<>();
+    private volatile AccountStore accountStore;
     /**
-     * the lock is for keeping consistency of bank getTotal and batch write operation
+     * the lock is for keeping consistency of bank getTotal and batch write operation (GLOBAL locking mode)
      */
     private final ReadWriteLock readWriteLock = new ReentrantReadWriteLock();
     private final Lock readLock = readWriteLock.readLock();
     private final Lock writeLock = readWriteLock.writeLock();
+    /**
+     * striped account locks, the account is guarded by the stripe selected by its number
+     */
+    private final Lock[] accountLocks = new Lock[LOCK_STRIPES];
+    /**
+     * strategy of locking for transfers and batch processing
+     */
+    private volatile LockingMode lockingMode =
+            BankProperties.getEnum("bank.lockingMode", LockingMode.class, LockingMode.GLOBAL);
+    /**
+     * shard threads of SHARDED mode, created when the mode is used first
+     */
+    private volatile ShardedLedger shardedLedger;
+
+    /**
+     * deposits of hot accounts deferred to batch, see {@link HotDeposits}
+     */
+    private volatile HotDeposits hotDeposits =
+            new HotDeposits(parseAccountNumbers(BankProperties.getProperty("bank.hotAccounts", "")), LOCK_STRIPES);
+
+    /**
+     * write-ahead journal of accepted transfers, null if journal is not configured
+     */
+    private final TransferJournal journal;
+    /**
+     * when journaled transfer is acknowledged
+     */
+    private final DurabilityMode durabilityMode =
+            BankProperties.getEnum("bank.journal.durability", DurabilityMode.class, DurabilityMode.ACK_ON_ENQUEUE);
+    /**
+     * the first failure of journal sync, null while the journal is healthy; once it is set the journal is fenced:
+     * written records may be lost, so no transfer is committed any more till restart recovers from the journal
+     */
+    private volatile RuntimeException journalFailure;
+    /**
+     * background writer of balance snapshots, null if snapshots are disabled
+     */
+    private final ScheduledExecutorService snapshotExecutor;
+
+    /**
+     * audit trail of transfer requests, written asynchronously
+     */
+    private final AuditLog auditLog;
+    /**
+     * per request diagnostic messages are rate limited
+     */
+    private final RateLimiter diagnosticLog =
+            new RateLimiter(BankProperties.getInt("bank.log.diagnosticPerSec", DEFAULT_DIAGNOSTIC_LOG_RATE));
+
+    /**
+     * hot path metrics: lock wait time, batch sizes, queue backlog left after batch drain and settlement lag
+     */
+    private final Histogram globalReadLockWait = lockWaitHistogram("global_read");
+    private final Histogram globalWriteLockWait = lockWaitHistogram("global_write");
+    private final Histogram accountLockWait = lockWaitHistogram("account");
+    private final Histogram batchSizes = Metrics.getInstance()
+            .histogram("bank_batch_size", "Transfers per processed batch", 1.0);
+    private final Histogram batchAccounts = Metrics.getInstance()
+            .histogram("bank_batch_accounts", "Distinct accounts applied per processed batch", 1.0);
+    private final Histogram queueBacklog = Metrics.getInstance()
+            .histogram("bank_batch_queue_backlog", "Transfers left in queue when batch processing starts", 1.0);
+    private final Histogram settlementLag = Metrics.getInstance()
+            .histogram("bank_transfer_settlement_seconds", "Time from transfer submit till it is PROCESSED",
+                       Metrics.NANOS);
+
+    /**
+     * read-only replica: accounts are loaded from the primary and changed only by the replicated transfers
+     */
+    private final boolean replica;
+    /**
+     * listener of processed batches, see {@link #setBatchListener(Consumer)}
+     */
+    private volatile Consumer<Collection<Transfer>> batchListener;
+    /**
+     * replica state: the latest primary commit version applied and the primary time it was sent at
+     */
+    private volatile long replicatedVersion;
+    private volatile long replicatedTimeMillis;
 
     /**
-     * private constructor for singleton, initialize members accounts
+     * private constructor for singleton, initialize members accounts;
+     * the instance is read-only replica if bank.replication.primary is set
      */
     private BankHolder() {
-        initBankAccounts();
-        transferAsyncExecutor = new AsyncBatchExecutor<>(this::processTransfers);
+        this(!BankProperties.getProperty("bank.replication.primary", "").isEmpty());
+    }
+
+    /**
+     * constructor (access = package private, for testing only: the second instance is used as replica)
+     * @param replica true for read-only replica, it has no accounts until the primary snapshot is loaded
+     */
+    BankHolder(boolean replica) {
+        this.replica = replica;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            accountLocks[i] = new ReentrantLock();
+        }
+        String auditFile = BankProperties.getProperty("bank.audit.file", "");
+        auditLog = new AuditLog(auditFile.isEmpty() ? null : Paths.get(auditFile),
+                BankProperties.getInt("bank.audit.capacity", DEFAULT_AUDIT_CAPACITY),
+                BankProperties.getEnum("bank.audit.overflowPolicy", OverflowPolicy.class, OverflowPolicy.BLOCK));
+        //the buffered audit records are written on normal shutdown
+        Runtime.getRuntime().addShutdownHook(new Thread(auditLog::close, "audit-shutdown"));
+        String journalDir = BankProperties.getProperty("bank.journal.dir", "");
+        if (replica) {
+            //the primary journals the transfers, the replica state is restored from the primary
+            journal = null;
+            accountStore = new AccountStore(accountCount);
+        } else if (journalDir.isEmpty()) {
+            journal = null;
+            initBankAccounts();
+        } else {
+            journal = recoverFromJournal(Paths.get(journalDir), loadSnapshot(Paths.get(journalDir)));
+        }
+        transferAsyncExecutor = new AsyncBatchExecutor<>(this::processTransfers,
+                                                        BatchSettings.fromProperties("bank.batch"));
+        Metrics metrics = Metrics.getInstance();
+        metrics.gauge("bank_batch_queue_depth", "Transfers waiting for batch processing",
+                      transferAsyncExecutor::getQueueSize);
+        metrics.gauge("bank_accounts", "Number of accounts", () -> accountStore.size());
+        metrics.counter("bank_transfers_total", "Transfer ids assigned", transferSequence::get);
+        metrics.gauge("bank_idempotency_keys", "Idempotency keys kept", idempotencyCache::size);
+        metrics.counter("bank_idempotent_replays_total", "Transfer requests answered by result of the same key",
+                        idempotencyCache::getReplays);
+        metrics.counter("bank_idempotency_mismatches_total",
+                        "Transfer requests rejected as their idempotency key is used by another request",
+                        idempotencyCache::getMismatches);
+        metrics.gauge("bank_journal_fenced", "1 if journal sync failed and transfers are rejected, 0 otherwise",
+                      () -> journalFailure != null ? 1L : 0L);
+        metrics.gauge("bank_audit_backlog", "Audit records not written yet", auditLog::getBacklog);
+        metrics.counter("bank_audit_dropped_total", "Audit records dropped as audit buffer is full",
+                        auditLog::getDropped);
+        metrics.gauge("bank_hot_deposits_pending", "Deposits to hot accounts not folded into balances yet",
+                      () -> hotDeposits.getTotalPending());
+        metrics.gauge("bank_transfers_in_flight", "Cross-shard transfers debited but not credited yet",
+                      () -> shardedLedger != null ? shardedLedger.getInFlight() : 0L);
+        metrics.gauge("bank_shard_queue_depth", "Transfers waiting for shard processing",
+                      () -> shardedLedger != null ? shardedLedger.getQueueSize() : 0L);
+        if (lockingMode == LockingMode.SHARDED) {
+            startShardedLedger();
+        }
+        long snapshotInterval = BankProperties.getLong("bank.snapshot.intervalSec", 0);
+        if (journal != null && snapshotInterval > 0 && lockingMode == LockingMode.SHARDED) {
+            logger.warn("Balance snapshots are not supported in SHARDED locking mode, they are disabled");
+            snapshotExecutor = null;
+        } else if (journal != null && snapshotInterval > 0) {
+            snapshotExecutor = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "balance-snapshot");
+                thread.setDaemon(true);
+                return thread;
+            });
+            snapshotExecutor.scheduleWithFixedDelay(this::writeSnapshot, snapshotInterval, snapshotInterval,
+                                                    TimeUnit.SECONDS);
+        } else {
+            snapshotExecutor = null;
+        }
     }
 
     /**
@@ -81,63 +295,393 @@ public class BankHolder {
      * @return  result of operation {@link OperationResult}
      */
     public OperationResult submitTransfer(long fromAcntNumber, long toAcntNumber, long amount) {
+        return submitTransfer(fromAcntNumber, toAcntNumber, amount, false).join();
+    }
 
-        long startTime = System.currentTimeMillis();
-        logger.debug(" Transfer request: from={}, to={}, amount={}", fromAcntNumber, toAcntNumber, amount);
+    /**
+     * submit transfer without waiting: the transfer is validated and committed by the caller thread,
+     * the result is completed when the transfer is acknowledged - at once or, in ACK_ON_FSYNC mode,
+     * when its journal record is forced to disk; with awaitProcessed not before the transfer is PROCESSED by batch.
+     * Rejected transfer gets completed result at once
+     *
+     * @param fromAcntNumber account number for withdraw
+     * @param toAcntNumber account number for deposit
+     * @param amount amount for transfer
+     * @param awaitProcessed true to complete the result when the transfer is PROCESSED
+     * @return  result of operation {@link OperationResult}
+     */
+    public CompletableFuture<OperationResult> submitTransfer(long fromAcntNumber, long toAcntNumber, long amount,
+                                                             boolean awaitProcessed) {
+        if (replica) {
+            auditLog.record(0L, fromAcntNumber, toAcntNumber, amount, 3, AuditLog.NO_BALANCE);
+            return CompletableFuture.completedFuture(readOnlyResult(fromAcntNumber));
+        }
         //get accounts and validate amount for transfer
-        Account fromAccount = bankAccounts.get(fromAcntNumber);
-        Account toAccount = bankAccounts.get(toAcntNumber);
+        AccountStore store = accountStore;
+        Account fromAccount = store.get(fromAcntNumber);
+        Account toAccount = store.get(toAcntNumber);
         //check existance of all the accounts and positive amount
         if (fromAccount == null || toAccount == null || amount <= 0) {
-            logger.error("transfer request invalid!");
-            return new OperationResult(1, "transfer request invalid!", fromAcntNumber, null);
+            auditLog.record(0L, fromAcntNumber, toAcntNumber, amount, 1, AuditLog.NO_BALANCE);
+            if (diagnosticLog.tryAcquire()) {
+                logger.warn("transfer request invalid: from={}, to={}, amount={} ({} messages suppressed)",
+                            fromAcntNumber, toAcntNumber, amount, diagnosticLog.takeSuppressed());
+            }
+            return CompletableFuture.completedFuture(
+                    new OperationResult(1, "transfer request invalid!", fromAcntNumber, null));
+        }
+        LockingMode mode = lockingMode;
+        //queue slot is claimed before any lock is taken, so the full queue never blocks the account locks
+        ShardedLedger ledger = mode == LockingMode.SHARDED ? startShardedLedger() : null;
+        long slot = ledger != null ? ledger.claim(fromAcntNumber) : transferAsyncExecutor.claimSlot();
+        if (slot < 0) {
+            auditLog.record(0L, fromAcntNumber, toAcntNumber, amount, 2, AuditLog.NO_BALANCE);
+            if (diagnosticLog.tryAcquire()) {
+                logger.warn("transfer REJECTED, processing queue is full: from={}, to={}, amount={}"
+                            + " ({} messages suppressed)",
+                            fromAcntNumber, toAcntNumber, amount, diagnosticLog.takeSuppressed());
+            }
+            return CompletableFuture.completedFuture(
+                    new OperationResult(2, "Service overloaded", fromAcntNumber, null));
+        }
+        if (ledger != null) {
+            //validated and committed by the shard of withdraw account
+            Transfer transfer = new Transfer(transferSequence.incrementAndGet(), fromAccount, toAccount, amount);
+            if (awaitProcessed) {
+                transfer.setCompletion(new CompletableFuture<>());
+            }
+            return ledger.submit(slot, transfer).thenCompose(result -> result.getCode() == 0 ?
+                    acknowledgement(transfer).thenApply(processed -> result) :
+                    CompletableFuture.completedFuture(result));
         }
         OperationResult operationResult;
+        Transfer acceptedTransfer = null;
 
-        readLock.lock();
-        long transferId = System.nanoTime();
+        long transferId = transferSequence.incrementAndGet();
+        lockTransfer(mode, fromAcntNumber, toAcntNumber);
         try {
             Transfer transfer = new Transfer(transferId, fromAccount, toAccount, amount);
             //we should not intersect with writing process, so need read lock
-            operationResult = fromAccount.addPendingTransaction(transfer, true);
+            operationResult = commitTransfer(transfer);
             if (operationResult.getCode() == 0) {
-                toAccount.addPendingTransaction(transfer, false);
-                transfer.setStatus(TransferStatus.PENDING);
-                //process transfer asynchronously
-                transferAsyncExecutor.addProcessingItem(transfer);
+                acceptedTransfer = transfer;
+                if (awaitProcessed) {
+                    transfer.setCompletion(new CompletableFuture<>());
+                }
             }
         } finally {
-            readLock.unlock();
+            unlockTransfer(mode, fromAcntNumber, toAcntNumber);
+            //process transfer asynchronously, the slot is released if transfer is not accepted
+            transferAsyncExecutor.addProcessingItem(slot, acceptedTransfer);
+        }
+        auditTransfer(transferId, fromAcntNumber, toAcntNumber, amount, operationResult);
+        if (acceptedTransfer == null) {
+            return CompletableFuture.completedFuture(operationResult);
+        }
+        OperationResult result = operationResult;
+        return acknowledgement(acceptedTransfer).thenApply(transfer -> result);
+    }
+
+    /**
+     * submit transfer once per idempotency key: the retry of the request with the same key gets the result of
+     * the first one, completed or not, without locks and without a new transfer, see {@link IdempotencyCache}.
+     * The request with the key of another request (other accounts or amount) is rejected with code 4
+     *
+     * @param idempotencyKey client key of the request, null to submit the transfer anyway
+     * @param fromAcntNumber account number for withdraw
+     * @param toAcntNumber account number for deposit
+     * @param amount amount for transfer
+     * @param awaitProcessed true to complete the result when the transfer is PROCESSED
+     * @return  result of operation {@link OperationResult}
+     */
+    public CompletableFuture<OperationResult> submitTransfer(String idempotencyKey, long fromAcntNumber,
+                                                             long toAcntNumber, long amount, boolean awaitProcessed) {
+        if (idempotencyKey == null) {
+            return submitTransfer(fromAcntNumber, toAcntNumber, amount, awaitProcessed);
         }
-        logger.info("transfer#{} {}{}: from={}, to={}, amount={}, new balance={}, elapsed {} ms",
-                transferId, operationResult.getCode() == 0 ? "SUBMITTED" : "REJECTED :",
-                operationResult.getCode() == 0 ? operationResult.getErrorMessage() : "",
-                fromAcntNumber, toAcntNumber, amount, operationResult.getBalance(),
-                System.currentTimeMillis() - startTime);
-        return operationResult;
+        return idempotencyCache.computeIfAbsent(idempotencyKey, fromAcntNumber, toAcntNumber, amount,
+                () -> submitTransfer(fromAcntNumber, toAcntNumber, amount, awaitProcessed));
+    }
+
+    /**
+     * submit several transfers at once: they are validated and committed under one acquisition of the locks
+     * guarding all the accounts involved and handed off to the batch executor together
+     *
+     * @param fromAcntNumbers source account numbers
+     * @param toAcntNumbers destination account numbers
+     * @param amounts amounts for transfer
+     * @return results of operation {@link OperationResult} in the order of transfers
+     */
+    public List<OperationResult> submitTransfers(long[] fromAcntNumbers, long[] toAcntNumbers, long[] amounts) {
+        return submitTransfers(fromAcntNumbers, toAcntNumbers, amounts, false).join();
     }
 
     /**
-     * requesting total bank balance, mostly for test purpose
+     * submit several transfers at once without waiting, see {@link #submitTransfers(long[], long[], long[])}:
+     * the results are completed when all the accepted transfers are acknowledged, with awaitProcessed
+     * not before all of them are PROCESSED, see {@link #submitTransfer(long, long, long, boolean)}
+     *
+     * @param fromAcntNumbers source account numbers
+     * @param toAcntNumbers destination account numbers
+     * @param amounts amounts for transfer
+     * @param awaitProcessed true to complete the results when the transfers are PROCESSED
+     * @return results of operation {@link OperationResult} in the order of transfers
+     */
+    public CompletableFuture<List<OperationResult>> submitTransfers(long[] fromAcntNumbers, long[] toAcntNumbers,
+                                                                    long[] amounts, boolean awaitProcessed) {
+        int count = amounts.length;
+        if (replica || lockingMode == LockingMode.SHARDED) {
+            //no common lock to take, every transfer goes to the shard of its withdraw account or is rejected by replica
+            List<CompletableFuture<OperationResult>> results = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                results.add(submitTransfer(fromAcntNumbers[i], toAcntNumbers[i], amounts[i], awaitProcessed));
+            }
+            return CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0]))
+                    .thenApply(ignored -> results.stream().map(CompletableFuture::join).collect(Collectors.toList()));
+        }
+        OperationResult[] results = new OperationResult[count];
+        Transfer[] transfers = new Transfer[count];
+        AccountStore store = accountStore;
+        long stripeMask = 0L;
+        int validCount = 0;
+        for (int i = 0; i < count; i++) {
+            Account fromAccount = store.get(fromAcntNumbers[i]);
+            Account toAccount = store.get(toAcntNumbers[i]);
+            if (fromAccount == null || toAccount == null || amounts[i] <= 0) {
+                results[i] = new OperationResult(1, "transfer request invalid!", fromAcntNumbers[i], null);
+                auditLog.record(0L, fromAcntNumbers[i], toAcntNumbers[i], amounts[i], 1, AuditLog.NO_BALANCE);
+                continue;
+            }
+            transfers[i] = new Transfer(transferSequence.incrementAndGet(), fromAccount, toAccount, amounts[i]);
+            stripeMask |= 1L << stripeOf(fromAcntNumbers[i])
+                    | 1L << creditStripeOf(fromAcntNumbers[i], toAcntNumbers[i]);
+            validCount++;
+        }
+        if (validCount == 0) {
+            return CompletableFuture.completedFuture(Arrays.asList(results));
+        }
+        //all the slots are claimed before any lock is taken, as for single transfer
+        long firstSlot = transferAsyncExecutor.claimSlots(validCount);
+        if (firstSlot < 0) {
+            if (diagnosticLog.tryAcquire()) {
+                logger.warn("bulk of {} transfers REJECTED, processing queue is full ({} messages suppressed)",
+                            validCount, diagnosticLog.takeSuppressed());
+            }
+            for (int i = 0; i < count; i++) {
+                if (transfers[i] != null) {
+                    results[i] = new OperationResult(2, "Service overloaded", fromAcntNumbers[i], null);
+                    auditLog.record(0L, fromAcntNumbers[i], toAcntNumbers[i], amounts[i], 2, AuditLog.NO_BALANCE);
+                }
+            }
+            return CompletableFuture.completedFuture(Arrays.asList(results));
+        }
+        List<Transfer> acceptedTransfers = new ArrayList<>(validCount);
+
+        LockingMode mode = lockingMode;
+        lockStripes(mode, stripeMask);
+        try {
+            for (int i = 0; i < count; i++) {
+                if (transfers[i] != null) {
+                    results[i] = commitTransfer(transfers[i]);
+                    if (results[i].getCode() == 0 && awaitProcessed) {
+                        transfers[i].setCompletion(new CompletableFuture<>());
+                    }
+                    acceptedTransfers.add(results[i].getCode() == 0 ? transfers[i] : null);
+                }
+            }
+        } finally {
+            unlockStripes(mode, stripeMask);
+            //one hand-off for the whole bulk, the slots of not accepted transfers are released
+            while (acceptedTransfers.size() < validCount) {
+                acceptedTransfers.add(null);
+            }
+            transferAsyncExecutor.addProcessingItems(firstSlot, acceptedTransfers);
+        }
+        List<CompletableFuture<Transfer>> acknowledgements = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            if (transfers[i] != null) {
+                auditTransfer(transfers[i].getId(), fromAcntNumbers[i], toAcntNumbers[i], amounts[i], results[i]);
+            }
+        }
+        for (Transfer transfer : acceptedTransfers) {
+            if (transfer == null) {
+                continue;
+            }
+            CompletableFuture<Transfer> acknowledgement = acknowledgement(transfer);
+            if (!acknowledgement.isDone()) {
+                acknowledgements.add(acknowledgement);
+            }
+        }
+        return CompletableFuture.allOf(acknowledgements.toArray(new CompletableFuture<?>[0]))
+                .thenApply(ignored -> Arrays.asList(results));
+    }
+
+    private static OperationResult readOnlyResult(long fromAcntNumber) {
+        return new OperationResult(3, "read-only replica", fromAcntNumber, null);
+    }
+
+    /**
+     * add audit record of the transfer validated and, if it is passed, committed
+     */
+    private void auditTransfer(long transferId, long fromAcntNumber, long toAcntNumber, long amount,
+                               OperationResult result) {
+        auditLog.record(transferId, fromAcntNumber, toAcntNumber, amount, result.getCode(),
+                        result.getBalance() != null ? result.getBalance() : AuditLog.NO_BALANCE);
+    }
+
+    /**
+     * acknowledgement of accepted transfer: journal sync in ACK_ON_FSYNC mode and processing if somebody waits for it
+     *
+     * @param transfer accepted transfer
+     * @return future completed with the transfer, completed at once if there is nothing to wait for
+     */
+    private static CompletableFuture<Transfer> acknowledgement(Transfer transfer) {
+        CompletableFuture<Transfer> journalSync = transfer.getJournalSync();
+        CompletableFuture<Transfer> completion = transfer.getCompletion();
+        if (journalSync == null) {
+            return completion != null ? completion : CompletableFuture.completedFuture(transfer);
+        }
+        //a failed journal sync fails the acknowledgement: the transfer is in memory, but may be lost on restart
+        return completion != null ? journalSync.thenCombine(completion, (synced, processed) -> processed) : journalSync;
+    }
+
+    /**
+     * validate and commit transfer, the caller holds the locks guarding both accounts
+     *
+     * @param transfer draft transfer
+     * @return result of withdraw validation, the transfer is PENDING if it is passed
+     */
+    private OperationResult commitTransfer(Transfer transfer) {
+        Account fromAccount = transfer.getFromAccount();
+        Account toAccount = transfer.getToAccount();
+        OperationResult operationResult = fromAccount.addPendingTransaction(transfer, true);
+        if (operationResult.getCode() == 0) {
+            toAccount.addPendingTransaction(transfer, false);
+            HotDeposits deposits = hotDeposits;
+            int hotSlot = deposits.slotOf(toAccount.getAccountNumber());
+            //commit version is assigned under the locks of both accounts, see awaitCommits(long)
+            long version = versionClock.nextVersion();
+            transfer.setVersion(version);
+            //write-ahead: journaled under the account locks before the balances are published,
+            //so the records of an account follow in version order and nothing is published without a record
+            if (!journalTransfer(transfer)) {
+                transfer.setStatus(TransferStatus.ERROR);
+                recentTransfers.add(transfer);
+                return journalUnavailable(fromAccount.getAccountNumber()).withTransferId(transfer.getId());
+            }
+            long oldestPinnedVersion = versionClock.oldestPinnedVersion();
+            fromAccount.commitPendingTransaction(transfer, true, version, oldestPinnedVersion);
+            if (hotSlot >= 0) {
+                //the hot account is not locked, its deposit goes to the cell of the withdraw account stripe
+                deposits.commit(hotSlot, stripeOf(fromAccount.getAccountNumber()), transfer.getAmount(), version,
+                                oldestPinnedVersion);
+            } else {
+                toAccount.commitPendingTransaction(transfer, false, version, oldestPinnedVersion);
+            }
+            transfer.setStatus(TransferStatus.PENDING);
+        }
+        recentTransfers.add(transfer);
+        return operationResult.withTransferId(transfer.getId());
+    }
+
+    /**
+     * requesting total bank balance, mostly for test purpose.
+     * The total is read from a pinned snapshot, so it is consistent and does not block transfers and batch processing
      * @return total value
      */
     public Long getTotalBalance() {
         Long totalBalance;
-        readLock.lock();
         long startTime = System.nanoTime();
-        try {
-            totalBalance = bankAccounts.entrySet().parallelStream()
-                     .mapToLong(acnt -> acnt.getValue().getStampedBalance(startTime, false))
+        long version;
+        try (VersionClock.Snapshot snapshot = versionClock.pin()) {
+            version = snapshot.getVersion();
+            awaitCommits(version);
+            AccountStore store = accountStore;
+            totalBalance = IntStream.range(0, store.size()).parallel()
+                     .mapToLong(index -> store.getCommittedBalance(index, version))
                      .sum();
-        } finally {
-           readLock.unlock();
+            //deposits to hot accounts are in their cells till the batch folds them
+            totalBalance += hotDeposits.getTotalPending(version);
+            //money in flight between shards is the part of the total
+            ShardedLedger ledger = shardedLedger;
+            if (ledger != null) {
+                totalBalance += ledger.getTransitBalance(version);
+            }
+        }
+        if (diagnosticLog.tryAcquire()) {
+            logger.info("Total Balance requested, version = {}, result = {}, elapsed {} ms ({} messages suppressed)",
+                        version, totalBalance, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime),
+                        diagnosticLog.takeSuppressed());
         }
-        logger.info("Total Balance requested, result = {}, elapsed {} ms",
-                    totalBalance,
-                    TimeUnit.NANOSECONDS.toMillis (System.nanoTime() - startTime));
         return totalBalance;
     }
 
+    /**
+     * requesting state of several accounts at once, all the balances are read from the same snapshot
+     *
+     * @param accountNumbers account numbers requested
+     * @return operation results in the order of requested account numbers
+     */
+    public List<OperationResult> getAccounts(Collection<Long> accountNumbers) {
+        AccountStore store = accountStore;
+        HotDeposits deposits = hotDeposits;
+        try (VersionClock.Snapshot snapshot = versionClock.pin()) {
+            awaitCommits(snapshot.getVersion());
+            return accountNumbers.stream()
+                    .map(accountNumber -> {
+                        int index = accountNumber != null ? store.indexOf(accountNumber) : -1;
+                        return index >= 0 ?
+                                new OperationResult(0, null, accountNumber,
+                                                    store.getCommittedBalance(index, snapshot.getVersion())
+                                                    + deposits.getPending(accountNumber, snapshot.getVersion())) :
+                                new OperationResult(1, "NOT Found", accountNumber, null);
+                    })
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * find recent transfer by id, lock-free
+     *
+     * @param transferId transfer id
+     * @return transfer with its current status or null if it is unknown or too old,
+     * see bank.transfer.recentCapacity
+     */
+    public Transfer getTransfer(long transferId) {
+        return recentTransfers.get(transferId);
+    }
+
+    /**
+     * pass balances of all the accounts to consumer, all of them are read from the same snapshot, in no particular
+     * order and without copying. The snapshot is pinned till the consumer is done, so the slow consumer makes
+     * the balances replaced meanwhile stay in history
+     *
+     * @param consumer consumer of account numbers with balances
+     * @return snapshot version the balances are read as of
+     */
+    public long exportBalances(AccountStore.BalanceConsumer consumer) {
+        AccountStore store = accountStore;
+        try (VersionClock.Snapshot snapshot = versionClock.pin()) {
+            awaitCommits(snapshot.getVersion());
+            forEachBalance(store, snapshot.getVersion(), consumer);
+            return snapshot.getVersion();
+        }
+    }
+
+    /**
+     * pass every account number with its balance as of snapshot version to consumer, the deposits of hot accounts
+     * not folded yet are included
+     */
+    private void forEachBalance(AccountStore store, long version, AccountStore.BalanceConsumer consumer) {
+        HotDeposits deposits = hotDeposits;
+        if (deposits.size() == 0) {
+            store.forEachCommittedBalance(version, consumer);
+        } else {
+            store.forEachCommittedBalance(version, (accountNumber, balance) ->
+                    consumer.accept(accountNumber, balance + deposits.getPending(accountNumber, version)));
+        }
+    }
+
     /**
      * processing the pending transfers by asynchronous executor
      *
@@ -149,18 +693,426 @@ public class BankHolder {
         }
         logger.debug("Async process of chunk transfers - start, size={}", transfers.size());
         long startTime = System.currentTimeMillis();
-        writeLock.lock();
+        batchSizes.record(transfers.size());
+        queueBacklog.record(transferAsyncExecutor.getQueueSize());
+        if (journal != null) {
+            syncJournal(transfers);
+        }
+        AccountStore store = accountStore;
+        HotDeposits deposits = hotDeposits;
+        if (lockingMode == LockingMode.GLOBAL) {
+            long lockStartTime = System.nanoTime();
+            writeLock.lock();
+            globalWriteLockWait.record(System.nanoTime() - lockStartTime);
+            try {
+                foldHotDeposits(transfers);
+                batchAccounts.record(batchApplier.apply(store, transfers, deposits));
+            } finally {
+                writeLock.unlock();
+            }
+        } else {
+            //saved balances are changed by the batch thread only, the transfers are not blocked by apply
+            foldHotDeposits(transfers);
+            batchAccounts.record(batchApplier.apply(store, transfers, deposits));
+        }
+        notifyProcessed(transfers);
+        pruneHistory();
+        Consumer<Collection<Transfer>> listener = batchListener;
+        if (listener != null) {
+            listener.accept(transfers);
+        }
+        if (diagnosticLog.tryAcquire()) {
+            logger.info("Async process of chunk transfers - end, size={}, elapsed {} ms ({} messages suppressed)",
+                        transfers.size(), System.currentTimeMillis() - startTime, diagnosticLog.takeSuppressed());
+        }
+    }
+
+    /**
+     * record settlement lag and complete processing notifications of the batch, it is done after the locks
+     * are released, so the waiting parties are resumed without blocking transfers
+     *
+     * @param transfers batch processed
+     */
+    private void notifyProcessed(Collection<Transfer> transfers) {
+        long processedTime = System.nanoTime();
+        for (Transfer transfer : transfers) {
+            settlementLag.record(processedTime - transfer.getCreatedNanos());
+            CompletableFuture<Transfer> completion = transfer.getCompletion();
+            if (completion != null) {
+                completion.complete(transfer);
+            }
+        }
+    }
+
+    /**
+     * drop the balance history kept for the snapshots which are closed by now, it is done once per batch,
+     * so the snapshot reads are back on the fast path soon after the readers are gone
+     */
+    private void pruneHistory() {
+        long horizon = versionClock.historyHorizon();
+        accountStore.pruneHistory(horizon);
+        hotDeposits.pruneHistory(horizon);
+        ShardedLedger ledger = shardedLedger;
+        if (ledger != null) {
+            ledger.pruneHistory(horizon);
+        }
+    }
+
+    /**
+     * write the validated transfer with its commit version into the journal before it is committed,
+     * in ACK_ON_FSYNC mode the transfer gets sync notification
+     *
+     * @param transfer transfer to be committed
+     * @return false if the transfer is not journaled and must not be committed: journal is fenced or append failed
+     */
+    private boolean journalTransfer(Transfer transfer) {
+        if (journal == null) {
+            return true;
+        }
+        if (journalFailure != null) {
+            return false;
+        }
         try {
-            transfers.parallelStream().forEach(t -> {
-                t.getFromAccount().applyPendingTransactions();
-                t.getToAccount().applyPendingTransactions();
-                t.setStatus(TransferStatus.PROCESSED);
-            });
+            journal.append(new JournalRecord(transfer.getId(), transfer.getVersion(),
+                                             transfer.getFromAccount().getAccountNumber(),
+                                             transfer.getToAccount().getAccountNumber(), transfer.getAmount()));
+        } catch (RuntimeException e) {
+            if (diagnosticLog.tryAcquire()) {
+                logger.error("Journal append failed, transfer is rejected: " + transfer + " ("
+                             + diagnosticLog.takeSuppressed() + " messages suppressed)", e);
+            }
+            return false;
+        }
+        if (durabilityMode == DurabilityMode.ACK_ON_FSYNC) {
+            transfer.setJournalSync(new CompletableFuture<>());
+        }
+        return true;
+    }
+
+    /**
+     * result of transfer rejected as it cannot be journaled, nothing is committed
+     */
+    static OperationResult journalUnavailable(long fromAcntNumber) {
+        return new OperationResult(2, "Journal unavailable", fromAcntNumber, null);
+    }
+
+    /**
+     * group commit: force the journal once for the batch and notify the submitters waiting for it.
+     * All the batch transfers were journaled before they were committed, so the sync covers them.
+     * A failed sync fences the journal: the records may be lost on restart, so the transfers are not acknowledged
+     * and no transfer is committed after them, the bank serves the reads till restart recovers from the journal
+     *
+     * @param transfers batch being processed
+     */
+    private void syncJournal(Collection<Transfer> transfers) {
+        RuntimeException failure = journalFailure;
+        if (failure == null) {
+            try {
+                journal.sync();
+            } catch (RuntimeException e) {
+                logger.error("Journal sync failed, batch size=" + transfers.size()
+                             + "; journal is fenced, transfers are rejected till restart", e);
+                journalFailure = e;
+                failure = e;
+            }
+        }
+        for (Transfer transfer : transfers) {
+            CompletableFuture<Transfer> journalSync = transfer.getJournalSync();
+            if (journalSync == null) {
+                continue;
+            }
+            if (failure == null) {
+                journalSync.complete(transfer);
+            } else {
+                journalSync.completeExceptionally(
+                        new IllegalStateException("Journal sync failed, the transfer may be lost on restart", failure));
+            }
+        }
+    }
+
+    /**
+     * write balance snapshot from a consistent point and drop the journal segments covered by it.
+     * Balances are read as of pinned version without locks, transfers go on while the snapshot is written
+     *
+     * @return snapshot commit version
+     */
+    long takeSnapshot() {
+        if (lockingMode == LockingMode.SHARDED) {
+            throw new IllegalStateException("Balance snapshot is not supported in SHARDED locking mode");
+        }
+        if (journalFailure != null) {
+            //in-memory balances may include the transfers lost by the journal, restart recovers from it
+            throw new IllegalStateException("Balance snapshot is not written as journal is fenced", journalFailure);
+        }
+        if (shardedLedger != null) {
+            //transfers in flight between shards are not in account balances, the snapshot would lose them
+            shardedLedger.awaitSettled();
+        }
+        long startTime = System.currentTimeMillis();
+        //the records before this position got their versions before the snapshot version is read, so it covers them
+        long journalPosition = journal.getWritePosition();
+        BalanceSnapshot snapshot;
+        try (VersionClock.Snapshot pinned = versionClock.pin()) {
+            long version = pinned.getVersion();
+            awaitCommits(version);
+            AccountStore store = accountStore;
+            snapshot = BalanceSnapshot.write(journal.getDirectory(), version, transferSequence.get(),
+                    handler -> forEachBalance(store, version, handler::accept));
+        }
+        journal.truncateBefore(journalPosition);
+        logger.info("Balance snapshot written, version = {}, accounts = {}, elapsed {} ms",
+                    snapshot.getVersion(), snapshot.getAccountCount(), System.currentTimeMillis() - startTime);
+        return snapshot.getVersion();
+    }
+
+    /**
+     * scheduled snapshot task, a failure is logged and the next attempt is made on schedule
+     */
+    private void writeSnapshot() {
+        try {
+            takeSnapshot();
+        } catch (RuntimeException e) {
+            logger.error("Balance snapshot failed", e);
+        }
+    }
+
+    /**
+     * load accounts from the latest balance snapshot or initialize them if there is no snapshot
+     *
+     * @param directory journal directory, the snapshot is kept in it
+     * @return snapshot commit version, journal records up to it are already in the balances
+     */
+    private long loadSnapshot(Path directory) {
+        long startTime = System.currentTimeMillis();
+        AccountStore store = new AccountStore(accountCount);
+        BalanceSnapshot snapshot = BalanceSnapshot.read(directory, store::add);
+        if (snapshot == null) {
+            initBankAccounts();
+            return 0L;
+        }
+        accountStore = store;
+        transferSequence.set(snapshot.getLastTransferId());
+        versionClock.advanceTo(snapshot.getVersion());
+        logger.info("Balance snapshot loaded, version = {}, accounts = {}, elapsed {} ms",
+                    snapshot.getVersion(), snapshot.getAccountCount(), System.currentTimeMillis() - startTime);
+        return snapshot.getVersion();
+    }
+
+    /**
+     * open the journal and replay its tail over the loaded accounts in the same pass that finds the end of records,
+     * the id and version sequences are moved past the journaled ones
+     *
+     * @param directory journal directory
+     * @param snapshotVersion version of the loaded snapshot, older records are skipped
+     * @return journal opened for appends
+     */
+    private TransferJournal recoverFromJournal(Path directory, long snapshotVersion) {
+        long startTime = System.currentTimeMillis();
+        AccountStore store = accountStore;
+        AtomicLong recordCount = new AtomicLong();
+        TransferJournal recovered = new TransferJournal(directory,
+                BankProperties.getLong("bank.journal.segmentSize", DEFAULT_JOURNAL_SEGMENT_SIZE), record -> {
+            if (record.getVersion() <= snapshotVersion) {
+                return;
+            }
+            int fromIndex = store.indexOf(record.getFromAccountNumber());
+            int toIndex = store.indexOf(record.getToAccountNumber());
+            if (fromIndex < 0 || toIndex < 0) {
+                logger.warn("Journal record of unknown account is skipped: {}", record);
+                return;
+            }
+            store.adjustBalance(fromIndex, -record.getAmount());
+            store.adjustBalance(toIndex, record.getAmount());
+            transferSequence.accumulateAndGet(record.getTransferId(), Math::max);
+            versionClock.advanceTo(record.getVersion());
+            recordCount.incrementAndGet();
+        });
+        logger.info("Recovered {} transfers from journal tail {}, version = {}, elapsed {} ms",
+                    recordCount.get(), directory, versionClock.currentVersion(),
+                    System.currentTimeMillis() - startTime);
+        return recovered;
+    }
+
+    /**
+     * move the batch deposits of hot accounts from their cells to the account balances: one commit for the whole
+     * batch under the stripes of the hot accounts and of the cells involved
+     *
+     * @param transfers batch being processed
+     */
+    private void foldHotDeposits(Collection<Transfer> transfers) {
+        HotDeposits deposits = hotDeposits;
+        if (deposits.size() == 0) {
+            return;
+        }
+        long[] amounts = new long[deposits.size() * LOCK_STRIPES];
+        AccountStore store = accountStore;
+        long stripeMask = 0L;
+        for (Transfer transfer : transfers) {
+            int slot = deposits.slotOf(transfer.getToAccount().getAccountNumber());
+            //the deposit to the accounts replaced by re-initialization was reset with its cells
+            if (slot >= 0 && transfer.getToAccount().isStoredIn(store)) {
+                int stripe = stripeOf(transfer.getFromAccount().getAccountNumber());
+                amounts[slot * LOCK_STRIPES + stripe] += transfer.getAmount();
+                stripeMask |= 1L << stripe | 1L << stripeOf(transfer.getToAccount().getAccountNumber());
+            }
+        }
+        if (stripeMask == 0L) {
+            return;
+        }
+        lockStripes(LockingMode.ACCOUNT, stripeMask);
+        try {
+            long version = versionClock.nextVersion();
+            long oldestPinnedVersion = versionClock.oldestPinnedVersion();
+            for (int slot = 0; slot < deposits.size(); slot++) {
+                long folded = 0L;
+                for (int stripe = 0; stripe < LOCK_STRIPES; stripe++) {
+                    long amount = amounts[slot * LOCK_STRIPES + stripe];
+                    if (amount != 0L) {
+                        deposits.commit(slot, stripe, -amount, version, oldestPinnedVersion);
+                        folded += amount;
+                    }
+                }
+                int index = store.indexOf(deposits.getAccountNumber(slot));
+                if (folded != 0L && index >= 0) {
+                    store.commit(index, folded, version, oldestPinnedVersion);
+                    store.applyDelta(index, folded);
+                }
+            }
         } finally {
-            writeLock.unlock();
+            unlockStripes(LockingMode.ACCOUNT, stripeMask);
+        }
+    }
+
+    /**
+     * take the lock(s) guarding transfer between two accounts: stripes of both accounts in ascending stripe order
+     * to avoid deadlock, in GLOBAL mode bank-wide read lock is taken before them
+     */
+    private void lockTransfer(LockingMode mode, long fromAcntNumber, long toAcntNumber) {
+        long startTime = lockGlobalRead(mode);
+        int fromStripe = stripeOf(fromAcntNumber);
+        int toStripe = creditStripeOf(fromAcntNumber, toAcntNumber);
+        accountLocks[Math.min(fromStripe, toStripe)].lock();
+        if (fromStripe != toStripe) {
+            accountLocks[Math.max(fromStripe, toStripe)].lock();
+        }
+        accountLockWait.record(System.nanoTime() - startTime);
+    }
+
+    /**
+     * release the lock(s) taken by {@link #lockTransfer(LockingMode, long, long)}
+     */
+    private void unlockTransfer(LockingMode mode, long fromAcntNumber, long toAcntNumber) {
+        int fromStripe = stripeOf(fromAcntNumber);
+        int toStripe = creditStripeOf(fromAcntNumber, toAcntNumber);
+        if (fromStripe != toStripe) {
+            accountLocks[Math.max(fromStripe, toStripe)].unlock();
+        }
+        accountLocks[Math.min(fromStripe, toStripe)].unlock();
+        if (mode == LockingMode.GLOBAL) {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * take the stripes selected by bit mask in ascending order (LOCK_STRIPES fits the bits of long),
+     * in GLOBAL mode bank-wide read lock is taken before them
+     */
+    private void lockStripes(LockingMode mode, long stripeMask) {
+        long startTime = lockGlobalRead(mode);
+        for (long mask = stripeMask; mask != 0; mask &= mask - 1) {
+            accountLocks[Long.numberOfTrailingZeros(mask)].lock();
+        }
+        accountLockWait.record(System.nanoTime() - startTime);
+    }
+
+    /**
+     * take bank-wide read lock in GLOBAL mode, recording the wait time
+     *
+     * @return System.nanoTime() after the lock is taken
+     */
+    private long lockGlobalRead(LockingMode mode) {
+        long startTime = System.nanoTime();
+        if (mode != LockingMode.GLOBAL) {
+            return startTime;
+        }
+        readLock.lock();
+        long lockedTime = System.nanoTime();
+        globalReadLockWait.record(lockedTime - startTime);
+        return lockedTime;
+    }
+
+    private static Histogram lockWaitHistogram(String lock) {
+        return Metrics.getInstance().histogram("bank_lock_wait_seconds", "Time spent waiting for bank locks",
+                                               Metrics.NANOS, "lock", lock);
+    }
+
+    /**
+     * release the lock(s) taken by {@link #lockStripes(LockingMode, long)}
+     */
+    private void unlockStripes(LockingMode mode, long stripeMask) {
+        for (long mask = stripeMask; mask != 0; ) {
+            int stripe = 63 - Long.numberOfLeadingZeros(mask);
+            accountLocks[stripe].unlock();
+            mask &= ~(1L << stripe);
+        }
+        if (mode == LockingMode.GLOBAL) {
+            readLock.unlock();
         }
-        logger.info("Async process of chunk transfers - end, size={}, elapsed {} ms",
-                    transfers.size(), System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * wait for the commits, which got version up to the snapshot one, to be finished.
+     * A commit holds the stripes of its accounts while it gets version and publishes balances, so passing
+     * every stripe once is enough; the locks are not held while the snapshot is read.
+     * Shard commits are not locked, they are awaited by {@link ShardedLedger#awaitCommits(long)}
+     *
+     * @param version pinned snapshot version
+     */
+    private void awaitCommits(long version) {
+        for (Lock lock : accountLocks) {
+            lock.lock();
+            lock.unlock();
+        }
+        ShardedLedger ledger = shardedLedger;
+        if (ledger != null) {
+            ledger.awaitCommits(version);
+        }
+    }
+
+    /**
+     * take all the account stripes in ascending order
+     */
+    private void lockAllAccounts() {
+        for (Lock lock : accountLocks) {
+            lock.lock();
+        }
+    }
+
+    private void unlockAllAccounts() {
+        for (int i = LOCK_STRIPES - 1; i >= 0; i--) {
+            accountLocks[i].unlock();
+        }
+    }
+
+    private static int stripeOf(long accountNumber) {
+        return Long.hashCode(accountNumber) & (LOCK_STRIPES - 1);
+    }
+
+    /**
+     * stripe guarding the deposit of transfer: of the deposit account or, for hot account, of the withdraw account,
+     * as the deposit goes to the cell guarded by it
+     */
+    private int creditStripeOf(long fromAcntNumber, long toAcntNumber) {
+        return stripeOf(hotDeposits.isHot(toAcntNumber) ? fromAcntNumber : toAcntNumber);
+    }
+
+    private static long[] parseAccountNumbers(String accountNumbers) {
+        return Arrays.stream(accountNumbers.split(","))
+                .map(String::trim)
+                .filter(accountNumber -> !accountNumber.isEmpty())
+                .mapToLong(Long::parseLong)
+                .distinct()
+                .toArray();
     }
 
     /**
@@ -170,35 +1122,231 @@ public class BankHolder {
      * @return operation result object
      */
     public OperationResult getAccount(Long accountNumber) {
-        Account account = bankAccounts.get(accountNumber);
+        AccountStore store = accountStore;
+        int index = accountNumber != null ? store.indexOf(accountNumber) : -1;
+        if (index >= 0 && hotDeposits.isHot(accountNumber)) {
+            //the balance and the cells of hot account are read from the same snapshot
+            return getAccounts(Collections.singletonList(accountNumber)).get(0);
+        }
 
-            Long balance = account != null ? account.getStampedBalance(System.nanoTime(), true) : null;
-            logger.info("Account#{} state requested, result = {}", accountNumber, balance);
+            Long balance = index >= 0 ? store.getBalance(index) : null;
+            if (diagnosticLog.tryAcquire()) {
+                logger.info("Account#{} state requested, result = {} ({} messages suppressed)",
+                            accountNumber, balance, diagnosticLog.takeSuppressed());
+            }
             return balance != null ?
-                    new OperationResult(0, null, account.getAccountNumber(), balance) :
+                    new OperationResult(0, null, accountNumber, balance) :
                     new OperationResult(1, "NOT Found", accountNumber, null);
     }
 
     /**
-     * getter for bankAccounts member (access = package private, for testing only)
-     * @return Map of bank accounts
+     * getter for account store (access = package private, for testing only)
+     * @return store of bank accounts
      */
-    Map<Long, Account> getBankAccounts() {
-        return bankAccounts;
+    AccountStore getAccountStore() {
+        return accountStore;
     }
-    // initialize bank accounts as: 10 accounts with initial amount of 100 bitcoins
+    // initialize bank accounts as: bank.accountCount (10 by default) accounts with initial amount of 100 bitcoins
     void initBankAccounts() {
+        initBankAccounts(accountCount);
+    }
+
+    /**
+     * re-initialize bank with the given number of accounts (numbered from 1) and the initial balance on each,
+     * used by tests and benchmarks to vary the size of the bank
+     *
+     * @param accountCount number of accounts to create
+     */
+    public void initBankAccounts(int accountCount) {
+        AccountStore store = new AccountStore(accountCount);
+        for (long accountNumber = MIN_ACCOUNT_NO; accountNumber < MIN_ACCOUNT_NO + accountCount; accountNumber++) {
+            store.add(accountNumber, INITIAL_BALANCE);
+        }
+        ShardedLedger ledger = shardedLedger;
+        if (ledger != null) {
+            ledger.awaitSettled();
+        }
+        replaceAccountStore(store);
+    }
+
+    /**
+     * publish new accounts instead of the current ones, no transfer is in progress meanwhile
+     */
+    private void replaceAccountStore(AccountStore store) {
         writeLock.lock();
+        lockAllAccounts();
         try {
-            bankAccounts.clear();
-            bankAccounts.putAll(
-                    LongStream.range(MIN_ACCOUNT_NO, MIN_ACCOUNT_NO + MAX_ACCOUNT_NO).boxed()
-                            .map(k -> new Account(k, INITIAL_BALANCE))
-                            .collect(Collectors.toMap(Account::getAccountNumber, acnt -> acnt))
-            );
+            accountStore = store;
+            //transfers of the replaced accounts are not looked up any more
+            recentTransfers.clear();
+            idempotencyCache.clear();
+            hotDeposits.reset();
         } finally {
+            unlockAllAccounts();
             writeLock.unlock();
         }
     }
 
+    /**
+     * subscribe to the batches processed in GLOBAL and ACCOUNT locking modes, used by replication.
+     * The listener is called on the batch thread after the batch is PROCESSED, in processing order;
+     * it should only hand the batch off, the next batch waits for it
+     *
+     * @param listener listener of processed batches, null to unsubscribe
+     */
+    public void setBatchListener(Consumer<Collection<Transfer>> listener) {
+        if (listener != null && lockingMode == LockingMode.SHARDED) {
+            throw new IllegalStateException("Replication is not supported in SHARDED locking mode");
+        }
+        batchListener = listener;
+    }
+
+    /**
+     * replace replica accounts by the primary snapshot
+     *
+     * @param store accounts with balances as of the snapshot
+     * @param primaryVersion primary commit version of the snapshot
+     * @param primaryTimeMillis primary time the snapshot is sent at
+     */
+    public void loadReplica(AccountStore store, long primaryVersion, long primaryTimeMillis) {
+        requireReplica();
+        replaceAccountStore(store);
+        replicatedVersion = primaryVersion;
+        replicatedTimeMillis = primaryTimeMillis;
+    }
+
+    /**
+     * apply the transfers replicated from the primary, in primary processing order. Every transfer is committed
+     * and saved at once under the stripes of both accounts with its own replica version, so the snapshot
+     * reads of the replica are consistent as on the primary
+     *
+     * @param records transfers processed by the primary
+     * @param primaryTimeMillis primary time the transfers are sent at
+     */
+    public void applyReplicated(List<JournalRecord> records, long primaryTimeMillis) {
+        requireReplica();
+        AccountStore store = accountStore;
+        for (JournalRecord record : records) {
+            int fromIndex = store.indexOf(record.getFromAccountNumber());
+            int toIndex = store.indexOf(record.getToAccountNumber());
+            if (fromIndex < 0 || toIndex < 0) {
+                logger.warn("Replicated transfer of unknown account is skipped: {}", record);
+                continue;
+            }
+            lockTransfer(LockingMode.ACCOUNT, record.getFromAccountNumber(), record.getToAccountNumber());
+            try {
+                long version = versionClock.nextVersion();
+                long oldestPinnedVersion = versionClock.oldestPinnedVersion();
+                store.commit(fromIndex, -record.getAmount(), version, oldestPinnedVersion);
+                store.commit(toIndex, record.getAmount(), version, oldestPinnedVersion);
+                store.apply(fromIndex);
+                store.apply(toIndex);
+            } finally {
+                unlockTransfer(LockingMode.ACCOUNT, record.getFromAccountNumber(), record.getToAccountNumber());
+            }
+            replicatedVersion = record.getVersion();
+        }
+        replicatedTimeMillis = primaryTimeMillis;
+    }
+
+    private void requireReplica() {
+        if (!replica) {
+            throw new IllegalStateException("Replicated state is applied only by read-only replica");
+        }
+    }
+
+    /**
+     * getter, true if the bank is read-only replica
+     */
+    public boolean isReplica() {
+        return replica;
+    }
+
+    /**
+     * getter, commit version: of the primary state applied for replica, the latest one for primary
+     */
+    public long getReplicatedVersion() {
+        return replica ? replicatedVersion : versionClock.currentVersion();
+    }
+
+    /**
+     * getter, replication lag: time since the primary sent the latest state applied by replica,
+     * -1 if nothing is applied yet; 0 for primary
+     */
+    public long getReplicationLagMs() {
+        if (!replica) {
+            return 0L;
+        }
+        long timeMillis = replicatedTimeMillis;
+        return timeMillis == 0L ? -1L : Math.max(System.currentTimeMillis() - timeMillis, 0L);
+    }
+
+    /**
+     * switch locking strategy (access = package private, for testing only), the bank should be idle
+     * @param lockingMode new locking mode
+     */
+    void setLockingMode(LockingMode lockingMode) {
+        if (lockingMode == LockingMode.SHARDED) {
+            startShardedLedger();
+        }
+        this.lockingMode = lockingMode;
+    }
+
+    /**
+     * set hot accounts (access = package private, for testing only), the bank should be idle
+     * @param accountNumbers numbers of hot accounts, none to disable
+     */
+    void setHotAccounts(long... accountNumbers) {
+        hotDeposits = new HotDeposits(accountNumbers, LOCK_STRIPES);
+    }
+
+    /**
+     * get shard threads, they are started on the first call
+     */
+    private ShardedLedger startShardedLedger() {
+        ShardedLedger ledger = shardedLedger;
+        if (ledger != null) {
+            return ledger;
+        }
+        synchronized (this) {
+            if (shardedLedger == null) {
+                shardedLedger = new ShardedLedger(Math.max(BankProperties.getInt("bank.shards", DEFAULT_SHARDS), 1),
+                        BatchSettings.fromProperties("bank.batch"), versionClock, new LedgerSettlement());
+            }
+            return shardedLedger;
+        }
+    }
+
+    /**
+     * bank side of shard settlement: journal, audit, status lookup and processing notifications,
+     * the same as for the transfers of locking modes
+     */
+    private class LedgerSettlement implements ShardedLedger.Settlement {
+        @Override
+        public boolean journal(Transfer transfer) {
+            return journalTransfer(transfer);
+        }
+
+        @Override
+        public void accepted(Transfer transfer, OperationResult result) {
+            recentTransfers.add(transfer);
+            auditTransfer(transfer.getId(), transfer.getFromAccount().getAccountNumber(),
+                          transfer.getToAccount().getAccountNumber(), transfer.getAmount(), result);
+        }
+
+        @Override
+        public void batchCommitted(List<Transfer> transfers) {
+            if (journal != null) {
+                syncJournal(transfers);
+            }
+        }
+
+        @Override
+        public void batchProcessed(List<Transfer> transfers) {
+            batchSizes.record(transfers.size());
+            notifyProcessed(transfers);
+            pruneHistory();
+        }
+    }
+
 }
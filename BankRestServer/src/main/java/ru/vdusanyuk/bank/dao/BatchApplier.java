@@ -0,0 +1,129 @@
+package ru.vdusanyuk.bank.dao;
+
+import ru.vdusanyuk.bank.dao.model.Account;
+import ru.vdusanyuk.bank.dao.model.AccountStore;
+import ru.vdusanyuk.bank.dao.model.Transfer;
+import ru.vdusanyuk.bank.dao.model.TransferStatus;
+import ru.vdusanyuk.bank.util.LongIndexMap;
+
+import java.util.Collection;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Batch application stage: the batch is grouped by account and every account gets one net delta of its transfers
+ * added to the saved balance, so each account is touched once per batch whatever number of transfers it has.
+ * The distinct accounts are split into disjoint ranges applied in parallel on the ForkJoin pool;
+ * small batches are applied by the calling thread. Saved balances are changed by the batch thread only,
+ * so no account lock is needed
+ */
+class BatchApplier {
+
+    /**
+     * accounts applied by one task at least, fewer are not worth splitting
+     */
+    private static final int MIN_TASK_ACCOUNTS = 1024;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * constructor
+     * @param pool pool for parallel application
+     */
+    BatchApplier(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * apply the batch and mark the transfers PROCESSED
+     * @param store accounts of the batch transfers
+     * @param transfers batch
+     * @param hotDeposits hot accounts, their deposits are applied when the cells are folded
+     * @return number of distinct accounts applied
+     */
+    int apply(AccountStore store, Collection<Transfer> transfers, HotDeposits hotDeposits) {
+        Deltas deltas = new Deltas(store, transfers.size() * 2);
+        for (Transfer transfer : transfers) {
+            deltas.add(transfer.getFromAccount(), -transfer.getAmount());
+            if (!hotDeposits.isHot(transfer.getToAccount().getAccountNumber())) {
+                deltas.add(transfer.getToAccount(), transfer.getAmount());
+            }
+        }
+        if (deltas.count < 2 * MIN_TASK_ACCOUNTS) {
+            deltas.apply(0, deltas.count);
+        } else {
+            pool.invoke(new ApplyTask(deltas, 0, deltas.count));
+        }
+        for (Transfer transfer : transfers) {
+            transfer.setStatus(TransferStatus.PROCESSED);
+        }
+        return deltas.count;
+    }
+
+    /**
+     * net delta of every distinct account of the batch, in order of the first transfer
+     */
+    private static final class Deltas {
+        private final AccountStore store;
+        private final LongIndexMap positions;
+        private final int[] indexes;
+        private final long[] amounts;
+        private int count;
+
+        private Deltas(AccountStore store, int capacity) {
+            this.store = store;
+            positions = new LongIndexMap(capacity);
+            indexes = new int[capacity];
+            amounts = new long[capacity];
+        }
+
+        private void add(Account account, long amount) {
+            if (!account.isStoredIn(store)) {
+                //transfer of the accounts replaced by re-initialization
+                account.applyPendingTransactions();
+                return;
+            }
+            int position = positions.get(account.getIndex());
+            if (position < 0) {
+                positions.put(account.getIndex(), count);
+                indexes[count] = account.getIndex();
+                amounts[count++] = amount;
+            } else {
+                amounts[position] += amount;
+            }
+        }
+
+        private void apply(int from, int to) {
+            for (int i = from; i < to; i++) {
+                if (amounts[i] != 0L) {
+                    store.applyDelta(indexes[i], amounts[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * application of the range of distinct accounts, split in halves till it is small enough
+     */
+    private static final class ApplyTask extends RecursiveAction {
+        private final Deltas deltas;
+        private final int from;
+        private final int to;
+
+        private ApplyTask(Deltas deltas, int from, int to) {
+            this.deltas = deltas;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from < 2 * MIN_TASK_ACCOUNTS) {
+                deltas.apply(from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ApplyTask(deltas, from, middle), new ApplyTask(deltas, middle, to));
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package ru.vdusanyuk.bank.dao;
+
+import ru.vdusanyuk.bank.dao.model.AccountStore;
+import ru.vdusanyuk.bank.util.LongIndexMap;
+
+/**
+ * Deferred deposits of hot accounts (bank.hotAccounts), e.g. merchant accounts receiving a large share of transfers.
+ * Deposit never fails validation and commutes with other deposits, so it is not committed to the hot account under
+ * the lock of the account: it is committed together with the withdraw, under the lock stripe of withdraw account
+ * only, to the cell of the hot account selected by that stripe. The batch folds the cells into the account balance
+ * once per batch. Cells are versioned as the account balances, so the snapshot reads see the deposit from its commit
+ * version on: the balance of hot account is its own balance plus its cells
+ */
+class HotDeposits {
+
+    private final long[] accountNumbers;
+    /**
+     * slot of hot account by its number
+     */
+    private final LongIndexMap slots;
+    private final int stripes;
+    /**
+     * cells of slot s are s * stripes .. (s + 1) * stripes - 1, the cell is guarded by its lock stripe
+     */
+    private volatile AccountStore cells;
+
+    /**
+     * constructor
+     * @param accountNumbers numbers of hot accounts
+     * @param stripes number of lock stripes
+     */
+    HotDeposits(long[] accountNumbers, int stripes) {
+        this.accountNumbers = accountNumbers.clone();
+        this.stripes = stripes;
+        slots = new LongIndexMap(accountNumbers.length);
+        for (int slot = 0; slot < accountNumbers.length; slot++) {
+            slots.put(accountNumbers[slot], slot);
+        }
+        reset();
+    }
+
+    /**
+     * getter, number of hot accounts
+     */
+    int size() {
+        return accountNumbers.length;
+    }
+
+    long getAccountNumber(int slot) {
+        return accountNumbers[slot];
+    }
+
+    /**
+     * slot of the account
+     * @return slot or -1 if the account is not hot
+     */
+    int slotOf(long accountNumber) {
+        return slots.get(accountNumber);
+    }
+
+    boolean isHot(long accountNumber) {
+        return slots.get(accountNumber) >= 0;
+    }
+
+    /**
+     * commit balance change of the cell, the caller holds the lock stripe
+     * @param slot hot account slot
+     * @param stripe lock stripe of the cell
+     * @param amount deposit, negative when the cell is folded
+     * @param version commit version
+     * @param oldestPinnedVersion oldest snapshot version still in use
+     */
+    void commit(int slot, int stripe, long amount, long version, long oldestPinnedVersion) {
+        cells.commit(slot * stripes + stripe, amount, version, oldestPinnedVersion);
+    }
+
+    /**
+     * deposits of the account not folded yet, as of snapshot version
+     * @return sum of the cells, 0 if the account is not hot
+     */
+    long getPending(long accountNumber, long version) {
+        int slot = slots.get(accountNumber);
+        return slot >= 0 ? getPending(cells, slot, version) : 0L;
+    }
+
+    /**
+     * deposits of all the hot accounts not folded yet, as of snapshot version
+     */
+    long getTotalPending(long version) {
+        AccountStore store = cells;
+        long pending = 0;
+        for (int slot = 0; slot < accountNumbers.length; slot++) {
+            pending += getPending(store, slot, version);
+        }
+        return pending;
+    }
+
+    /**
+     * deposits of all the hot accounts not folded yet, the latest ones
+     */
+    long getTotalPending() {
+        return getTotalPending(Long.MAX_VALUE);
+    }
+
+    /**
+     * drop the replaced cell balances no reader can see any more, see {@link AccountStore#pruneHistory(long)}
+     */
+    void pruneHistory(long horizon) {
+        cells.pruneHistory(horizon);
+    }
+
+    /**
+     * forget the deposits, the accounts are replaced
+     */
+    void reset() {
+        AccountStore store = new AccountStore(accountNumbers.length * stripes);
+        for (int cell = 0; cell < accountNumbers.length * stripes; cell++) {
+            store.add(cell, 0L);
+        }
+        cells = store;
+    }
+
+    private long getPending(AccountStore store, int slot, long version) {
+        long pending = 0;
+        for (int cell = slot * stripes; cell < (slot + 1) * stripes; cell++) {
+            pending += store.getCommittedBalance(cell, version);
+        }
+        return pending;
+    }
+}
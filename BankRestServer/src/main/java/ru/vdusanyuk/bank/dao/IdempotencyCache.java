@@ -0,0 +1,178 @@
+package ru.vdusanyuk.bank.dao;
+
+import ru.vdusanyuk.bank.dao.model.OperationResult;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Bounded dedup cache of transfer results by client idempotency key. The first request with the key is submitted,
+ * the retries get its result, completed or still pending, by one hash lookup. The key is kept with the transfer
+ * parameters, the request with the same key and other parameters is not a retry and gets the rejection code 4.
+ * Keys are evicted in insertion order when there are more than capacity of them or they are older than time to live.
+ * Rejected as overloaded or failed request is forgotten, so that its retry is submitted again
+ */
+public class IdempotencyCache {
+
+    private final int capacity;
+    private final long ttlNanos;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    /**
+     * entries in insertion order with their number, for eviction; the forgotten entries stay here till evicted,
+     * so the memory is bounded by capacity
+     */
+    private final Queue<Entry> insertionOrder = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger insertionCount = new AtomicInteger();
+    private final LongAdder replays = new LongAdder();
+    private final LongAdder mismatches = new LongAdder();
+
+    /**
+     * constructor
+     * @param capacity number of the latest keys kept
+     * @param ttlMillis time the key is kept for
+     */
+    public IdempotencyCache(int capacity, long ttlMillis) {
+        if (capacity <= 0 || ttlMillis <= 0) {
+            throw new IllegalArgumentException("Invalid capacity or time to live: " + capacity + ", " + ttlMillis);
+        }
+        this.capacity = capacity;
+        this.ttlNanos = ttlMillis * 1_000_000L;
+    }
+
+    /**
+     * result of the transfer request with the key
+     * @param key idempotency key
+     * @param fromAcntNumber account number for withdraw
+     * @param toAcntNumber account number for deposit
+     * @param amount amount for transfer
+     * @param request submits the request, called only if there is no live result of the key
+     * @return result of the first request with the key or, if it has other parameters, result with code 4
+     */
+    public CompletableFuture<OperationResult> computeIfAbsent(String key, long fromAcntNumber, long toAcntNumber,
+                                                              long amount,
+                                                              Supplier<CompletableFuture<OperationResult>> request) {
+        long now = System.nanoTime();
+        Entry entry = entries.get(key);
+        if (entry != null && !entry.isExpired(now)) {
+            return replay(entry, fromAcntNumber, toAcntNumber, amount);
+        }
+        Entry newEntry = new Entry(key, now, fromAcntNumber, toAcntNumber, amount);
+        while (true) {
+            entry = entries.putIfAbsent(key, newEntry);
+            if (entry == null) {
+                break;
+            }
+            if (!entry.isExpired(now)) {
+                return replay(entry, fromAcntNumber, toAcntNumber, amount);
+            }
+            entries.remove(key, entry);
+        }
+        insertionOrder.add(newEntry);
+        insertionCount.incrementAndGet();
+        evict(now);
+        CompletableFuture<OperationResult> result;
+        try {
+            result = request.get();
+        } catch (RuntimeException e) {
+            entries.remove(key, newEntry);
+            newEntry.result.completeExceptionally(e);
+            throw e;
+        }
+        result.whenComplete((operationResult, failure) -> {
+            if (failure != null || operationResult.getCode() == 2) {
+                entries.remove(key, newEntry);
+            }
+            if (failure != null) {
+                newEntry.result.completeExceptionally(failure);
+            } else {
+                newEntry.result.complete(operationResult);
+            }
+        });
+        return newEntry.result;
+    }
+
+    /**
+     * result of the first request with the key if the retry has the same parameters
+     */
+    private CompletableFuture<OperationResult> replay(Entry entry, long fromAcntNumber, long toAcntNumber,
+                                                      long amount) {
+        if (entry.fromAcntNumber != fromAcntNumber || entry.toAcntNumber != toAcntNumber || entry.amount != amount) {
+            mismatches.increment();
+            return CompletableFuture.completedFuture(
+                    new OperationResult(4, "idempotency key is used by another request", fromAcntNumber, null));
+        }
+        replays.increment();
+        return entry.result;
+    }
+
+    /**
+     * getter, number of keys kept
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * getter, number of requests answered from the cache
+     */
+    public long getReplays() {
+        return replays.sum();
+    }
+
+    /**
+     * getter, number of requests rejected as the key is used by another request
+     */
+    public long getMismatches() {
+        return mismatches.sum();
+    }
+
+    /**
+     * forget all the keys
+     */
+    public void clear() {
+        for (Entry entry; (entry = insertionOrder.poll()) != null; ) {
+            insertionCount.decrementAndGet();
+            entries.remove(entry.key, entry);
+        }
+    }
+
+    private void evict(long now) {
+        for (Entry oldest = insertionOrder.peek(); oldest != null
+                && (insertionCount.get() > capacity || oldest.isExpired(now)); oldest = insertionOrder.peek()) {
+            //the oldest is at the head, unless another thread has evicted it already
+            if (insertionOrder.remove(oldest)) {
+                insertionCount.decrementAndGet();
+                entries.remove(oldest.key, oldest);
+            }
+        }
+    }
+
+    /**
+     * result of the key with the transfer parameters and the time it is added at
+     */
+    private final class Entry {
+        private final String key;
+        private final long createdNanos;
+        private final long fromAcntNumber;
+        private final long toAcntNumber;
+        private final long amount;
+        private final CompletableFuture<OperationResult> result = new CompletableFuture<>();
+
+        private Entry(String key, long createdNanos, long fromAcntNumber, long toAcntNumber, long amount) {
+            this.key = key;
+            this.createdNanos = createdNanos;
+            this.fromAcntNumber = fromAcntNumber;
+            this.toAcntNumber = toAcntNumber;
+            this.amount = amount;
+        }
+
+        private boolean isExpired(long now) {
+            return now - createdNanos > ttlNanos;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package ru.vdusanyuk.bank.dao;
+
+/**
+ * enum for locking strategies of {@link BankHolder}
+ */
+public enum LockingMode {
+    /**
+     * transfers share the bank-wide read lock (and lock the stripes of their accounts),
+     * batch processing takes the bank-wide write lock
+     */
+    GLOBAL,
+    /**
+     * transfers and batch processing lock only the stripes of the two accounts involved
+     */
+    ACCOUNT,
+    /**
+     * accounts are partitioned into shards, each owned by one thread which commits and applies the transfers
+     * of its accounts without locks; cross-shard transfer is handed off from debit shard to credit one,
+     * see {@link ShardedLedger}
+     */
+    SHARDED
+}
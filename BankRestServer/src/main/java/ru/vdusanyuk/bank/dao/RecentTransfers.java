@@ -0,0 +1,64 @@
+package ru.vdusanyuk.bank.dao;
+
+import ru.vdusanyuk.bank.dao.model.Transfer;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded index of recent transfers by id. Transfer ids are sequential, so the transfer is kept in the slot
+ * id % capacity and evicted by the transfer taking the same slot capacity ids later: no key boxing, no entry objects
+ * and no cleanup, the memory is fixed by capacity. Lookup is lock-free, the status is read from the transfer itself
+ */
+public class RecentTransfers {
+
+    private final AtomicReferenceArray<Transfer> transfers;
+
+    /**
+     * constructor
+     * @param capacity number of the latest transfer ids kept
+     */
+    public RecentTransfers(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        transfers = new AtomicReferenceArray<>(capacity);
+    }
+
+    /**
+     * register transfer, it replaces the transfer with id capacity less
+     * @param transfer transfer with positive id
+     */
+    public void add(Transfer transfer) {
+        transfers.lazySet(slotOf(transfer.getId()), transfer);
+    }
+
+    /**
+     * find transfer by id
+     * @param id transfer id
+     * @return transfer or null if it is unknown or evicted already
+     */
+    public Transfer get(long id) {
+        if (id <= 0) {
+            return null;
+        }
+        Transfer transfer = transfers.get(slotOf(id));
+        return transfer != null && transfer.getId() == id ? transfer : null;
+    }
+
+    /**
+     * forget all the transfers
+     */
+    public void clear() {
+        for (int i = 0; i < transfers.length(); i++) {
+            transfers.lazySet(i, null);
+        }
+    }
+
+    public int capacity() {
+        return transfers.length();
+    }
+
+    private int slotOf(long id) {
+        return (int) (id % transfers.length());
+    }
+}
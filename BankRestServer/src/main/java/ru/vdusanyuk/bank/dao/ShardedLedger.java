@@ -0,0 +1,373 @@
+package ru.vdusanyuk.bank.dao;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.vdusanyuk.bank.dao.model.AccountStore;
+import ru.vdusanyuk.bank.dao.model.OperationResult;
+import ru.vdusanyuk.bank.dao.model.Transfer;
+import ru.vdusanyuk.bank.dao.model.TransferStatus;
+import ru.vdusanyuk.bank.util.BatchQueue;
+import ru.vdusanyuk.bank.util.BatchSettings;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Ledger partitioned into shards by account number (SHARDED locking mode of {@link BankHolder}): every shard is owned
+ * by one thread, which validates, commits and applies the transfers of its accounts without locks.
+ * Transfer is queued to the shard of its withdraw account. If the deposit account is in the same shard, both are
+ * committed at once. Otherwise the debit is committed together with credit of the shard transit balance and
+ * the transfer is handed off to the shard of the deposit account, which commits the credit together with debit
+ * of its own transit balance. Each commit gets its own version, so the money in flight is seen by snapshots
+ * on transit balances and the bank total is the sum of account and transit balances.
+ * Intake of new transfers is bounded, hand-offs are never rejected, so shards never wait for each other
+ */
+class ShardedLedger {
+
+    private final static Logger logger = LoggerFactory.getLogger(ShardedLedger.class);
+
+    /**
+     * commit state of shard: no commit in progress
+     */
+    private static final long IDLE = Long.MAX_VALUE;
+    /**
+     * commit state of shard: commit is started, its version is not known yet
+     */
+    private static final long VERSION_PENDING = -1L;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * bank side of transfer settlement, called on shard threads
+     */
+    interface Settlement {
+        /**
+         * write-ahead journal of the transfer got its version, called before the balances are published
+         * @return false if the transfer is not journaled and must not be committed
+         */
+        boolean journal(Transfer transfer);
+
+        /**
+         * debit of the transfer is validated and, if it is passed, committed
+         */
+        void accepted(Transfer transfer, OperationResult result);
+
+        /**
+         * transfers committed by the shard batch, before they are applied
+         */
+        void batchCommitted(List<Transfer> transfers);
+
+        /**
+         * transfers PROCESSED by the shard batch
+         */
+        void batchProcessed(List<Transfer> transfers);
+    }
+
+    private final VersionClock versionClock;
+    private final Settlement settlement;
+    private final Shard[] shards;
+    /**
+     * transit balance of every shard, by shard index
+     */
+    private final AccountStore transit;
+    /**
+     * cross-shard transfers debited but not credited yet
+     */
+    private final AtomicLong inFlight = new AtomicLong();
+
+    /**
+     * constructor, starts shard threads
+     * @param shardCount number of shards
+     * @param settings intake queue settings of every shard, the batch drained at once is up to max batch size
+     * @param versionClock commit version clock of the bank
+     * @param settlement bank side of settlement
+     */
+    ShardedLedger(int shardCount, BatchSettings settings, VersionClock versionClock, Settlement settlement) {
+        this.versionClock = versionClock;
+        this.settlement = settlement;
+        transit = new AccountStore(shardCount);
+        shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            transit.add(i, 0L);
+            shards[i] = new Shard(i, BatchQueue.create(settings), settings.getMaxBatchSize());
+        }
+        for (Shard shard : shards) {
+            shard.thread.start();
+        }
+        logger.info("Sharded ledger started, shards = {}, intake {}", shardCount, settings);
+    }
+
+    /**
+     * claim intake slot of the shard owning withdraw account, applying overflow policy of the queue
+     * @return slot or -1 if the transfer should be rejected
+     */
+    long claim(long fromAcntNumber) {
+        return shards[shardOf(fromAcntNumber)].intake.claim();
+    }
+
+    /**
+     * queue new transfer to the shard owning its withdraw account
+     * @param slot slot claimed by {@link #claim(long)}
+     * @param transfer draft transfer
+     * @return result of debit validation, completed by the shard
+     */
+    CompletableFuture<OperationResult> submit(long slot, Transfer transfer) {
+        Shard shard = shards[shardOf(transfer.getFromAccount().getAccountNumber())];
+        Debit debit = new Debit(transfer);
+        shard.intake.publish(slot, debit);
+        shard.wakeUp();
+        return debit.result;
+    }
+
+    /**
+     * sum of transit balances as of snapshot version, i.e. the money in flight between shards
+     */
+    long getTransitBalance(long version) {
+        long balance = 0;
+        for (int i = 0; i < shards.length; i++) {
+            balance += transit.getCommittedBalance(i, version);
+        }
+        return balance;
+    }
+
+    /**
+     * drop the replaced transit balances no reader can see any more, see {@link AccountStore#pruneHistory(long)}
+     */
+    void pruneHistory(long horizon) {
+        transit.pruneHistory(horizon);
+    }
+
+    /**
+     * wait for the shard commits, which got version up to the given one, to be finished
+     */
+    void awaitCommits(long version) {
+        for (Shard shard : shards) {
+            for (long commitVersion = shard.commitVersion;
+                 commitVersion != IDLE && (commitVersion == VERSION_PENDING || commitVersion <= version);
+                 commitVersion = shard.commitVersion) {
+                Thread.yield();
+            }
+        }
+    }
+
+    /**
+     * wait till the queued transfers are processed and nothing is in flight between shards
+     */
+    void awaitSettled() {
+        while (getQueueSize() > 0 || inFlight.get() > 0) {
+            LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+        }
+    }
+
+    /**
+     * getter, number of new transfers queued to the shards
+     */
+    int getQueueSize() {
+        int size = 0;
+        for (Shard shard : shards) {
+            size += shard.intake.size();
+        }
+        return size;
+    }
+
+    /**
+     * getter, number of cross-shard transfers debited but not credited yet
+     */
+    long getInFlight() {
+        return inFlight.get();
+    }
+
+    int getShardCount() {
+        return shards.length;
+    }
+
+    private int shardOf(long accountNumber) {
+        return (int) Math.floorMod(accountNumber, (long) shards.length);
+    }
+
+    /**
+     * new transfer with its debit result
+     */
+    private static final class Debit {
+        private final Transfer transfer;
+        private final CompletableFuture<OperationResult> result = new CompletableFuture<>();
+
+        private Debit(Transfer transfer) {
+            this.transfer = transfer;
+        }
+    }
+
+    /**
+     * shard thread with its queues, the lists are batch buffers reused by the thread
+     */
+    private final class Shard implements Runnable {
+        private final int index;
+        private final BatchQueue<Debit> intake;
+        private final Queue<Transfer> handoffs = new ConcurrentLinkedQueue<>();
+        private final int maxBatchSize;
+        private final Thread thread;
+        private volatile boolean waiting;
+        /**
+         * version of the commit in progress: VERSION_PENDING till it is assigned, IDLE between commits
+         */
+        private volatile long commitVersion = IDLE;
+
+        private final List<Debit> debits = new ArrayList<>();
+        private final List<Transfer> committed = new ArrayList<>();
+        private final List<Transfer> processed = new ArrayList<>();
+
+        private Shard(int index, BatchQueue<Debit> intake, int maxBatchSize) {
+            this.index = index;
+            this.intake = intake;
+            this.maxBatchSize = maxBatchSize;
+            thread = new Thread(this, "ledger-shard-" + index);
+            thread.setDaemon(true);
+        }
+
+        /**
+         * shard loop: credit the hand-offs, then debit the new transfers, then apply them; park when idle
+         */
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    int drained = creditHandoffs() + debitTransfers();
+                    if (drained > 0) {
+                        finishBatch();
+                        continue;
+                    }
+                } catch (RuntimeException e) {
+                    logger.error("Shard " + index + " batch processing failed", e);
+                }
+                waiting = true;
+                //re-check after the flag is visible to producers, so that wake up is not missed
+                if (handoffs.isEmpty() && intake.size() == 0) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                waiting = false;
+            }
+        }
+
+        private void wakeUp() {
+            if (waiting) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        private int creditHandoffs() {
+            int credited = 0;
+            for (Transfer transfer; credited < maxBatchSize && (transfer = handoffs.poll()) != null; credited++) {
+                long version = startCommit();
+                try {
+                    long oldestPinnedVersion = versionClock.oldestPinnedVersion();
+                    transfer.getToAccount().commitPendingTransaction(transfer, false, version, oldestPinnedVersion);
+                    transit.commit(index, -transfer.getAmount(), version, oldestPinnedVersion);
+                } finally {
+                    commitVersion = IDLE;
+                }
+                inFlight.decrementAndGet();
+                processed.add(transfer);
+            }
+            return credited;
+        }
+
+        private int debitTransfers() {
+            int drained = intake.drainTo(debits, maxBatchSize);
+            for (Debit debit : debits) {
+                try {
+                    debit(debit);
+                } catch (RuntimeException e) {
+                    logger.error("Transfer debit failed: " + debit.transfer, e);
+                    debit.result.completeExceptionally(e);
+                }
+            }
+            debits.clear();
+            return drained;
+        }
+
+        private void debit(Debit debit) {
+            Transfer transfer = debit.transfer;
+            OperationResult result = transfer.getFromAccount().addPendingTransaction(transfer, true);
+            Shard creditShard = null;
+            if (result.getCode() == 0) {
+                Shard toShard = shards[shardOf(transfer.getToAccount().getAccountNumber())];
+                long version = startCommit();
+                try {
+                    transfer.setVersion(version);
+                    //write-ahead: the balances are published only for the journaled transfer
+                    if (settlement.journal(transfer)) {
+                        long oldestPinnedVersion = versionClock.oldestPinnedVersion();
+                        transfer.getFromAccount().commitPendingTransaction(transfer, true, version,
+                                                                           oldestPinnedVersion);
+                        if (toShard == this) {
+                            transfer.getToAccount().commitPendingTransaction(transfer, false, version,
+                                                                             oldestPinnedVersion);
+                        } else {
+                            transit.commit(index, transfer.getAmount(), version, oldestPinnedVersion);
+                        }
+                        transfer.setStatus(TransferStatus.PENDING);
+                    } else {
+                        transfer.setStatus(TransferStatus.ERROR);
+                        result = BankHolder.journalUnavailable(transfer.getFromAccount().getAccountNumber());
+                    }
+                } finally {
+                    commitVersion = IDLE;
+                }
+                if (result.getCode() == 0) {
+                    committed.add(transfer);
+                    if (toShard == this) {
+                        processed.add(transfer);
+                    } else {
+                        creditShard = toShard;
+                        inFlight.incrementAndGet();
+                    }
+                }
+            }
+            settlement.accepted(transfer, result);
+            debit.result.complete(result.withTransferId(transfer.getId()));
+            if (creditShard != null) {
+                creditShard.handoffs.add(transfer);
+                creditShard.wakeUp();
+            }
+        }
+
+        /**
+         * mark the commit started and get its version, see {@link #awaitCommits(long)}
+         */
+        private long startCommit() {
+            commitVersion = VERSION_PENDING;
+            long version = versionClock.nextVersion();
+            commitVersion = version;
+            return version;
+        }
+
+        /**
+         * apply the accounts of the shard changed by the batch and mark the completed transfers PROCESSED
+         */
+        private void finishBatch() {
+            try {
+                if (!committed.isEmpty()) {
+                    settlement.batchCommitted(committed);
+                }
+                for (Transfer transfer : committed) {
+                    transfer.getFromAccount().applyPendingTransactions();
+                }
+                for (Transfer transfer : processed) {
+                    transfer.getToAccount().applyPendingTransactions();
+                    transfer.setStatus(TransferStatus.PROCESSED);
+                }
+                if (!processed.isEmpty()) {
+                    settlement.batchProcessed(processed);
+                }
+            } finally {
+                committed.clear();
+                processed.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package ru.vdusanyuk.bank.dao;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Version clock of the ledger: monotonic commit sequence and registry of snapshots pinned by readers.
+ * Every committed transfer gets the next version, a reader pins the current version and sees exactly
+ * the transfers committed up to it. Accounts keep committed balance history only back to the oldest pinned snapshot
+ */
+public class VersionClock {
+
+    /**
+     * value returned as oldest pinned version when no snapshot is pinned
+     */
+    public static final long NO_PINNED_VERSION = Long.MAX_VALUE;
+
+    private final AtomicLong commitSequence = new AtomicLong();
+
+    /**
+     * unique id of pinned snapshot, distinguishes snapshots pinned at the same version
+     */
+    private final AtomicLong pinSequence = new AtomicLong();
+
+    /**
+     * snapshots in use, ordered by protected version
+     */
+    private final ConcurrentSkipListMap<Snapshot, Boolean> pinnedSnapshots = new ConcurrentSkipListMap<>();
+
+    /**
+     * assign version for a new commit
+     * @return next commit version
+     */
+    public long nextVersion() {
+        return commitSequence.incrementAndGet();
+    }
+
+    /**
+     * getter, the latest assigned commit version
+     */
+    public long currentVersion() {
+        return commitSequence.get();
+    }
+
+    /**
+     * move the clock forward to the version recovered on startup, before any commit
+     * @param version the latest known commit version
+     */
+    public void advanceTo(long version) {
+        commitSequence.accumulateAndGet(version, Math::max);
+    }
+
+    /**
+     * the oldest version still needed by readers, it must be read by writer after {@link #nextVersion()}
+     * @return oldest pinned version or {@link #NO_PINNED_VERSION}
+     */
+    public long oldestPinnedVersion() {
+        Map.Entry<Snapshot, Boolean> oldest = pinnedSnapshots.firstEntry();
+        return oldest != null ? oldest.getKey().protectedVersion : NO_PINNED_VERSION;
+    }
+
+    /**
+     * the newest version no current or future reader can see anything older than: history replaced by commits
+     * up to this version can be dropped. The current version is read before the pinned ones, so a reader pinned
+     * meanwhile gets at least the current version
+     * @return min of the current version and the oldest pinned version
+     */
+    public long historyHorizon() {
+        long current = commitSequence.get();
+        return Math.min(current, oldestPinnedVersion());
+    }
+
+    /**
+     * pin snapshot for reading, it should be closed after the read is done.
+     * Protection is registered before the snapshot version is read, so any commit that gets later version
+     * than the snapshot one sees the protection and keeps the history needed by the reader
+     *
+     * @return pinned snapshot
+     */
+    public Snapshot pin() {
+        Snapshot protection = new Snapshot(commitSequence.get(), pinSequence.incrementAndGet());
+        pinnedSnapshots.put(protection, Boolean.TRUE);
+        protection.version = commitSequence.get();
+        return protection;
+    }
+
+    /**
+     * snapshot pinned by reader
+     */
+    public final class Snapshot implements AutoCloseable, Comparable<Snapshot> {
+        private final long protectedVersion;
+        private final long pinId;
+        private long version;
+
+        private Snapshot(long protectedVersion, long pinId) {
+            this.protectedVersion = protectedVersion;
+            this.pinId = pinId;
+        }
+
+        /**
+         * getter, version of the snapshot: all the commits up to this version are visible
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        @Override
+        public void close() {
+            pinnedSnapshots.remove(this);
+        }
+
+        @Override
+        public int compareTo(Snapshot other) {
+            int result = Long.compare(protectedVersion, other.protectedVersion);
+            return result != 0 ? result : Long.compare(pinId, other.pinId);
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package ru.vdusanyuk.bank.dao.audit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.vdusanyuk.bank.util.OverflowPolicy;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous audit trail of transfer requests. The request thread only copies the record fields into
+ * a preallocated ring of longs (Disruptor-style sequencing as in {@link ru.vdusanyuk.bank.util.RingBatchQueue}):
+ * no string formatting, no allocation and no lock. A background writer drains the published records in batches,
+ * formats them as compact CSV lines (time ms, transfer id, from, to, amount, result code, balance)
+ * and writes them to the audit file or, if there is no file, to the "audit" logger.
+ * When the ring is full the record is handled by the overflow policy: BLOCK and SPIN keep the trail complete,
+ * REJECT drops the record and counts it
+ */
+public class AuditLog implements AutoCloseable {
+
+    private final static Logger logger = LoggerFactory.getLogger(AuditLog.class);
+    private final static Logger auditLogger = LoggerFactory.getLogger("audit");
+
+    /**
+     * value of absent balance
+     */
+    public static final long NO_BALANCE = Long.MIN_VALUE;
+
+    private static final int RECORD_LONGS = 7;
+    private static final int BATCH_SIZE = 1024;
+    private static final long WRITER_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long PRODUCER_PARK_NANOS = 50_000L;
+
+    private final int capacity;
+    private final int mask;
+    private final OverflowPolicy overflowPolicy;
+
+    /**
+     * record fields, RECORD_LONGS per slot
+     */
+    private final long[] records;
+    /**
+     * sequence published into the slot, slot is readable for sequence s when it holds s
+     */
+    private final AtomicLongArray published;
+    private final AtomicLong claimCursor = new AtomicLong();
+    /**
+     * next sequence to write, written by writer only
+     */
+    private volatile long writeCursor;
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * audit file writer, null if the records go to the audit logger
+     */
+    private final Writer writer;
+    private final Thread writerThread;
+    private volatile boolean closed;
+
+    /**
+     * constructor, starts the writer thread
+     * @param file audit file, records are appended to it; null to write records to the "audit" logger
+     * @param capacity number of records buffered, rounded up to power of 2
+     * @param overflowPolicy behaviour of record when the buffer is full
+     */
+    public AuditLog(Path file, int capacity, OverflowPolicy overflowPolicy) {
+        this.capacity = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        this.mask = this.capacity - 1;
+        this.overflowPolicy = overflowPolicy;
+        this.records = new long[this.capacity * RECORD_LONGS];
+        this.published = new AtomicLongArray(this.capacity);
+        for (int i = 0; i < this.capacity; i++) {
+            published.set(i, -1L);
+        }
+        try {
+            writer = file == null ? null : Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to open audit file " + file, e);
+        }
+        writerThread = new Thread(this::writeRecords, "transfer-audit");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * add audit record, called on request thread
+     * @param transferId transfer id, 0 if no transfer is created
+     * @param fromAcntNumber account number for withdraw
+     * @param toAcntNumber account number for deposit
+     * @param amount amount for transfer
+     * @param code result code, see {@link ru.vdusanyuk.bank.dao.model.OperationResult}
+     * @param balance balance of withdraw account after the transfer or {@link #NO_BALANCE}
+     * @return false if the record is dropped
+     */
+    public boolean record(long transferId, long fromAcntNumber, long toAcntNumber, long amount, int code,
+                          long balance) {
+        long sequence = claim();
+        if (sequence < 0) {
+            dropped.increment();
+            return false;
+        }
+        int offset = ((int) sequence & mask) * RECORD_LONGS;
+        records[offset] = System.currentTimeMillis();
+        records[offset + 1] = transferId;
+        records[offset + 2] = fromAcntNumber;
+        records[offset + 3] = toAcntNumber;
+        records[offset + 4] = amount;
+        records[offset + 5] = code;
+        records[offset + 6] = balance;
+        //volatile write publishes the plain writes above
+        published.set((int) sequence & mask, sequence);
+        return true;
+    }
+
+    /**
+     * getter, number of records not written yet
+     */
+    public int getBacklog() {
+        return (int) (claimCursor.get() - writeCursor);
+    }
+
+    /**
+     * getter, number of records dropped by REJECT overflow policy
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * stop the writer after the published records are written and close the audit file
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(writerThread);
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private long claim() {
+        while (true) {
+            long sequence = claimCursor.get();
+            if (sequence - writeCursor >= capacity) {
+                if (overflowPolicy == OverflowPolicy.REJECT || closed || Thread.currentThread().isInterrupted()) {
+                    return -1;
+                }
+                //the writer parks when it has nothing to write, it is woken up only when the buffer is full
+                LockSupport.unpark(writerThread);
+                if (overflowPolicy == OverflowPolicy.BLOCK) {
+                    LockSupport.parkNanos(this, PRODUCER_PARK_NANOS);
+                } else {
+                    Thread.yield();
+                }
+            } else if (claimCursor.compareAndSet(sequence, sequence + 1)) {
+                return sequence;
+            }
+        }
+    }
+
+    /**
+     * writer loop: write published records in batches, park briefly when there is nothing to write
+     */
+    private void writeRecords() {
+        StringBuilder line = new StringBuilder(128);
+        while (true) {
+            boolean stopping = closed;
+            int written = writeBatch(line);
+            if (written == 0) {
+                if (stopping) {
+                    break;
+                }
+                LockSupport.parkNanos(this, WRITER_PARK_NANOS);
+            }
+        }
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                logger.error("Unable to close audit file", e);
+            }
+        }
+    }
+
+    private int writeBatch(StringBuilder line) {
+        long sequence = writeCursor;
+        int written = 0;
+        try {
+            while (written < BATCH_SIZE && published.get((int) sequence & mask) == sequence) {
+                format(line, ((int) sequence & mask) * RECORD_LONGS);
+                if (writer != null) {
+                    writer.append(line).append('\n');
+                } else {
+                    auditLogger.info(line.toString());
+                }
+                sequence++;
+                written++;
+            }
+            if (writer != null && written > 0) {
+                writer.flush();
+            }
+        } catch (IOException e) {
+            //the failed record is skipped, so the writer goes on; the transfer is still in the journal
+            logger.error("Unable to write audit record " + sequence, e);
+            sequence++;
+            written++;
+        }
+        writeCursor = sequence;
+        return written;
+    }
+
+    private void format(StringBuilder line, int offset) {
+        line.setLength(0);
+        for (int i = 0; i < RECORD_LONGS; i++) {
+            if (i > 0) {
+                line.append(',');
+            }
+            if (i != RECORD_LONGS - 1 || records[offset + i] != NO_BALANCE) {
+                line.append(records[offset + i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package ru.vdusanyuk.bank.dao.journal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Binary snapshot of account balances as of commit version, file balances.snapshot in the journal directory:
+ * header (magic, format, commit version, last transfer id, account count), entries (account number, balance)
+ * and CRC32 of the entries. The file is written aside and moved in place atomically, so the previous snapshot stays
+ * valid until the new one is complete
+ */
+public class BalanceSnapshot {
+
+    public static final String FILE_NAME = "balances.snapshot";
+
+    private static final String TEMP_FILE_NAME = FILE_NAME + ".tmp";
+    private static final int MAGIC = 0x424E4B53;
+    private static final int FORMAT = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int ENTRY_SIZE = 16;
+    private static final int TRAILER_SIZE = 8;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * consumer of snapshot entries
+     */
+    @FunctionalInterface
+    public interface EntryHandler {
+        void accept(long accountNumber, long balance);
+    }
+
+    private final long version;
+    private final long lastTransferId;
+    private final long accountCount;
+
+    private BalanceSnapshot(long version, long lastTransferId, long accountCount) {
+        this.version = version;
+        this.lastTransferId = lastTransferId;
+        this.accountCount = accountCount;
+    }
+
+    /**
+     * write snapshot file and force it to disk
+     * @param directory target directory
+     * @param version commit version the balances are read as of
+     * @param lastTransferId transfer id sequence value
+     * @param entries producer of entries, it passes every account to the given handler
+     * @return written snapshot description
+     */
+    public static BalanceSnapshot write(Path directory, long version, long lastTransferId,
+                                        Consumer<EntryHandler> entries) {
+        Path tempFile = directory.resolve(TEMP_FILE_NAME);
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+            CRC32 crc = new CRC32();
+            long[] count = new long[1];
+            channel.position(HEADER_SIZE);
+            entries.accept((accountNumber, balance) -> {
+                if (buffer.remaining() < ENTRY_SIZE) {
+                    flush(channel, buffer, crc);
+                }
+                buffer.putLong(accountNumber).putLong(balance);
+                count[0]++;
+            });
+            flush(channel, buffer, crc);
+            buffer.putLong(crc.getValue()).flip();
+            writeFully(channel, buffer);
+
+            buffer.clear();
+            buffer.putInt(MAGIC).putInt(FORMAT).putLong(version).putLong(lastTransferId).putLong(count[0]).flip();
+            channel.position(0);
+            writeFully(channel, buffer);
+            channel.force(true);
+
+            Files.move(tempFile, directory.resolve(FILE_NAME), StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+            return new BalanceSnapshot(version, lastTransferId, count[0]);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to write balance snapshot " + tempFile, e);
+        }
+    }
+
+    /**
+     * read snapshot file by memory mapping, the content is validated before any entry is passed to the handler
+     * @param directory snapshot directory
+     * @param handler consumer of entries
+     * @return snapshot description or null if there is no snapshot
+     * @throws IllegalStateException if the snapshot is corrupted
+     */
+    public static BalanceSnapshot read(Path directory, EntryHandler handler) {
+        Path file = directory.resolve(FILE_NAME);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE + TRAILER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Invalid balance snapshot size " + size + ": " + file);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            long accountCount = buffer.getLong(24);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT
+                    || size != HEADER_SIZE + accountCount * ENTRY_SIZE + TRAILER_SIZE) {
+                throw new IllegalStateException("Invalid balance snapshot header: " + file);
+            }
+            int entriesEnd = (int) size - TRAILER_SIZE;
+            CRC32 crc = new CRC32();
+            ByteBuffer entries = buffer.duplicate();
+            entries.position(HEADER_SIZE).limit(entriesEnd);
+            crc.update(entries);
+            if (crc.getValue() != buffer.getLong(entriesEnd)) {
+                throw new IllegalStateException("Balance snapshot checksum mismatch: " + file);
+            }
+            for (int offset = HEADER_SIZE; offset < entriesEnd; offset += ENTRY_SIZE) {
+                handler.accept(buffer.getLong(offset), buffer.getLong(offset + 8));
+            }
+            return new BalanceSnapshot(buffer.getLong(8), buffer.getLong(16), accountCount);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read balance snapshot " + file, e);
+        }
+    }
+
+    /**
+     * getter, commit version of the snapshot: it includes all the transfers committed up to it
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * getter, transfer id sequence value at the snapshot
+     */
+    public long getLastTransferId() {
+        return lastTransferId;
+    }
+
+    public long getAccountCount() {
+        return accountCount;
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer, CRC32 crc) {
+        buffer.flip();
+        crc.update(buffer.duplicate());
+        try {
+            writeFully(channel, buffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buffer.clear();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
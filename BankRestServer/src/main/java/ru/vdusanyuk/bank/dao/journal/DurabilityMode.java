@@ -0,0 +1,15 @@
+package ru.vdusanyuk.bank.dao.journal;
+
+/**
+ * enum for the moment a journaled transfer is acknowledged to the client
+ */
+public enum DurabilityMode {
+    /**
+     * transfer is acknowledged when it is written to the mapped journal and queued for processing
+     */
+    ACK_ON_ENQUEUE,
+    /**
+     * transfer is acknowledged when the batch containing it is synced to disk (group commit)
+     */
+    ACK_ON_FSYNC
+}
@@ -0,0 +1,109 @@
+package ru.vdusanyuk.bank.dao.journal;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Fixed-size binary record of journaled transfer:
+ * magic (int), checksum (int), transfer id, commit version, from account, to account, amount (longs)
+ */
+public class JournalRecord {
+
+    /**
+     * record size, bytes
+     */
+    public static final int SIZE = 48;
+
+    /**
+     * marks written record, zero filled space of journal segment has no magic
+     */
+    private static final int MAGIC = 0x424E4B31;
+
+    private final long transferId;
+    private final long version;
+    private final long fromAccountNumber;
+    private final long toAccountNumber;
+    private final long amount;
+
+    public JournalRecord(long transferId, long version, long fromAccountNumber, long toAccountNumber, long amount) {
+        this.transferId = transferId;
+        this.version = version;
+        this.fromAccountNumber = fromAccountNumber;
+        this.toAccountNumber = toAccountNumber;
+        this.amount = amount;
+    }
+
+    /**
+     * write record at absolute position, payload goes first and magic last
+     * @param buffer target buffer
+     * @param offset record position in buffer
+     */
+    public void writeTo(ByteBuffer buffer, int offset) {
+        buffer.putLong(offset + 8, transferId);
+        buffer.putLong(offset + 16, version);
+        buffer.putLong(offset + 24, fromAccountNumber);
+        buffer.putLong(offset + 32, toAccountNumber);
+        buffer.putLong(offset + 40, amount);
+        buffer.putInt(offset + 4, checksum());
+        buffer.putInt(offset, MAGIC);
+    }
+
+    /**
+     * read record at absolute position
+     * @param buffer source buffer
+     * @param offset record position in buffer
+     * @return record or null if there is no valid record at the position
+     */
+    public static JournalRecord readFrom(ByteBuffer buffer, int offset) {
+        if (buffer.getInt(offset) != MAGIC) {
+            return null;
+        }
+        JournalRecord record = new JournalRecord(buffer.getLong(offset + 8), buffer.getLong(offset + 16),
+                                                 buffer.getLong(offset + 24), buffer.getLong(offset + 32),
+                                                 buffer.getLong(offset + 40));
+        return record.checksum() == buffer.getInt(offset + 4) ? record : null;
+    }
+
+    public long getTransferId() {
+        return transferId;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public long getFromAccountNumber() {
+        return fromAccountNumber;
+    }
+
+    public long getToAccountNumber() {
+        return toAccountNumber;
+    }
+
+    public long getAmount() {
+        return amount;
+    }
+
+    /**
+     * cheap checksum of payload fields, detects torn and garbage records
+     */
+    private int checksum() {
+        long hash = transferId;
+        hash = hash * 31 + version;
+        hash = hash * 31 + fromAccountNumber;
+        hash = hash * 31 + toAccountNumber;
+        hash = hash * 31 + amount;
+        hash ^= hash >>> 29;
+        return (int) (hash ^ (hash >>> 32)) ^ MAGIC;
+    }
+
+    @Override
+    public String toString() {
+        return "JournalRecord{" +
+                "transferId=" + transferId +
+                ", version=" + version +
+                ", fromAccountNumber=" + fromAccountNumber +
+                ", toAccountNumber=" + toAccountNumber +
+                ", amount=" + amount +
+                '}';
+    }
+}
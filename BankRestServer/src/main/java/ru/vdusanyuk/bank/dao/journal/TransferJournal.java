@@ -0,0 +1,284 @@
+package ru.vdusanyuk.bank.dao.journal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Append-only write-ahead journal of accepted transfers.
+ * The journal is a sequence of memory-mapped segment files (journal-NNNNNNNN.log) of fixed size, holding
+ * fixed-size {@link JournalRecord}s. Writers claim record positions by atomic counter and write them by absolute puts
+ * into the mapping, so appends do not lock. {@link #sync()} forces the written segments to disk once for all
+ * the records appended before it (group commit). Segments are mapped under their own lock, not the one of sync,
+ * and the next segment is mapped ahead by sync, so an append crossing into it does not wait for the disk
+ */
+public class TransferJournal implements Closeable {
+
+    private final static Logger logger = LoggerFactory.getLogger(TransferJournal.class);
+
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final Path directory;
+
+    /**
+     * segment size, bytes, multiple of record size so that record never crosses segments
+     */
+    private final long segmentSize;
+
+    /**
+     * next record position in the journal (over all the segments)
+     */
+    private final AtomicLong writePosition = new AtomicLong();
+
+    /**
+     * mapped segments by index, grows copy-on-write under segmentLock
+     */
+    private volatile Segment[] segments = new Segment[0];
+    private final Object segmentLock = new Object();
+
+    /**
+     * index of the first segment that may have records not forced to disk,
+     * it moves forward only over the segments completely written before they were forced
+     */
+    private int unsyncedSegment;
+
+    /**
+     * constructor, opens journal directory and finds the end of written records
+     * @param directory journal directory, created if absent
+     * @param segmentSize segment file size, bytes, rounded down to multiple of record size
+     */
+    public TransferJournal(Path directory, long segmentSize) {
+        this(directory, segmentSize, record -> { });
+    }
+
+    /**
+     * constructor, opens journal directory and recovers the written records in the same pass
+     * that finds their end
+     * @param directory journal directory, created if absent
+     * @param segmentSize segment file size, bytes, rounded down to multiple of record size
+     * @param recovery consumer of the written records in journal order
+     */
+    public TransferJournal(Path directory, long segmentSize, Consumer<JournalRecord> recovery) {
+        if (segmentSize < JournalRecord.SIZE || segmentSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid journal segment size: " + segmentSize);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize - segmentSize % JournalRecord.SIZE;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to create journal directory " + directory, e);
+        }
+        long end = replay(recovery);
+        writePosition.set(end);
+        //the space before the end is dead for appends, holes of crashed writers included
+        for (Segment segment : segments) {
+            if (segment == null) {
+                continue;
+            }
+            long written = end - segment.index * this.segmentSize;
+            segment.written.set((int) Math.min(this.segmentSize, Math.max(0, written)));
+        }
+        unsyncedSegment = segmentOf(end);
+        logger.info("Transfer journal opened: {}, write position={}", directory, end);
+    }
+
+    /**
+     * append record, may be called concurrently
+     * @param record transfer record
+     */
+    public void append(JournalRecord record) {
+        long position = writePosition.getAndAdd(JournalRecord.SIZE);
+        Segment segment = segment(segmentOf(position));
+        record.writeTo(segment.buffer, (int) (position % segmentSize));
+        segment.written.addAndGet(JournalRecord.SIZE);
+    }
+
+    /**
+     * force to disk all the records appended before the call, called by single thread.
+     * When the current segment is half written, the next one is mapped ahead
+     */
+    public void sync() {
+        long position = writePosition.get();
+        force(segmentOf(Math.max(position - 1, 0)));
+        if (position % segmentSize >= segmentSize / 2) {
+            segment(segmentOf(position) + 1);
+        }
+    }
+
+    private synchronized void force(int lastSegment) {
+        Segment[] mapped = segments;
+        boolean syncedInOrder = true;
+        for (int i = unsyncedSegment; i <= lastSegment && i < mapped.length; i++) {
+            if (mapped[i] == null) {
+                syncedInOrder = false;
+                continue;
+            }
+            boolean complete = mapped[i].written.get() == segmentSize;
+            mapped[i].buffer.force();
+            syncedInOrder &= complete;
+            if (syncedInOrder) {
+                unsyncedSegment = i + 1;
+            }
+        }
+    }
+
+    /**
+     * read all the valid records in journal order, the torn or never written ones are skipped
+     * @param handler record consumer
+     * @return position after the last valid record
+     */
+    public long replay(Consumer<JournalRecord> handler) {
+        long end = 0;
+        for (int index : listSegments()) {
+            MappedByteBuffer buffer = segment(index).buffer;
+            for (int offset = 0; offset < segmentSize; offset += JournalRecord.SIZE) {
+                JournalRecord record = JournalRecord.readFrom(buffer, offset);
+                if (record != null) {
+                    handler.accept(record);
+                    end = index * segmentSize + offset + JournalRecord.SIZE;
+                }
+            }
+        }
+        return end;
+    }
+
+    /**
+     * delete the segments lying entirely before the position, e.g. covered by balance snapshot
+     * @param position journal position, the segment containing it is kept
+     */
+    public synchronized void truncateBefore(long position) {
+        int firstKept = segmentOf(position);
+        synchronized (segmentLock) {
+            Segment[] truncated = segments.clone();
+            for (int index = 0; index < Math.min(firstKept, truncated.length); index++) {
+                truncated[index] = null;
+            }
+            segments = truncated;
+        }
+        for (int index : listSegments()) {
+            if (index >= firstKept) {
+                break;
+            }
+            try {
+                Files.delete(segmentPath(index));
+                logger.info("Journal segment deleted: {}", segmentPath(index));
+            } catch (IOException e) {
+                logger.warn("Unable to delete journal segment " + segmentPath(index), e);
+            }
+        }
+        unsyncedSegment = Math.max(unsyncedSegment, firstKept);
+    }
+
+    /**
+     * getter, position of the next record, all the records appended before the call are below it
+     */
+    public long getWritePosition() {
+        return writePosition.get();
+    }
+
+    /**
+     * getter, journal directory
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * forces all the segments, the mappings are released by GC
+     */
+    @Override
+    public synchronized void close() {
+        for (Segment segment : segments) {
+            if (segment != null) {
+                segment.buffer.force();
+            }
+        }
+    }
+
+    private int segmentOf(long position) {
+        return (int) (position / segmentSize);
+    }
+
+    /**
+     * indexes of existing segment files in ascending order
+     */
+    private List<Integer> listSegments() {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Integer.valueOf(
+                            name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to list journal directory " + directory, e);
+        }
+    }
+
+    private Path segmentPath(int index) {
+        return directory.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+    }
+
+    private Segment segment(int index) {
+        Segment[] mapped = segments;
+        if (index < mapped.length && mapped[index] != null) {
+            return mapped[index];
+        }
+        return mapSegment(index);
+    }
+
+    /**
+     * map segment file, creating it zero filled if absent; it does not wait for sync in progress
+     */
+    private Segment mapSegment(int index) {
+        synchronized (segmentLock) {
+            Segment[] mapped = segments;
+            if (index < mapped.length && mapped[index] != null) {
+                return mapped[index];
+            }
+            Path path = segmentPath(index);
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                                        StandardOpenOption.WRITE)) {
+                Segment segment = new Segment(index, channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize));
+                Segment[] grown = index < mapped.length ? mapped.clone() : Arrays.copyOf(mapped, index + 1);
+                grown[index] = segment;
+                segments = grown;
+                logger.debug("Journal segment mapped: {}", path);
+                return segment;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to map journal segment " + path, e);
+            }
+        }
+    }
+
+    /**
+     * mapped segment file and number of bytes written into it
+     */
+    private static final class Segment {
+        private final int index;
+        private final MappedByteBuffer buffer;
+        private final AtomicInteger written = new AtomicInteger();
+
+        private Segment(int index, MappedByteBuffer buffer) {
+            this.index = index;
+            this.buffer = buffer;
+        }
+    }
+}
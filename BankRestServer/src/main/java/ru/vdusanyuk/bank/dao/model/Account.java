@@ -1,42 +1,38 @@
 package ru.vdusanyuk.bank.dao.model;
 
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
-
 /**
- * Bank account entity
+ * Bank account entity, lightweight view of the account kept in {@link AccountStore}.
+ * Balance changes must be done by the caller holding the lock which guards the account
  */
 public class Account {
     /**
      * account unique id
       */
     private final long accountNumber;
-    /*
-    * account balance saved, not imcluding pending and draft transactions
-     */
-    private final AtomicLong savedBalance;
-
     /**
-     * pending transactions stored in this collection till asynch batch processing
+     * store holding the account balances and index of the account there
      */
-    private final Map<Transfer, Integer> pendingTransactions = new ConcurrentHashMap<>();
-
-    private final ReadWriteLock readWriteLock = new ReentrantReadWriteLock();
-    private final Lock readLock = readWriteLock.readLock();
-    private final Lock writeLock = readWriteLock.writeLock();
+    private final AccountStore store;
+    private final int index;
 
     /**
-     * constructor with args:
+     * constructor with args, creates standalone account with its own store:
      * @param acntNumber account number
      * @param balance initial balance
      */
     public Account(long acntNumber, long balance) {
         this.accountNumber = acntNumber;
-        this.savedBalance = new AtomicLong(balance);
+        this.store = new AccountStore(1);
+        this.index = store.add(acntNumber, balance);
+    }
+
+    /**
+     * constructor of view of the stored account
+     */
+    Account(AccountStore store, int index, long acntNumber) {
+        this.accountNumber = acntNumber;
+        this.store = store;
+        this.index = index;
     }
 
     /**
@@ -46,85 +42,110 @@ public class Account {
         return accountNumber;
     }
 
+    /**
+     * getter, index of the account in its store
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * true if the account is kept in the store
+     */
+    public boolean isStoredIn(AccountStore store) {
+        return this.store == store;
+    }
+
      /**
      * getter, saved balance
      *
      * @return  balance
      */
     public long getSavedBalance() {
-            return savedBalance.get();
+            return store.getSavedBalance(index);
     }
 
     /**
-     * calculate real balance as sum of saved balance and pending transfer parts
-     * @param trxStamp  nano time stamp or -1 if no stamp required
-     * @param includeDraft include draft transactions
-     * @return calculated balance
+     * getter, balance including all the committed transfers, O(1) and lock-free
+     * @return balance
      */
-    public long getStampedBalance(long trxStamp, boolean includeDraft) {
-        readLock.lock();
-        try {
-            long pendingAmt = pendingTransactions.entrySet().stream()
-                    .filter(e -> e.getValue() != null && !e.getKey().isProcessed() &&
-                                 (includeDraft || e.getKey().isPending()) &&
-                                 (trxStamp <= 0 || e.getKey().getId() < trxStamp))
-                    .mapToLong(e -> e.getValue() * e.getKey().getAmount())
-                    .sum();
-            return savedBalance.get() + pendingAmt;
-        } finally {
-            readLock.unlock();
-        }
+    public long getBalance() {
+        return store.getBalance(index);
+    }
+
+    /**
+     * committed balance as of snapshot version, see {@link AccountStore#getCommittedBalance(int, long)}
+     * @param version snapshot version
+     * @return balance including all the transfers committed up to the version
+     */
+    public long getCommittedBalance(long version) {
+        return store.getCommittedBalance(index, version);
     }
 
     /**
-     * add new pending Transfer to collection
+     * validate new draft transfer, the caller keeps the account lock till the transfer is committed
+     * by {@link #commitPendingTransaction(Transfer, boolean, long, long)}, so nothing is reserved
      * @param transfer the transfer object {@link Transfer}
      * @param isWithdraw - the  flag of withdraw operation
-     * @return true if transfer is passed validation
+     * @return result with the balance after the transfer if it is passed validation
      */
     public OperationResult addPendingTransaction(Transfer transfer, boolean isWithdraw) {
         if (transfer.isProcessed()) {
             return new OperationResult(1, "Transfer is Processed status", accountNumber, -1L);
         }
-        readLock.lock();
-        try {
-            long oldBalance = getStampedBalance(-1, true );
-            //validate transfer amount for  withdraw operation
-            if (isWithdraw && oldBalance < transfer.getAmount()) {
-                transfer.setStatus(TransferStatus.ERROR);
-                return new OperationResult(1, "Transfer amount exceeds balance", accountNumber, oldBalance);
-            }
-            int sign = isWithdraw ? -1 : 1;
-            pendingTransactions.put(transfer, sign);
-            return new OperationResult(0, null, accountNumber,
-                    oldBalance + sign * transfer.getAmount());
-        } finally {
-          readLock.unlock();
+        long oldBalance = getBalance();
+        //validate transfer amount for  withdraw operation
+        if (isWithdraw && oldBalance < transfer.getAmount()) {
+            transfer.setStatus(TransferStatus.ERROR);
+            return new OperationResult(1, "Transfer amount exceeds balance", accountNumber, oldBalance);
         }
+        int sign = isWithdraw ? -1 : 1;
+        return new OperationResult(0, null, accountNumber, oldBalance + sign * transfer.getAmount());
+    }
+
+    /**
+     * commit the transfer validated by {@link #addPendingTransaction(Transfer, boolean)}: publish new committed
+     * balance version, the transfer stays pending till it is applied.
+     * It is called for both accounts, under the locks of both, before the transfer gets PENDING status
+     *
+     * @param transfer the transfer object {@link Transfer}
+     * @param isWithdraw - the  flag of withdraw operation
+     * @param version commit version of the transfer
+     * @param oldestPinnedVersion oldest snapshot version still in use, read after the commit version was assigned
+     */
+    public void commitPendingTransaction(Transfer transfer, boolean isWithdraw, long version,
+                                         long oldestPinnedVersion) {
+        store.commit(index, isWithdraw ? -transfer.getAmount() : transfer.getAmount(), version, oldestPinnedVersion);
     }
 
     /**
-     * the task for apply pending transfers/transactions and save new balance
+     * the task for apply pending transfers/transactions and save new balance,
+     * the committed balance is not changed by this
      */
     public void applyPendingTransactions() {
-        if (pendingTransactions.size() == 0) {
-            return;
-        }
-        writeLock.lock();
-        try {
-            savedBalance.set(getStampedBalance(-1, false));
-            pendingTransactions.clear();
-        } finally {
-            writeLock.unlock();
-        }
+        store.apply(index);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        Account account = (Account) o;
+        return index == account.index && store == account.store;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(accountNumber);
     }
 
     @Override
     public String toString() {
         return "Account{" +
                 "accountNumber=" + accountNumber +
-                ", savedBalance=" + savedBalance.get() +
-                ", pendingTransactions=" + pendingTransactions.entrySet() +
+                ", savedBalance=" + getSavedBalance() +
+                ", balance=" + getBalance() +
                 '}';
     }
 }
@@ -0,0 +1,354 @@
+package ru.vdusanyuk.bank.dao.model;
+
+import ru.vdusanyuk.bank.util.LongIndexMap;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Compact store of bank accounts: account numbers are mapped to dense indexes by primitive open addressing map,
+ * balances are kept in flat arrays by index (struct of arrays), about 36 bytes per account and no object per account.
+ * For every account it keeps:
+ * - committed balance, including all the committed transfers, read lock-free;
+ * - saved balance, the committed balance as of the last batch processing; the difference is the pending amount.
+ * Committed balances replaced while readers have pinned snapshots are kept in a side history slot of the account,
+ * which is pruned by {@link #pruneHistory(long)} once the readers are gone; while no account has history
+ * the snapshot reads skip it, so the history costs nothing when nobody reads snapshots.
+ * Balance updates are done by the caller holding the lock which guards the account;
+ * accounts are added single-threaded before the store is published
+ */
+public class AccountStore {
+
+    /**
+     * consumer of accounts by number and store index
+     */
+    @FunctionalInterface
+    public interface AccountConsumer {
+        void accept(long accountNumber, int index);
+    }
+
+    /**
+     * consumer of account balances by number
+     */
+    @FunctionalInterface
+    public interface BalanceConsumer {
+        void accept(long accountNumber, long balance);
+    }
+
+    private final LongIndexMap indexes;
+    private AtomicLongArray savedBalances;
+    private AtomicLongArray committedBalances;
+    private int size;
+
+    /**
+     * committed balances replaced by commits that pinned readers must not see, by account index, null if none
+     */
+    private AtomicReferenceArray<ReplacedBalance> history;
+
+    /**
+     * number of accounts with history, the snapshot reads do not look into history while it is 0
+     */
+    private final AtomicInteger historyAccounts = new AtomicInteger();
+
+    /**
+     * indexes of the accounts which may have history, visited by pruning instead of the whole store;
+     * guarded by historyLock, an index is listed once
+     */
+    private final Object historyLock = new Object();
+    private final BitSet historyListed = new BitSet();
+    private int[] historyIndexes = new int[16];
+    private int historyIndexCount;
+
+    /**
+     * constructor
+     * @param expectedAccounts number of accounts the store is sized for
+     */
+    public AccountStore(int expectedAccounts) {
+        int capacity = Math.max(expectedAccounts, 1);
+        indexes = new LongIndexMap(capacity);
+        savedBalances = new AtomicLongArray(capacity);
+        committedBalances = new AtomicLongArray(capacity);
+        history = new AtomicReferenceArray<>(capacity);
+    }
+
+    /**
+     * add new account, not thread safe
+     * @param accountNumber account number
+     * @param balance initial balance
+     * @return account index
+     */
+    public int add(long accountNumber, long balance) {
+        if (indexes.get(accountNumber) != LongIndexMap.NO_VALUE) {
+            throw new IllegalArgumentException("Account#" + accountNumber + " already exists");
+        }
+        if (size == committedBalances.length()) {
+            grow();
+        }
+        int index = size++;
+        indexes.put(accountNumber, index);
+        savedBalances.set(index, balance);
+        committedBalances.set(index, balance);
+        return index;
+    }
+
+    /**
+     * find account index
+     * @param accountNumber account number
+     * @return index or -1 if there is no such account
+     */
+    public int indexOf(long accountNumber) {
+        return indexes.get(accountNumber);
+    }
+
+    /**
+     * account view by number
+     * @param accountNumber account number
+     * @return account or null if not found
+     */
+    public Account get(long accountNumber) {
+        int index = indexes.get(accountNumber);
+        return index >= 0 ? new Account(this, index, accountNumber) : null;
+    }
+
+    /**
+     * getter, number of accounts, indexes are 0..size-1
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * pass every account number with its index to consumer, in no particular order
+     */
+    public void forEach(AccountConsumer consumer) {
+        indexes.forEach(consumer::accept);
+    }
+
+    /**
+     * pass every account view to consumer, in no particular order
+     */
+    public void forEachAccount(Consumer<Account> consumer) {
+        indexes.forEach((accountNumber, index) -> consumer.accept(new Account(this, index, accountNumber)));
+    }
+
+    /**
+     * pass every account number with its committed balance as of snapshot version to consumer, in no particular order,
+     * see {@link #getCommittedBalance(int, long)}
+     */
+    public void forEachCommittedBalance(long version, BalanceConsumer consumer) {
+        indexes.forEach((accountNumber, index) -> consumer.accept(accountNumber, getCommittedBalance(index, version)));
+    }
+
+    /**
+     * getter, the latest committed balance
+     */
+    public long getBalance(int index) {
+        return committedBalances.get(index);
+    }
+
+    /**
+     * getter, saved balance
+     */
+    public long getSavedBalance(int index) {
+        return savedBalances.get(index);
+    }
+
+    /**
+     * committed balance as of snapshot version, lock-free. The caller must make sure all the commits
+     * up to the version are finished and the version is not older than its pinned snapshot
+     * @param index account index
+     * @param version snapshot version
+     * @return balance including all the transfers committed up to the version
+     */
+    public long getCommittedBalance(int index, long version) {
+        //the replaced balance is put into history before the new one is set, so it is read in the same order
+        long balance = committedBalances.get(index);
+        if (historyAccounts.get() == 0) {
+            return balance;
+        }
+        for (ReplacedBalance node = history.get(index); node != null && node.replacedAt > version;
+             node = node.previous) {
+            balance = node.balance;
+        }
+        return balance;
+    }
+
+    /**
+     * commit balance change, the caller holds the lock guarding the account
+     * @param index account index
+     * @param delta balance change
+     * @param version commit version
+     * @param oldestPinnedVersion oldest snapshot version still in use, read after the commit version was assigned
+     */
+    public void commit(int index, long delta, long version, long oldestPinnedVersion) {
+        long balance = committedBalances.get(index);
+        if (oldestPinnedVersion < version) {
+            //a pinned reader may need the balance being replaced
+            keepHistory(index, version, balance, oldestPinnedVersion);
+        } else if (historyAccounts.get() != 0) {
+            ReplacedBalance head = history.get(index);
+            if (head != null && history.compareAndSet(index, head, null)) {
+                historyAccounts.decrementAndGet();
+            }
+        }
+        committedBalances.set(index, balance + delta);
+    }
+
+    /**
+     * drop the replaced balances no reader can see any more, the accounts without history left are removed,
+     * so the snapshot reads take the fast path again; safe to call concurrently with commits
+     * @param horizon version up to which the replaced balances are not needed, see VersionClock#historyHorizon()
+     */
+    public void pruneHistory(long horizon) {
+        if (historyAccounts.get() == 0) {
+            return;
+        }
+        synchronized (historyLock) {
+            int kept = 0;
+            for (int i = 0; i < historyIndexCount; i++) {
+                int index = historyIndexes[i];
+                if (pruneHistory(index, horizon)) {
+                    historyIndexes[kept++] = index;
+                } else {
+                    historyListed.clear(index);
+                }
+            }
+            historyIndexCount = kept;
+        }
+    }
+
+    /**
+     * save committed balance, i.e. apply all the pending transfers of account;
+     * the caller holds the lock guarding the account
+     */
+    public void apply(int index) {
+        savedBalances.set(index, committedBalances.get(index));
+    }
+
+    /**
+     * add net balance change of the processed transfers to saved balance, the committed balance is not changed
+     */
+    public void applyDelta(int index, long delta) {
+        savedBalances.addAndGet(index, delta);
+    }
+
+    /**
+     * change both saved and committed balance, used for recovery before the store is published
+     */
+    public void adjustBalance(int index, long delta) {
+        savedBalances.addAndGet(index, delta);
+        committedBalances.addAndGet(index, delta);
+    }
+
+    private void grow() {
+        int capacity = (int) Math.min(Integer.MAX_VALUE - 8, committedBalances.length() * 2L);
+        savedBalances = copyOf(savedBalances, capacity);
+        committedBalances = copyOf(committedBalances, capacity);
+        AtomicReferenceArray<ReplacedBalance> grownHistory = new AtomicReferenceArray<>(capacity);
+        for (int i = 0; i < history.length(); i++) {
+            grownHistory.set(i, history.get(i));
+        }
+        history = grownHistory;
+    }
+
+    /**
+     * put the replaced balance at the head of the account history; the account is counted before its history
+     * is published, so the reader seeing the new balance sees the history too
+     */
+    private void keepHistory(int index, long version, long balance, long oldestPinnedVersion) {
+        while (true) {
+            ReplacedBalance head = history.get(index);
+            if (head == null) {
+                historyAccounts.incrementAndGet();
+            }
+            //only pruning competes with the commit holding the account lock
+            if (history.compareAndSet(index, head,
+                                      new ReplacedBalance(version, balance, prune(head, oldestPinnedVersion)))) {
+                if (head == null) {
+                    listHistory(index);
+                }
+                return;
+            }
+            if (head == null) {
+                historyAccounts.decrementAndGet();
+            }
+        }
+    }
+
+    private void listHistory(int index) {
+        synchronized (historyLock) {
+            if (historyListed.get(index)) {
+                return;
+            }
+            historyListed.set(index);
+            if (historyIndexCount == historyIndexes.length) {
+                historyIndexes = Arrays.copyOf(historyIndexes, historyIndexCount * 2);
+            }
+            historyIndexes[historyIndexCount++] = index;
+        }
+    }
+
+    /**
+     * prune history of the account, it is removed if nothing is left
+     * @return true if the account still has history
+     */
+    private boolean pruneHistory(int index, long horizon) {
+        while (true) {
+            ReplacedBalance head = history.get(index);
+            if (head == null) {
+                return false;
+            }
+            if (head.replacedAt > horizon) {
+                prune(head, horizon);
+                return true;
+            }
+            if (history.compareAndSet(index, head, null)) {
+                historyAccounts.decrementAndGet();
+                return false;
+            }
+        }
+    }
+
+    private static AtomicLongArray copyOf(AtomicLongArray array, int capacity) {
+        AtomicLongArray copy = new AtomicLongArray(capacity);
+        for (int i = 0; i < array.length(); i++) {
+            copy.set(i, array.get(i));
+        }
+        return copy;
+    }
+
+    /**
+     * cut off the replaced balances no pinned reader can see: replaced at or before the oldest pinned version
+     */
+    private static ReplacedBalance prune(ReplacedBalance head, long oldestPinnedVersion) {
+        if (head == null || head.replacedAt <= oldestPinnedVersion) {
+            return null;
+        }
+        for (ReplacedBalance node = head; node.previous != null; node = node.previous) {
+            if (node.previous.replacedAt <= oldestPinnedVersion) {
+                node.previous = null;
+                break;
+            }
+        }
+        return head;
+    }
+
+    /**
+     * committed balance replaced by commit of version replacedAt, the newest first
+     */
+    private static final class ReplacedBalance {
+        private final long replacedAt;
+        private final long balance;
+        private ReplacedBalance previous;
+
+        private ReplacedBalance(long replacedAt, long balance, ReplacedBalance previous) {
+            this.replacedAt = replacedAt;
+            this.balance = balance;
+            this.previous = previous;
+        }
+    }
+}
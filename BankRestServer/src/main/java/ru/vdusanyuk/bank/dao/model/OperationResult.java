@@ -5,7 +5,9 @@ package ru.vdusanyuk.bank.dao.model;
  */
 public class OperationResult {
     /**
-     * result code : 0 - success, 1 - error
+     * result code : 0 - success, 1 - error, 2 - rejected as service is overloaded or journal
+     * is unavailable, 3 - rejected by read-only replica,
+     * 4 - rejected as idempotency key is used by another request
      */
     private final int code;
 
@@ -24,18 +26,40 @@ public class OperationResult {
      */
     private final String errorMessage;
 
+    /**
+     * id of the transfer the operation created, null if there is no transfer
+     */
+    private final Long transferId;
+
     /**
      * constructor
-     * @param code result code: 0 - success, 1 - error
+     * @param code result code: 0 - success, 1 - error, 2 - service overloaded or journal unavailable,
+     *             3 - read-only replica, 4 - idempotency key used by another request
      * @param errorMessage error mesage in case of error
      * @param accountNum main account number involved in operation
      * @param newBalance balance of the account after operation
      */
     public OperationResult(int code, String errorMessage, Long accountNum, Long newBalance) {
+        this(code, errorMessage, accountNum, newBalance, null);
+    }
+
+    /**
+     * constructor of transfer operation result
+     * @param transferId id of the transfer created by operation
+     */
+    public OperationResult(int code, String errorMessage, Long accountNum, Long newBalance, Long transferId) {
         this.code = code;
         this.errorMessage = errorMessage;
         this.accountNumber = accountNum;
         this.balance = newBalance;
+        this.transferId = transferId;
+    }
+
+    /**
+     * copy of the result with transfer id
+     */
+    public OperationResult withTransferId(long transferId) {
+        return new OperationResult(code, errorMessage, accountNumber, balance, transferId);
     }
 
 
@@ -57,6 +81,10 @@ public class OperationResult {
         return balance;
     }
 
+    public Long getTransferId() {
+        return transferId;
+    }
+
     @Override
     public String toString() {
         return "OperationResult{" +
@@ -64,6 +92,7 @@ public class OperationResult {
                 ", accountNumber=" + accountNumber +
                 ", balance=" + balance +
                 ", errorMessage='" + errorMessage + '\'' +
+                ", transferId=" + transferId +
                 '}';
     }
 }
@@ -1,5 +1,6 @@
 package ru.vdusanyuk.bank.dao.model;
 
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -11,6 +12,22 @@ public class Transfer {
     private final Account toAccount;
     private final long amount;
     private final AtomicReference<TransferStatus> status;
+    /**
+     * System.nanoTime() of transfer creation, for settlement lag
+     */
+    private final long createdNanos;
+    /**
+     * commit version, assigned when transfer gets PENDING status
+     */
+    private long version;
+    /**
+     * completed when the journal record of the transfer is forced to disk, used for ACK_ON_FSYNC durability only
+     */
+    private CompletableFuture<Transfer> journalSync;
+    /**
+     * completed when the transfer is PROCESSED by batch, set before the transfer is queued if somebody waits for it
+     */
+    private CompletableFuture<Transfer> completion;
 
     public Transfer(long id, Account fromAccount, Account toAccount, long amount) {
         this.id = id;
@@ -18,6 +35,7 @@ public class Transfer {
         this.toAccount = toAccount;
         this.amount = amount;
         status = new AtomicReference<>(TransferStatus.DRAFT);
+        createdNanos = System.nanoTime();
     }
 
     /** gettter for transaction id (could be used for logging, sorting etc.)*/
@@ -55,10 +73,47 @@ public class Transfer {
         return status.get().isPending();
     }
 
+    /** getter for System.nanoTime() of transfer creation */
+    public long getCreatedNanos() {
+        return createdNanos;
+    }
+
+    /** getter for current status */
+    public TransferStatus getStatus() {
+        return status.get();
+    }
+
     public void setStatus(TransferStatus status) {
         this.status.set(status);
     }
 
+    /** getter for commit version */
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    /** getter for journal sync notification, null if nobody waits for it */
+    public CompletableFuture<Transfer> getJournalSync() {
+        return journalSync;
+    }
+
+    public void setJournalSync(CompletableFuture<Transfer> journalSync) {
+        this.journalSync = journalSync;
+    }
+
+    /** getter for processing notification, null if nobody waits for it */
+    public CompletableFuture<Transfer> getCompletion() {
+        return completion;
+    }
+
+    public void setCompletion(CompletableFuture<Transfer> completion) {
+        this.completion = completion;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
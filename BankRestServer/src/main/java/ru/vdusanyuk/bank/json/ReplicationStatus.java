@@ -0,0 +1,59 @@
+package ru.vdusanyuk.bank.json;
+
+import javax.xml.bind.annotation.XmlRootElement;
+import java.io.Serializable;
+
+/**
+ * the json bean as REST response to replication status request
+ */
+
+@XmlRootElement
+public class ReplicationStatus implements Serializable {
+    /**
+     * PRIMARY or REPLICA
+     */
+    private String role;
+    /**
+     * primary commit version the state is as of
+     */
+    private Long version;
+    /**
+     * time since the primary sent the latest state applied by replica, -1 if nothing is applied yet
+     */
+    private Long lagMs;
+
+    /**
+     * Zero-args contructor
+     */
+    public ReplicationStatus() {}
+
+    public ReplicationStatus(String role, Long version, Long lagMs) {
+        this.role = role;
+        this.version = version;
+        this.lagMs = lagMs;
+    }
+
+    public String getRole() {
+        return role;
+    }
+
+    public void setRole(String role) {
+        this.role = role;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
+    public Long getLagMs() {
+        return lagMs;
+    }
+
+    public void setLagMs(Long lagMs) {
+        this.lagMs = lagMs;
+    }
+}
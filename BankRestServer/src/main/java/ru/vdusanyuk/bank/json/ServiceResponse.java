@@ -1,5 +1,7 @@
 package ru.vdusanyuk.bank.json;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 import javax.xml.bind.annotation.XmlRootElement;
 import java.io.Serializable;
 
@@ -13,6 +15,11 @@ public class ServiceResponse implements Serializable {
     private String errorMessage;
     private Long accountNumber;
     private Long balance;
+    /**
+     * id of the transfer created by request, for status lookup; omitted if there is no transfer
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long transferId;
 
     /**
      * Zero-args contructor
@@ -58,6 +65,14 @@ public class ServiceResponse implements Serializable {
         this.balance = balance;
     }
 
+    public Long getTransferId() {
+        return transferId;
+    }
+
+    public void setTransferId(Long transferId) {
+        this.transferId = transferId;
+    }
+
     @Override
     public String toString() {
         return "ServiceResponse{" +
@@ -65,6 +80,7 @@ public class ServiceResponse implements Serializable {
                 ", errorMessage='" + errorMessage + '\'' +
                 ", accountNumber=" + accountNumber +
                 ", balance=" + balance +
+                ", transferId=" + transferId +
                 '}';
     }
 }
@@ -12,6 +12,10 @@ public class TransferRequest implements Serializable {
      private Long fromAccountNumber;
      private Long toAccountNumber;
      private Long amount;
+     /**
+      * client key of the request, the retries with the same key get the result of the first request
+      */
+     private String idempotencyKey;
 
 
     public TransferRequest(Long fromAccountNumber, Long toAccountNumber, Long amount) {
@@ -20,6 +24,11 @@ public class TransferRequest implements Serializable {
         this.amount = amount;
     }
 
+    public TransferRequest(Long fromAccountNumber, Long toAccountNumber, Long amount, String idempotencyKey) {
+        this(fromAccountNumber, toAccountNumber, amount);
+        this.idempotencyKey = idempotencyKey;
+    }
+
     //empty constructor is need for JAX-RS serialization
     public TransferRequest() {}
 
@@ -35,6 +44,10 @@ public class TransferRequest implements Serializable {
         return amount;
     }
 
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
     public void setFromAccountNumber(long fromAccountNumber) {
         this.fromAccountNumber = fromAccountNumber;
     }
@@ -46,4 +59,8 @@ public class TransferRequest implements Serializable {
     public void setAmount(long amount) {
         this.amount = amount;
     }
+
+    public void setIdempotencyKey(String idempotencyKey) {
+        this.idempotencyKey = idempotencyKey;
+    }
 }
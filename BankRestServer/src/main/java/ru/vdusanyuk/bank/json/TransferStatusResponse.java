@@ -0,0 +1,107 @@
+package ru.vdusanyuk.bank.json;
+
+import javax.xml.bind.annotation.XmlRootElement;
+import java.io.Serializable;
+
+/**
+ * the json bean as REST response to transfer status request
+ */
+
+@XmlRootElement
+public class TransferStatusResponse implements Serializable {
+    private String responseStatus;
+    private String errorMessage;
+    private Long transferId;
+    private Long fromAccountNumber;
+    private Long toAccountNumber;
+    private Long amount;
+    /**
+     * transfer status: PENDING, PROCESSED or ERROR
+     */
+    private String transferStatus;
+
+    /**
+     * Zero-args contructor
+     */
+    public TransferStatusResponse() {}
+
+    public TransferStatusResponse(String responseStatus, String errorMessage, Long transferId,
+                                  Long fromAcntNumber, Long toAcntNumber, Long amount, String transferStatus) {
+        this.responseStatus = responseStatus;
+        this.errorMessage = errorMessage;
+        this.transferId = transferId;
+        this.fromAccountNumber = fromAcntNumber;
+        this.toAccountNumber = toAcntNumber;
+        this.amount = amount;
+        this.transferStatus = transferStatus;
+    }
+
+    public String getResponseStatus() {
+        return responseStatus;
+    }
+
+    public void setResponseStatus(String responseStatus) {
+        this.responseStatus = responseStatus;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public void setErrorMessage(String errorMessage) {
+        this.errorMessage = errorMessage;
+    }
+
+    public Long getTransferId() {
+        return transferId;
+    }
+
+    public void setTransferId(Long transferId) {
+        this.transferId = transferId;
+    }
+
+    public Long getFromAccountNumber() {
+        return fromAccountNumber;
+    }
+
+    public void setFromAccountNumber(Long fromAccountNumber) {
+        this.fromAccountNumber = fromAccountNumber;
+    }
+
+    public Long getToAccountNumber() {
+        return toAccountNumber;
+    }
+
+    public void setToAccountNumber(Long toAccountNumber) {
+        this.toAccountNumber = toAccountNumber;
+    }
+
+    public Long getAmount() {
+        return amount;
+    }
+
+    public void setAmount(Long amount) {
+        this.amount = amount;
+    }
+
+    public String getTransferStatus() {
+        return transferStatus;
+    }
+
+    public void setTransferStatus(String transferStatus) {
+        this.transferStatus = transferStatus;
+    }
+
+    @Override
+    public String toString() {
+        return "TransferStatusResponse{" +
+                "responseStatus='" + responseStatus + '\'' +
+                ", errorMessage='" + errorMessage + '\'' +
+                ", transferId=" + transferId +
+                ", fromAccountNumber=" + fromAccountNumber +
+                ", toAccountNumber=" + toAccountNumber +
+                ", amount=" + amount +
+                ", transferStatus='" + transferStatus + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,120 @@
+package ru.vdusanyuk.bank.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Concurrent histogram of non-negative long values with HDR-style log-linear buckets: every power of 2 range
+ * is split into 8 sub-buckets, so the value is reported with relative error below 12.5% whatever its magnitude.
+ * Recording is lock-free and allocation-free: one striped counter increment, values are kept since the start.
+ * Values above 2^44 (about 4.9 hours in nanoseconds) are counted in the last bucket
+ */
+public class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final long MAX_TRACKABLE_VALUE = (1L << 44) - 1;
+    private static final int BUCKETS = bucketOf(MAX_TRACKABLE_VALUE) + 1;
+
+    private final LongAdder[] counts = new LongAdder[BUCKETS];
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+
+    public Histogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * record value, negative value is recorded as zero
+     */
+    public void record(long value) {
+        long trackedValue = Math.min(Math.max(value, 0L), MAX_TRACKABLE_VALUE);
+        counts[bucketOf(trackedValue)].increment();
+        sum.add(Math.max(value, 0L));
+        max.accumulate(trackedValue);
+    }
+
+    /**
+     * copy of current state, buckets are read one by one, so concurrent recording may be partially seen
+     */
+    public Snapshot snapshot() {
+        long[] bucketCounts = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            bucketCounts[i] = counts[i].sum();
+            count += bucketCounts[i];
+        }
+        return new Snapshot(bucketCounts, count, sum.sum(), max.get());
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return ((exponent - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) + subBucket;
+    }
+
+    static long lowestValueOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        return (long) (SUB_BUCKETS + (bucket & (SUB_BUCKETS - 1))) << ((bucket >> SUB_BUCKET_BITS) - 1);
+    }
+
+    static long highestValueOf(int bucket) {
+        return lowestValueOf(bucket + 1) - 1;
+    }
+
+    /**
+     * histogram state at some moment
+     */
+    public static final class Snapshot {
+        private final long[] bucketCounts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        private Snapshot(long[] bucketCounts, long count, long sum, long max) {
+            this.bucketCounts = bucketCounts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getSum() {
+            return sum;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * value at quantile: the highest value of the bucket holding the quantile rank, but not above max
+         * @param quantile quantile 0..1
+         * @return value or 0 if nothing is recorded
+         */
+        public long valueAtQuantile(double quantile) {
+            if (count == 0) {
+                return 0L;
+            }
+            long rank = Math.max(1L, (long) Math.ceil(quantile * count));
+            long seen = 0;
+            for (int i = 0; i < bucketCounts.length; i++) {
+                seen += bucketCounts[i];
+                if (seen >= rank) {
+                    return Math.min(highestValueOf(i), max);
+                }
+            }
+            return max;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package ru.vdusanyuk.bank.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Registry of application metrics exposed in Prometheus text format: histograms are exposed as summaries
+ * (quantiles, sum and count), gauges and counters are read from suppliers on exposition.
+ * Metrics are registered once and then recorded without any lookup
+ */
+public class Metrics {
+
+    /**
+     * scale of nanosecond histograms exposed in seconds
+     */
+    public static final double NANOS = 1e-9;
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999, 1.0};
+
+    private static final Metrics instance = new Metrics();
+
+    /**
+     * metric families by name, exposed in name order
+     */
+    private final Map<String, Family> families = new ConcurrentSkipListMap<>();
+
+    /**
+     * the application registry
+     */
+    public static Metrics getInstance() {
+        return instance;
+    }
+
+    /**
+     * get or register histogram
+     * @param name metric name
+     * @param help metric description
+     * @param scale multiplier of the recorded values on exposition, e.g. {@link #NANOS}
+     * @param labels label names and values: name1, value1, name2, value2...
+     * @return histogram of the labels
+     */
+    public Histogram histogram(String name, String help, double scale, String... labels) {
+        return (Histogram) family(name, help, "summary", scale).metrics
+                .computeIfAbsent(labelsOf(labels), key -> new Histogram());
+    }
+
+    /**
+     * register gauge, the value is read from supplier on exposition; it replaces the gauge of the same labels
+     */
+    public void gauge(String name, String help, LongSupplier value, String... labels) {
+        family(name, help, "gauge", 1.0).metrics.put(labelsOf(labels), value);
+    }
+
+    /**
+     * register counter, the value is read from supplier on exposition; it replaces the counter of the same labels
+     */
+    public void counter(String name, String help, LongSupplier value, String... labels) {
+        family(name, help, "counter", 1.0).metrics.put(labelsOf(labels), value);
+    }
+
+    /**
+     * write all the metrics in Prometheus text exposition format
+     */
+    public void writeTo(Writer writer) throws IOException {
+        for (Family family : families.values()) {
+            writer.write("# HELP " + family.name + " " + family.help + "\n");
+            writer.write("# TYPE " + family.name + " " + family.type + "\n");
+            for (Map.Entry<String, Object> entry : family.metrics.entrySet()) {
+                String labels = entry.getKey();
+                if (entry.getValue() instanceof Histogram) {
+                    Histogram.Snapshot snapshot = ((Histogram) entry.getValue()).snapshot();
+                    for (double quantile : QUANTILES) {
+                        writeSample(writer, family.name, withLabel(labels, "quantile", Double.toString(quantile)),
+                                    snapshot.valueAtQuantile(quantile) * family.scale);
+                    }
+                    writeSample(writer, family.name + "_sum", labels, snapshot.getSum() * family.scale);
+                    writer.write(family.name + "_count" + labels + " " + snapshot.getCount() + "\n");
+                } else {
+                    writer.write(family.name + labels + " " + ((LongSupplier) entry.getValue()).getAsLong() + "\n");
+                }
+            }
+        }
+    }
+
+    private Family family(String name, String help, String type, double scale) {
+        Family family = families.computeIfAbsent(name, key -> new Family(name, help, type, scale));
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException("Metric " + name + " is registered as " + family.type);
+        }
+        return family;
+    }
+
+    private static void writeSample(Writer writer, String name, String labels, double value) throws IOException {
+        writer.write(name + labels + " " + value + "\n");
+    }
+
+    private static String labelsOf(String... labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels should be name-value pairs");
+        }
+        String text = "";
+        for (int i = 0; i < labels.length; i += 2) {
+            text = withLabel(text, labels[i], labels[i + 1]);
+        }
+        return text;
+    }
+
+    private static String withLabel(String labels, String name, String value) {
+        String label = name + "=\"" + value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + "\"";
+        return labels.isEmpty() ? "{" + label + "}" : labels.substring(0, labels.length() - 1) + "," + label + "}";
+    }
+
+    /**
+     * metrics of the same name, histograms or value suppliers by label text
+     */
+    private static final class Family {
+        private final String name;
+        private final String help;
+        private final String type;
+        private final double scale;
+        private final Map<String, Object> metrics = new ConcurrentSkipListMap<>();
+
+        private Family(String name, String help, String type, double scale) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+            this.scale = scale;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package ru.vdusanyuk.bank.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Durations of the application boot phases, exposed as bank_startup_phase_milliseconds{phase} gauges,
+ * and the time from JVM start till the first response, bank_startup_first_response_milliseconds.
+ * The phases may run in parallel, so they do not sum up to the startup time.
+ * Time of JVM start is read from JMX only on exposition, as loading of management classes takes a while
+ */
+public class StartupPhases {
+
+    private static final String PHASE_METRIC = "bank_startup_phase_milliseconds";
+    private static final String PHASE_HELP = "Duration of boot phase";
+
+    private static final StartupPhases instance = new StartupPhases();
+
+    /**
+     * phase durations by name, ms
+     */
+    private final Map<String, Long> phases = new ConcurrentHashMap<>();
+    private volatile long mainStartMillis;
+    private volatile long firstResponseMillis;
+
+    private StartupPhases() {
+        Metrics.getInstance().gauge("bank_startup_first_response_milliseconds",
+                                    "Time from JVM start till the first response is ready",
+                                    () -> firstResponseMillis > 0 ? firstResponseMillis - getJvmStartMillis() : 0L);
+    }
+
+    /**
+     * the application boot phases
+     */
+    public static StartupPhases getInstance() {
+        return instance;
+    }
+
+    /**
+     * mark start of main, the time from JVM start is exposed as the phase "jvm"
+     */
+    public void mainStarted() {
+        mainStartMillis = System.currentTimeMillis();
+        Metrics.getInstance().gauge(PHASE_METRIC, PHASE_HELP, () -> mainStartMillis - getJvmStartMillis(),
+                                    "phase", "jvm");
+    }
+
+    /**
+     * record phase duration
+     * @param phase phase name
+     * @param startNanos System.nanoTime() at the phase start
+     * @return duration, ms
+     */
+    public long record(String phase, long startNanos) {
+        long millis = (System.nanoTime() - startNanos) / 1_000_000L;
+        phases.put(phase, millis);
+        Metrics.getInstance().gauge(PHASE_METRIC, PHASE_HELP, () -> millis, "phase", phase);
+        return millis;
+    }
+
+    /**
+     * mark the response ready, only the first one is kept
+     */
+    public void responseReady() {
+        if (firstResponseMillis == 0) {
+            firstResponseMillis = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * getter, time from the start of main, ms
+     */
+    public long getMillisSinceMain() {
+        return System.currentTimeMillis() - mainStartMillis;
+    }
+
+    /**
+     * getter, recorded phase duration or -1
+     */
+    public long getPhaseMillis(String phase) {
+        return phases.getOrDefault(phase, -1L);
+    }
+
+    /**
+     * phase durations, e.g. "bank = 412 ms, jersey = 630 ms"
+     */
+    @Override
+    public String toString() {
+        return phases.entrySet().stream()
+                .sorted(Map.Entry.comparingByValue())
+                .map(phase -> phase.getKey() + " = " + phase.getValue() + " ms")
+                .collect(Collectors.joining(", "));
+    }
+
+    private static long getJvmStartMillis() {
+        return ManagementFactory.getRuntimeMXBean().getStartTime();
+    }
+}
@@ -0,0 +1,142 @@
+package ru.vdusanyuk.bank.replication;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.vdusanyuk.bank.dao.BankHolder;
+import ru.vdusanyuk.bank.dao.journal.JournalRecord;
+import ru.vdusanyuk.bank.dao.model.AccountStore;
+import ru.vdusanyuk.bank.metrics.Metrics;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static ru.vdusanyuk.bank.replication.ReplicationProtocol.*;
+
+/**
+ * Follower side of replication: connects to the primary, loads its balance snapshot into the read-only
+ * {@link BankHolder} and applies the streamed batches in order. On any failure the follower reconnects
+ * and starts from a new snapshot, keeping the old state for reads meanwhile
+ */
+public class ReplicationClient implements AutoCloseable {
+
+    private final static Logger logger = LoggerFactory.getLogger(ReplicationClient.class);
+
+    private static final long RECONNECT_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(1);
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final BankHolder bankHolder;
+    private final String host;
+    private final int port;
+    private final Thread thread;
+    private volatile Socket socket;
+    private volatile boolean closed;
+
+    /**
+     * constructor, starts the follower thread
+     * @param bankHolder read-only bank to replicate into
+     * @param host primary host
+     * @param port primary replication port
+     */
+    public ReplicationClient(BankHolder bankHolder, String host, int port) {
+        this.bankHolder = bankHolder;
+        this.host = host;
+        this.port = port;
+        thread = new Thread(this::follow, "replication-follower");
+        thread.setDaemon(true);
+        thread.start();
+        Metrics.getInstance().gauge("bank_replication_lag_milliseconds",
+                                    "Time since the latest primary state applied by the follower",
+                                    bankHolder::getReplicationLagMs);
+    }
+
+    /**
+     * stop following, the replicated state is kept
+     */
+    @Override
+    public void close() {
+        closed = true;
+        Socket current = socket;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                logger.debug("Unable to close replication socket", e);
+            }
+        }
+        thread.interrupt();
+    }
+
+    private void follow() {
+        while (!closed) {
+            try (Socket connection = new Socket()) {
+                socket = connection;
+                connection.connect(new InetSocketAddress(host, port), READ_TIMEOUT_MILLIS);
+                connection.setSoTimeout(READ_TIMEOUT_MILLIS);
+                logger.info("Replication follower is connected to {}:{}", host, port);
+                receive(new DataInputStream(new BufferedInputStream(connection.getInputStream(), BUFFER_SIZE)));
+            } catch (IOException e) {
+                if (!closed) {
+                    logger.warn("Replication from {}:{} failed: {}", host, port, e.toString());
+                }
+            }
+            try {
+                Thread.sleep(RECONNECT_DELAY_MILLIS);
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+    }
+
+    private void receive(DataInputStream input) throws IOException {
+        AccountStore snapshot = new AccountStore(1024);
+        byte[] records = new byte[MAX_CHUNK * JournalRecord.SIZE];
+        List<JournalRecord> batch = new ArrayList<>(MAX_CHUNK);
+        while (!closed) {
+            int type = input.readInt();
+            switch (type) {
+                case ACCOUNTS:
+                    for (int count = readCount(input); count > 0; count--) {
+                        snapshot.add(input.readLong(), input.readLong());
+                    }
+                    break;
+                case SNAPSHOT:
+                    long version = input.readLong();
+                    bankHolder.loadReplica(snapshot, version, input.readLong());
+                    logger.info("Replica snapshot loaded, version = {}, accounts = {}", version, snapshot.size());
+                    break;
+                case BATCH:
+                    long sentTime = input.readLong();
+                    int count = readCount(input);
+                    input.readFully(records, 0, count * JournalRecord.SIZE);
+                    ByteBuffer buffer = ByteBuffer.wrap(records);
+                    batch.clear();
+                    for (int i = 0; i < count; i++) {
+                        JournalRecord record = JournalRecord.readFrom(buffer, i * JournalRecord.SIZE);
+                        if (record == null) {
+                            throw new IOException("Corrupted replication record");
+                        }
+                        batch.add(record);
+                    }
+                    bankHolder.applyReplicated(batch, sentTime);
+                    break;
+                default:
+                    throw new IOException("Unknown replication message " + type);
+            }
+        }
+    }
+
+    private static int readCount(DataInputStream input) throws IOException {
+        int count = input.readInt();
+        if (count < 0 || count > MAX_CHUNK) {
+            throw new IOException("Invalid replication message size " + count);
+        }
+        return count;
+    }
+}
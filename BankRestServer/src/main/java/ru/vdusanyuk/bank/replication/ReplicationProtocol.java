@@ -0,0 +1,38 @@
+package ru.vdusanyuk.bank.replication;
+
+import ru.vdusanyuk.bank.dao.journal.JournalRecord;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Messages of the replication stream from primary to follower, big-endian, each starts with its type (int):
+ * ACCOUNTS - count (int) and count pairs of account number and balance (longs), a chunk of balance snapshot;
+ * SNAPSHOT - commit version the snapshot is taken at and primary time ms (longs), the snapshot is complete;
+ * BATCH - primary time ms (long), count (int) and count transfer records of {@link JournalRecord#SIZE} bytes,
+ * a part of the batch processed by primary; batch without records is a heartbeat.
+ * The follower gets the snapshot first and then the batches processed after it, in processing order
+ */
+final class ReplicationProtocol {
+
+    static final int ACCOUNTS = 1;
+    static final int SNAPSHOT = 2;
+    static final int BATCH = 3;
+
+    /**
+     * accounts or transfer records per message at most
+     */
+    static final int MAX_CHUNK = 4096;
+
+    /**
+     * heartbeat is sent when there is no batch to send for this time
+     */
+    static final long HEARTBEAT_MILLIS = 100;
+
+    /**
+     * follower reconnects when nothing is received for this time
+     */
+    static final int READ_TIMEOUT_MILLIS = (int) TimeUnit.SECONDS.toMillis(5);
+
+    private ReplicationProtocol() {
+    }
+}
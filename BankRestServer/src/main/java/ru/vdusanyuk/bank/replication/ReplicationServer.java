@@ -0,0 +1,244 @@
+package ru.vdusanyuk.bank.replication;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.vdusanyuk.bank.dao.BankHolder;
+import ru.vdusanyuk.bank.dao.journal.JournalRecord;
+import ru.vdusanyuk.bank.dao.model.Transfer;
+import ru.vdusanyuk.bank.metrics.Metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static ru.vdusanyuk.bank.replication.ReplicationProtocol.*;
+
+/**
+ * Primary side of replication: streams balance snapshot and then the batches processed by {@link BankHolder}
+ * to every connected follower, see {@link ReplicationProtocol}.
+ * The batch thread only offers the processed batch to the bounded queue of every follower, the follower is sent
+ * by its own thread; follower that falls behind by more than the queue holds is disconnected, it reconnects
+ * and starts from a new snapshot
+ */
+public class ReplicationServer implements AutoCloseable {
+
+    private final static Logger logger = LoggerFactory.getLogger(ReplicationServer.class);
+
+    /**
+     * batches queued for a follower at most
+     */
+    private static final int MAX_QUEUED_BATCHES = 1024;
+
+    private final BankHolder bankHolder;
+    private final ServerSocket serverSocket;
+    private final Thread acceptor;
+    private final List<Follower> followers = new CopyOnWriteArrayList<>();
+    private volatile boolean closed;
+
+    /**
+     * constructor, binds the port and subscribes to processed batches
+     * @param bankHolder primary bank
+     * @param port port to listen, 0 for any free port
+     */
+    public ReplicationServer(BankHolder bankHolder, int port) throws IOException {
+        this.bankHolder = bankHolder;
+        serverSocket = new ServerSocket(port);
+        bankHolder.setBatchListener(this::publish);
+        acceptor = new Thread(this::acceptFollowers, "replication-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        Metrics.getInstance().gauge("bank_replication_followers", "Connected replication followers",
+                                    followers::size);
+        logger.info("Replication server is listening on port {}", getPort());
+    }
+
+    /**
+     * getter, port listened
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * stop streaming and disconnect the followers
+     */
+    @Override
+    public void close() {
+        closed = true;
+        bankHolder.setBatchListener(null);
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            logger.warn("Unable to close replication server socket", e);
+        }
+        for (Follower follower : followers) {
+            follower.close();
+        }
+    }
+
+    /**
+     * hand the processed batch to followers, called on the batch thread
+     */
+    private void publish(Collection<Transfer> batch) {
+        for (Follower follower : followers) {
+            if (!follower.batches.offer(batch)) {
+                logger.warn("Replication follower {} is too slow, it is disconnected", follower.name);
+                follower.close();
+            }
+        }
+    }
+
+    private void acceptFollowers() {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                new Follower(socket).thread.start();
+            } catch (SocketException e) {
+                if (!closed) {
+                    logger.error("Replication server socket failure", e);
+                }
+                break;
+            } catch (IOException e) {
+                logger.error("Unable to accept replication follower", e);
+            }
+        }
+    }
+
+    /**
+     * connected follower with its sender thread
+     */
+    private final class Follower implements Runnable {
+        private final Socket socket;
+        private final String name;
+        private final Thread thread;
+        private final BlockingQueue<Collection<Transfer>> batches = new ArrayBlockingQueue<>(MAX_QUEUED_BATCHES);
+        private final ByteBuffer buffer = ByteBuffer.allocate(16 + MAX_CHUNK * JournalRecord.SIZE);
+        private OutputStream output;
+
+        private Follower(Socket socket) {
+            this.socket = socket;
+            this.name = String.valueOf(socket.getRemoteSocketAddress());
+            thread = new Thread(this, "replication-sender-" + name);
+            thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            //subscribed before the snapshot is taken, so no batch processed after the snapshot is missed
+            followers.add(this);
+            logger.info("Replication follower {} is connected", name);
+            try {
+                output = socket.getOutputStream();
+                long snapshotVersion = sendSnapshot();
+                while (!closed && !socket.isClosed()) {
+                    Collection<Transfer> batch = batches.poll(HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+                    sendBatch(batch, snapshotVersion);
+                }
+            } catch (IOException | UncheckedIOException e) {
+                if (!socket.isClosed()) {
+                    logger.warn("Replication follower " + name + " failure", e);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                close();
+                logger.info("Replication follower {} is disconnected", name);
+            }
+        }
+
+        /**
+         * stream balances of a pinned snapshot
+         * @return snapshot version, the batches are sent without the transfers it covers
+         */
+        private long sendSnapshot() throws IOException {
+            buffer.clear().position(8);
+            long version = bankHolder.exportBalances((accountNumber, balance) -> {
+                buffer.putLong(accountNumber).putLong(balance);
+                if ((buffer.position() - 8) / 16 == MAX_CHUNK) {
+                    sendAccounts();
+                }
+            });
+            sendAccounts();
+            buffer.clear();
+            buffer.putInt(SNAPSHOT).putLong(version).putLong(System.currentTimeMillis());
+            write();
+            return version;
+        }
+
+        /**
+         * send the accounts put into buffer after the header space
+         */
+        private void sendAccounts() {
+            int count = (buffer.position() - 8) / 16;
+            if (count == 0) {
+                return;
+            }
+            buffer.putInt(0, ACCOUNTS).putInt(4, count);
+            try {
+                write();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            buffer.clear().position(8);
+        }
+
+        /**
+         * send the batch in chunks, or heartbeat if there is no batch
+         */
+        private void sendBatch(Collection<Transfer> batch, long snapshotVersion) throws IOException {
+            long sentTime = System.currentTimeMillis();
+            int count = 0;
+            buffer.clear().position(16);
+            if (batch != null) {
+                for (Transfer transfer : batch) {
+                    if (transfer.getVersion() <= snapshotVersion) {
+                        continue;
+                    }
+                    new JournalRecord(transfer.getId(), transfer.getVersion(),
+                                      transfer.getFromAccount().getAccountNumber(),
+                                      transfer.getToAccount().getAccountNumber(), transfer.getAmount())
+                            .writeTo(buffer, buffer.position());
+                    buffer.position(buffer.position() + JournalRecord.SIZE);
+                    if (++count == MAX_CHUNK) {
+                        sendRecords(sentTime, count);
+                        count = 0;
+                    }
+                }
+            }
+            if (count > 0 || batch == null) {
+                sendRecords(sentTime, count);
+            }
+        }
+
+        private void sendRecords(long sentTime, int count) throws IOException {
+            buffer.putInt(0, BATCH).putLong(4, sentTime).putInt(12, count);
+            write();
+            buffer.clear().position(16);
+        }
+
+        private void write() throws IOException {
+            output.write(buffer.array(), 0, buffer.position());
+            output.flush();
+        }
+
+        private void close() {
+            followers.remove(this);
+            try {
+                socket.close();
+            } catch (IOException e) {
+                logger.debug("Unable to close replication follower socket", e);
+            }
+        }
+    }
+}
@@ -1,13 +1,41 @@
 package ru.vdusanyuk.bank.rest;
 
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import ru.vdusanyuk.bank.json.ReplicationStatus;
 import ru.vdusanyuk.bank.json.ServiceResponse;
 import ru.vdusanyuk.bank.json.TransferRequest;
+import ru.vdusanyuk.bank.json.TransferStatusResponse;
 import ru.vdusanyuk.bank.dao.BankHolder;
 import ru.vdusanyuk.bank.dao.model.OperationResult;
+import ru.vdusanyuk.bank.dao.model.Transfer;
+import ru.vdusanyuk.bank.util.BankProperties;
 
 import javax.ws.rs.*;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 
 /**
  * REST rest for bank inter account transfer
@@ -19,6 +47,49 @@ public class EntryPoint {
     private static final String ERROR_ACCOUNT_NOT_FOUND = "Account Not Found.";
     private static final String ERROR_BALANCE_NOT_ENOUGH = "Balance Not Enough.";
     private static final String ERROR_INVALID_REQUEST = "Invalid Request.";
+    private static final String ERROR_SERVICE_OVERLOADED = "Service Overloaded.";
+    private static final String ERROR_TRANSFER_NOT_FOUND = "Transfer Not Found.";
+    private static final String ERROR_READ_ONLY = "Read-Only Replica.";
+    private static final String ERROR_IDEMPOTENCY_KEY_REUSED = "Idempotency Key Used By Another Request.";
+    /**
+     * Unprocessable Entity, the status of request reusing idempotency key of another request
+     */
+    private static final int STATUS_UNPROCESSABLE_ENTITY = 422;
+
+    /**
+     * newline delimited JSON: one transfer request object per line
+     */
+    public static final String APPLICATION_NDJSON = "application/x-ndjson";
+    public static final String TEXT_CSV = "text/csv";
+
+    private static final int EXPORT_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * values of await parameter of transfer requests: the response is sent when the transfer is accepted (default)
+     * or when it is processed
+     */
+    private static final String AWAIT_ACCEPTED = "accepted";
+    private static final String AWAIT_PROCESSED = "processed";
+    /**
+     * header of client key making the transfer request idempotent, the same as idempotencyKey field of the request
+     */
+    public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    private static final int MAX_IDEMPOTENCY_KEY_LENGTH = 255;
+    /**
+     * suspended transfer request waiting longer than this gets 503 Service Unavailable
+     */
+    private static final long ASYNC_TIMEOUT_SEC = BankProperties.getLong("server.asyncTimeoutSec", 30);
+    /**
+     * threads resuming suspended responses, so the bank threads completing the results do not write responses
+     */
+    private static final Executor RESPONSE_EXECUTOR = createResponseExecutor(
+            BankProperties.getInt("server.responseThreads", 4));
+    /**
+     * bulk transfer of more requests gets 413 Request Entity Too Large
+     */
+    private static final int MAX_BULK_SIZE = BankProperties.getInt("server.maxBulkSize", 10000);
+
+    private static final ObjectReader TRANSFER_REQUEST_READER = new ObjectMapper().readerFor(TransferRequest.class);
 
     private BankHolder bankHolder = BankHolder.getInstance();
 
@@ -29,6 +100,17 @@ public class EntryPoint {
         return bankHolder.getTotalBalance().toString();
     }
 
+    /**
+     * replication role of the instance, version of the state and, for replica, replication lag
+     */
+    @GET
+    @Path("/replication")
+    @Produces(MediaType.APPLICATION_JSON)
+    public ReplicationStatus getReplicationStatus() {
+        return new ReplicationStatus(bankHolder.isReplica() ? "REPLICA" : "PRIMARY",
+                                     bankHolder.getReplicatedVersion(), bankHolder.getReplicationLagMs());
+    }
+
     @GET
     @Path("/account/{param}")
     @Produces(MediaType.APPLICATION_JSON)
@@ -38,32 +120,314 @@ public class EntryPoint {
         return generateResponse(result);
     }
 
+    /**
+     * state of several accounts, ids are comma separated: /accounts?ids=1,2,3; all the balances are read
+     * from the same snapshot, each account gets its own response
+     */
+    @GET
+    @Path("/accounts")
+    @Produces(MediaType.APPLICATION_JSON)
+    public List<ServiceResponse> getAccountsState(@QueryParam("ids") String ids) {
+        List<Long> acntNumbers = new ArrayList<>();
+        if (ids != null && !ids.trim().isEmpty()) {
+            for (String id : ids.split(",")) {
+                acntNumbers.add(parseAccountNumber(id.trim()));
+            }
+        }
+        return getAccountsState(acntNumbers);
+    }
+
+    /**
+     * state of several accounts, JSON array of ids in the body
+     */
+    @POST
+    @Path("/accounts")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public List<ServiceResponse> getAccountsState(List<Long> acntNumbers) {
+        List<ServiceResponse> responses = new ArrayList<>();
+        if (acntNumbers != null) {
+            bankHolder.getAccounts(acntNumbers).forEach(result -> responses.add(generateResponse(result)));
+        }
+        return responses;
+    }
+
+    /**
+     * export balances of all the accounts as of one snapshot, format=ndjson (default) or csv;
+     * the balances are written straight to the response stream, in no particular order
+     */
+    @GET
+    @Path("/accounts/export")
+    @Produces({APPLICATION_NDJSON, TEXT_CSV})
+    public Response exportAccounts(@QueryParam("format") @DefaultValue("ndjson") String format) {
+        boolean csv = "csv".equalsIgnoreCase(format);
+        if (!csv && !"ndjson".equalsIgnoreCase(format)) {
+            throw new BadRequestException("Unsupported export format: " + format);
+        }
+        StreamingOutput output = out -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), EXPORT_BUFFER_SIZE);
+            if (csv) {
+                writer.write("accountNumber,balance\n");
+            }
+            try {
+                bankHolder.exportBalances((accountNumber, balance) -> {
+                    try {
+                        if (csv) {
+                            writer.write(accountNumber + "," + balance + "\n");
+                        } else {
+                            writer.write("{\"accountNumber\":" + accountNumber + ",\"balance\":" + balance + "}\n");
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            writer.flush();
+        };
+        return Response.ok(output, csv ? TEXT_CSV : APPLICATION_NDJSON).build();
+    }
+
+    /**
+     * transfer, the request thread is released while the transfer waits for acknowledgement;
+     * with await=processed the response is sent when the transfer is PROCESSED.
+     * The retry of request with the same idempotency key (header or field) gets the response of the first one,
+     * the request with the key of another transfer (other accounts or amount) gets 422 Unprocessable Entity
+     */
     @POST
     @Path("/transfer")
     @Consumes(MediaType.APPLICATION_JSON)
-    public ServiceResponse postTransferMoney(TransferRequest request) {
-        return validateRequest(request)
-                .orElseGet(() -> generateResponse(
-                      bankHolder.submitTransfer(request.getFromAccountNumber(),
-                                                request.getToAccountNumber(),
-                                                request.getAmount())
-                    )
-                );
+    @Produces(MediaType.APPLICATION_JSON)
+    public void postTransferMoney(TransferRequest request, @QueryParam("await") String await,
+                                  @HeaderParam(IDEMPOTENCY_KEY_HEADER) String idempotencyKey,
+                                  @Suspended AsyncResponse asyncResponse) {
+        if (request == null) {
+            asyncResponse.resume(new ServiceResponse("ERROR", ERROR_INVALID_REQUEST, null, null));
+            return;
+        }
+        submitTransfer(idempotencyKey != null ? idempotencyKey : request.getIdempotencyKey(),
+                       request.getFromAccountNumber(), request.getToAccountNumber(), request.getAmount(),
+                       await, asyncResponse);
     }
 
     @GET
     @Path("/transfer")
     @Produces(MediaType.APPLICATION_JSON)
-    public ServiceResponse getTransferMoney(@QueryParam("fromAccountNumber") Long fromAcntNumber,
-                                            @QueryParam("toAccountNumber") Long toAcntNumber,
-                                            @QueryParam("amount") Long amount ) {
-        return validateRequest(fromAcntNumber, toAcntNumber, amount)
-                .orElseGet(() -> generateResponse(
-                        bankHolder.submitTransfer(fromAcntNumber,
-                                                  toAcntNumber,
-                                                  amount)
-                    )
-                );
+    public void getTransferMoney(@QueryParam("fromAccountNumber") Long fromAcntNumber,
+                                 @QueryParam("toAccountNumber") Long toAcntNumber,
+                                 @QueryParam("amount") Long amount,
+                                 @QueryParam("await") String await,
+                                 @HeaderParam(IDEMPOTENCY_KEY_HEADER) String idempotencyKey,
+                                 @Suspended AsyncResponse asyncResponse) {
+        submitTransfer(idempotencyKey, fromAcntNumber, toAcntNumber, amount, await, asyncResponse);
+    }
+
+    /**
+     * status of recent transfer by id returned with transfer response, only the latest transfers are kept
+     */
+    @GET
+    @Path("/transfer/{id}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public TransferStatusResponse getTransferStatus(@PathParam("id") Long transferId) {
+        Transfer transfer = transferId != null ? bankHolder.getTransfer(transferId) : null;
+        if (transfer == null) {
+            return new TransferStatusResponse("ERROR", ERROR_TRANSFER_NOT_FOUND, transferId, null, null, null, null);
+        }
+        return new TransferStatusResponse("SUCCESS", null, transfer.getId(),
+                                          transfer.getFromAccount().getAccountNumber(),
+                                          transfer.getToAccount().getAccountNumber(),
+                                          transfer.getAmount(), transfer.getStatus().name());
+    }
+
+    /**
+     * bulk transfer: all the transfers are submitted in one pass, each one gets its own response.
+     * The transfer with idempotencyKey field is submitted in order on its own as single idempotent transfer
+     */
+    @POST
+    @Path("/transfers")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public void postTransfers(List<TransferRequest> requests, @QueryParam("await") String await,
+                              @Suspended AsyncResponse asyncResponse) {
+        if (requests != null && requests.size() > MAX_BULK_SIZE) {
+            asyncResponse.resume(bulkTooLarge());
+            return;
+        }
+        submitTransfers(requests != null ? requests : new ArrayList<>(), await, asyncResponse);
+    }
+
+    /**
+     * bulk transfer from NDJSON stream, requests are read from the stream one by one, the stream of more than
+     * server.maxBulkSize requests is not read further
+     */
+    @POST
+    @Path("/transfers")
+    @Consumes(APPLICATION_NDJSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public void postTransfersStream(InputStream input, @QueryParam("await") String await,
+                                    @Suspended AsyncResponse asyncResponse) {
+        List<TransferRequest> requests = new ArrayList<>();
+        try (MappingIterator<TransferRequest> iterator = TRANSFER_REQUEST_READER.readValues(input)) {
+            while (iterator.hasNextValue()) {
+                if (requests.size() == MAX_BULK_SIZE) {
+                    asyncResponse.resume(bulkTooLarge());
+                    return;
+                }
+                requests.add(iterator.nextValue());
+            }
+        } catch (IOException e) {
+            asyncResponse.resume(new BadRequestException("Invalid transfer request stream: " + e.getMessage(), e));
+            return;
+        }
+        submitTransfers(requests, await, asyncResponse);
+    }
+
+    private static WebApplicationException bulkTooLarge() {
+        return new WebApplicationException("Bulk transfer should have up to " + MAX_BULK_SIZE + " requests",
+                                           Response.Status.REQUEST_ENTITY_TOO_LARGE);
+    }
+
+    private void submitTransfer(String idempotencyKey, Long fromAcntNumber, Long toAcntNumber, Long amount,
+                                String await, AsyncResponse asyncResponse) {
+        if (idempotencyKey != null && (idempotencyKey.isEmpty()
+                || idempotencyKey.length() > MAX_IDEMPOTENCY_KEY_LENGTH)) {
+            asyncResponse.resume(new BadRequestException("Idempotency key should be 1 to "
+                                                         + MAX_IDEMPOTENCY_KEY_LENGTH + " characters"));
+            return;
+        }
+        Optional<ServiceResponse> error = validateRequest(fromAcntNumber, toAcntNumber, amount);
+        if (error.isPresent()) {
+            asyncResponse.resume(error.get());
+            return;
+        }
+        Boolean awaitProcessed = parseAwait(await, asyncResponse);
+        if (awaitProcessed != null) {
+            resume(asyncResponse, bankHolder.submitTransfer(idempotencyKey, fromAcntNumber, toAcntNumber, amount,
+                                                            awaitProcessed)
+                    .thenApply(this::generateTransferResponse));
+        }
+    }
+
+    private void submitTransfers(List<TransferRequest> requests, String await, AsyncResponse asyncResponse) {
+        Boolean awaitProcessed = parseAwait(await, asyncResponse);
+        if (awaitProcessed == null) {
+            return;
+        }
+        ServiceResponse[] responses = new ServiceResponse[requests.size()];
+        List<CompletableFuture<?>> results = new ArrayList<>();
+        int[] positions = new int[requests.size()];
+        long[] fromAcntNumbers = new long[requests.size()];
+        long[] toAcntNumbers = new long[requests.size()];
+        long[] amounts = new long[requests.size()];
+        int passStart = 0;
+        int count = 0;
+        for (int i = 0; i < requests.size(); i++) {
+            TransferRequest request = requests.get(i);
+            Optional<ServiceResponse> error = request != null ? validateRequest(request) :
+                    Optional.of(new ServiceResponse("ERROR", ERROR_INVALID_REQUEST, null, null));
+            String idempotencyKey = request != null ? request.getIdempotencyKey() : null;
+            if (idempotencyKey != null && (idempotencyKey.isEmpty()
+                    || idempotencyKey.length() > MAX_IDEMPOTENCY_KEY_LENGTH)) {
+                error = Optional.of(new ServiceResponse("ERROR", ERROR_INVALID_REQUEST, null, null));
+            }
+            if (error.isPresent()) {
+                responses[i] = error.get();
+                continue;
+            }
+            if (idempotencyKey != null) {
+                //the retry of keyed transfer gets the result of the first one, so it is submitted on its own
+                //after the transfers before it
+                submitPass(passStart, count, positions, fromAcntNumbers, toAcntNumbers, amounts, awaitProcessed,
+                           responses, results);
+                passStart = count;
+                int position = i;
+                results.add(bankHolder.submitTransfer(idempotencyKey, request.getFromAccountNumber(),
+                                                      request.getToAccountNumber(), request.getAmount(),
+                                                      awaitProcessed)
+                        .thenAccept(result -> responses[position] = generateResponse(result)));
+                continue;
+            }
+            positions[count] = i;
+            fromAcntNumbers[count] = request.getFromAccountNumber();
+            toAcntNumbers[count] = request.getToAccountNumber();
+            amounts[count] = request.getAmount();
+            count++;
+        }
+        submitPass(passStart, count, positions, fromAcntNumbers, toAcntNumbers, amounts, awaitProcessed,
+                   responses, results);
+        if (results.isEmpty()) {
+            asyncResponse.resume(Arrays.asList(responses));
+            return;
+        }
+        resume(asyncResponse, CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0]))
+                .thenApply(done -> Arrays.asList(responses)));
+    }
+
+    /**
+     * submit the valid transfers from..to-1 of bulk in one pass, their responses are put at their positions
+     */
+    private void submitPass(int from, int to, int[] positions, long[] fromAcntNumbers, long[] toAcntNumbers,
+                            long[] amounts, boolean awaitProcessed, ServiceResponse[] responses,
+                            List<CompletableFuture<?>> results) {
+        if (from == to) {
+            return;
+        }
+        results.add(bankHolder.submitTransfers(Arrays.copyOfRange(fromAcntNumbers, from, to),
+                                               Arrays.copyOfRange(toAcntNumbers, from, to),
+                                               Arrays.copyOfRange(amounts, from, to), awaitProcessed)
+                .thenAccept(passResults -> {
+                    for (int i = from; i < to; i++) {
+                        responses[positions[i]] = generateResponse(passResults.get(i - from));
+                    }
+                }));
+    }
+
+    /**
+     * await parameter value
+     * @return true for processed, false for accepted or null if the value is invalid, the response is resumed then
+     */
+    private Boolean parseAwait(String await, AsyncResponse asyncResponse) {
+        if (await == null || AWAIT_ACCEPTED.equalsIgnoreCase(await)) {
+            return false;
+        }
+        if (AWAIT_PROCESSED.equalsIgnoreCase(await)) {
+            return true;
+        }
+        asyncResponse.resume(new BadRequestException("Unsupported await value: " + await));
+        return null;
+    }
+
+    /**
+     * resume the suspended response when the result is completed, no thread waits for it meanwhile;
+     * the result completed later is resumed on the response threads instead of the bank thread completing it
+     */
+    private void resume(AsyncResponse asyncResponse, CompletableFuture<?> result) {
+        if (!result.isDone()) {
+            asyncResponse.setTimeout(ASYNC_TIMEOUT_SEC, TimeUnit.SECONDS);
+        }
+        BiConsumer<Object, Throwable> resumer = (response, failure) -> {
+            if (failure == null) {
+                asyncResponse.resume(response);
+            } else {
+                asyncResponse.resume(failure instanceof CompletionException && failure.getCause() != null ?
+                                     failure.getCause() : failure);
+            }
+        };
+        if (result.isDone()) {
+            result.whenComplete(resumer);
+        } else {
+            result.whenCompleteAsync(resumer, RESPONSE_EXECUTOR);
+        }
+    }
+
+    private static Executor createResponseExecutor(int threads) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newFixedThreadPool(Math.max(threads, 1), task -> {
+            Thread thread = new Thread(task, "bank-response-" + threadCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
     private Optional<ServiceResponse> validateRequest(Long fromAcntNumber, Long toAcntNumber, Long amount) {
@@ -77,10 +441,33 @@ public class EntryPoint {
         return validateRequest(request.getFromAccountNumber(), request.getToAccountNumber(), request.getAmount());
     }
 
+    /**
+     * response of single transfer: the request reusing idempotency key of another request gets 422
+     */
+    private Object generateTransferResponse(OperationResult result) {
+        if (result.getCode() == 4) {
+            return Response.status(STATUS_UNPROCESSABLE_ENTITY)
+                    .entity(new ServiceResponse("ERROR", ERROR_IDEMPOTENCY_KEY_REUSED, null, null))
+                    .type(MediaType.APPLICATION_JSON_TYPE).build();
+        }
+        return generateResponse(result);
+    }
+
     private ServiceResponse generateResponse(OperationResult result) {
-        return result.getCode() == 0
+        if (result.getCode() == 2) {
+            return new ServiceResponse("ERROR", ERROR_SERVICE_OVERLOADED, null, null);
+        }
+        if (result.getCode() == 3) {
+            return new ServiceResponse("ERROR", ERROR_READ_ONLY, null, null);
+        }
+        if (result.getCode() == 4) {
+            return new ServiceResponse("ERROR", ERROR_IDEMPOTENCY_KEY_REUSED, null, null);
+        }
+        ServiceResponse response = result.getCode() == 0
                 ? new ServiceResponse("SUCCESS",null, result.getAccountNumber(), result.getBalance())
                 : generateErrorResponse(result.getBalance());
+        response.setTransferId(result.getTransferId());
+        return response;
     }
 
     private ServiceResponse generateErrorResponse(Long newBalance) {
@@ -89,6 +476,14 @@ public class EntryPoint {
                 null, newBalance);
     }
 
+    private Long parseAccountNumber(String id) {
+        try {
+            return Long.valueOf(id);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
     private long nullSafeLong(Long value) {
         return value == null ? 0L : value;
     }
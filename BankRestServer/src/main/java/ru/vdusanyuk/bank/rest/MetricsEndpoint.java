@@ -0,0 +1,32 @@
+package ru.vdusanyuk.bank.rest;
+
+import ru.vdusanyuk.bank.metrics.Metrics;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * REST resource exposing application metrics in Prometheus text format
+ */
+
+@Path("/metrics")
+public class MetricsEndpoint {
+
+    public static final String TEXT_PROMETHEUS = "text/plain; version=0.0.4";
+
+    @GET
+    @Produces(TEXT_PROMETHEUS)
+    public StreamingOutput getMetrics() {
+        return out -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            Metrics.getInstance().writeTo(writer);
+            writer.flush();
+        };
+    }
+}
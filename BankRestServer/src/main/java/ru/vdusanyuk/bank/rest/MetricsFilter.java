@@ -0,0 +1,61 @@
+package ru.vdusanyuk.bank.rest;
+
+import ru.vdusanyuk.bank.metrics.Histogram;
+import ru.vdusanyuk.bank.metrics.Metrics;
+import ru.vdusanyuk.bank.metrics.StartupPhases;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.ext.Provider;
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * records latency of every request by endpoint (resource method), from request matching till the response
+ * is ready, including the time the suspended request waits for resume; the first response ends the startup.
+ * The histogram of resource method is looked up in the registry once and then taken from the local map by the method
+ */
+@Provider
+public class MetricsFilter implements ContainerRequestFilter, ContainerResponseFilter {
+
+    private static final String START_TIME_PROPERTY = MetricsFilter.class.getName() + ".startTime";
+
+    /**
+     * latency histograms by resource method, shared by all the filter instances
+     */
+    private static final ConcurrentMap<Method, Histogram> latencies = new ConcurrentHashMap<>();
+
+    @Context
+    private ResourceInfo resourceInfo;
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) {
+        requestContext.setProperty(START_TIME_PROPERTY, System.nanoTime());
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) {
+        StartupPhases.getInstance().responseReady();
+        Object startTime = requestContext.getProperty(START_TIME_PROPERTY);
+        Method method = resourceInfo.getResourceMethod();
+        if (startTime == null || method == null) {
+            return;
+        }
+        Histogram latency = latencies.get(method);
+        if (latency == null) {
+            //computeIfAbsent of Java 8 locks the bin even if the key is present, so it is called only on miss
+            latency = latencies.computeIfAbsent(method, MetricsFilter::latencyOf);
+        }
+        latency.record(System.nanoTime() - (Long) startTime);
+    }
+
+    private static Histogram latencyOf(Method method) {
+        return Metrics.getInstance().histogram("bank_request_duration_seconds", "Request latency by endpoint",
+                                               Metrics.NANOS, "endpoint", method.getName());
+    }
+}
@@ -0,0 +1,177 @@
+package ru.vdusanyuk.bank.rest;
+
+import ru.vdusanyuk.bank.json.ServiceResponse;
+import ru.vdusanyuk.bank.util.BufferPool;
+
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * JSON writer of {@link ServiceResponse} without reflective binding: the fixed set of fields is written straight
+ * into pooled byte buffer (see {@link BufferPool}), field names and the repeated status/error strings
+ * are encoded once, numbers are written digit by digit. The output is the same as Jackson one
+ */
+@Provider
+@Produces(MediaType.APPLICATION_JSON)
+public class ServiceResponseWriter implements MessageBodyWriter<ServiceResponse> {
+
+    private static final byte[] RESPONSE_STATUS = ascii("{\"responseStatus\":");
+    private static final byte[] ERROR_MESSAGE = ascii(",\"errorMessage\":");
+    private static final byte[] ACCOUNT_NUMBER = ascii(",\"accountNumber\":");
+    private static final byte[] BALANCE = ascii(",\"balance\":");
+    private static final byte[] TRANSFER_ID = ascii(",\"transferId\":");
+    private static final byte[] NULL = ascii("null");
+
+    /**
+     * size of the response without status and error strings: field names, 4 numbers of 20 bytes at most, '}'
+     */
+    private static final int FIXED_SIZE = RESPONSE_STATUS.length + ERROR_MESSAGE.length + ACCOUNT_NUMBER.length
+            + BALANCE.length + TRANSFER_ID.length + 4 * 20 + 1;
+    private static final int BUFFER_SIZE = 256;
+    /**
+     * limit of encoded strings cache, the responses use a few constant strings
+     */
+    private static final int MAX_ENCODED_STRINGS = 64;
+    /**
+     * buffers shared by the responses written on virtual threads
+     */
+    private static final int SHARED_BUFFERS = 64;
+
+    private static final BufferPool buffers = new BufferPool(BUFFER_SIZE, SHARED_BUFFERS);
+    private static final ConcurrentHashMap<String, byte[]> encodedStrings = new ConcurrentHashMap<>();
+
+    @Override
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return type == ServiceResponse.class;
+    }
+
+    @Override
+    public long getSize(ServiceResponse response, Class<?> type, Type genericType, Annotation[] annotations,
+                        MediaType mediaType) {
+        return -1;
+    }
+
+    @Override
+    public void writeTo(ServiceResponse response, Class<?> type, Type genericType, Annotation[] annotations,
+                        MediaType mediaType, MultivaluedMap<String, Object> httpHeaders,
+                        OutputStream entityStream) throws IOException {
+        byte[] status = encode(response.getResponseStatus());
+        byte[] error = encode(response.getErrorMessage());
+        //only unexpectedly long message needs its own buffer
+        int size = FIXED_SIZE + status.length + error.length;
+        boolean pooled = size <= BUFFER_SIZE;
+        byte[] buffer = pooled ? buffers.acquire() : new byte[size];
+        try {
+            write(buffer, status, error, response, entityStream);
+        } finally {
+            if (pooled) {
+                buffers.release(buffer);
+            }
+        }
+    }
+
+    private static void write(byte[] buffer, byte[] status, byte[] error, ServiceResponse response,
+                              OutputStream entityStream) throws IOException {
+        int position = put(buffer, 0, RESPONSE_STATUS);
+        position = put(buffer, position, status);
+        position = put(buffer, position, ERROR_MESSAGE);
+        position = put(buffer, position, error);
+        position = put(buffer, position, ACCOUNT_NUMBER);
+        position = putLong(buffer, position, response.getAccountNumber());
+        position = put(buffer, position, BALANCE);
+        position = putLong(buffer, position, response.getBalance());
+        if (response.getTransferId() != null) {
+            position = put(buffer, position, TRANSFER_ID);
+            position = putLong(buffer, position, response.getTransferId());
+        }
+        buffer[position++] = '}';
+        entityStream.write(buffer, 0, position);
+    }
+
+    /**
+     * JSON string value as UTF-8 bytes, the strings seen first are cached
+     */
+    static byte[] encode(String value) {
+        if (value == null) {
+            return NULL;
+        }
+        byte[] encoded = encodedStrings.get(value);
+        if (encoded == null) {
+            encoded = quote(value).getBytes(StandardCharsets.UTF_8);
+            if (encodedStrings.size() < MAX_ENCODED_STRINGS) {
+                encodedStrings.putIfAbsent(value, encoded);
+            }
+        }
+        return encoded;
+    }
+
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c == '\n') {
+                quoted.append("\\n");
+            } else if (c == '\r') {
+                quoted.append("\\r");
+            } else if (c == '\t') {
+                quoted.append("\\t");
+            } else if (c == '\b') {
+                quoted.append("\\b");
+            } else if (c == '\f') {
+                quoted.append("\\f");
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    private static int put(byte[] buffer, int position, byte[] bytes) {
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        return position + bytes.length;
+    }
+
+    /**
+     * write decimal digits of the value or null
+     */
+    static int putLong(byte[] buffer, int position, Long value) {
+        if (value == null) {
+            return put(buffer, position, NULL);
+        }
+        long remaining = value;
+        if (remaining == Long.MIN_VALUE) {
+            return put(buffer, position, ascii(Long.toString(remaining)));
+        }
+        if (remaining < 0) {
+            buffer[position++] = '-';
+            remaining = -remaining;
+        }
+        int digits = 1;
+        for (long bound = 10; digits < 19 && remaining >= bound; bound *= 10) {
+            digits++;
+        }
+        int end = position + digits;
+        for (int i = end - 1; i >= position; i--) {
+            buffer[i] = (byte) ('0' + remaining % 10);
+            remaining /= 10;
+        }
+        return end;
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+}
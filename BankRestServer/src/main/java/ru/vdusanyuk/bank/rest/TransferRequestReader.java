@@ -0,0 +1,319 @@
+package ru.vdusanyuk.bank.rest;
+
+import ru.vdusanyuk.bank.json.TransferRequest;
+import ru.vdusanyuk.bank.util.BufferPool;
+
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyReader;
+import javax.ws.rs.ext.Provider;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * JSON reader of {@link TransferRequest} without reflective binding: the body is read into pooled byte buffer
+ * (see {@link BufferPool}) and the three numeric fields and idempotency key are parsed in place,
+ * field names are compared as bytes.
+ * As with Jackson defaults, unknown field or malformed body is rejected with 400 Bad Request
+ */
+@Provider
+@Consumes(MediaType.APPLICATION_JSON)
+public class TransferRequestReader implements MessageBodyReader<TransferRequest> {
+
+    private static final byte[] FROM_ACCOUNT_NUMBER = ascii("fromAccountNumber");
+    private static final byte[] TO_ACCOUNT_NUMBER = ascii("toAccountNumber");
+    private static final byte[] AMOUNT = ascii("amount");
+    private static final byte[] IDEMPOTENCY_KEY = ascii("idempotencyKey");
+
+    /**
+     * limit of request body size, the request is about 70 bytes
+     */
+    private static final int MAX_BODY_SIZE = 4096;
+
+    /**
+     * buffers shared by the requests on virtual threads
+     */
+    private static final int SHARED_BUFFERS = 64;
+
+    private static final BufferPool buffers = new BufferPool(MAX_BODY_SIZE + 1, SHARED_BUFFERS);
+
+    @Override
+    public boolean isReadable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return type == TransferRequest.class;
+    }
+
+    @Override
+    public TransferRequest readFrom(Class<TransferRequest> type, Type genericType, Annotation[] annotations,
+                                    MediaType mediaType, MultivaluedMap<String, String> httpHeaders,
+                                    InputStream entityStream) throws IOException {
+        byte[] buffer = buffers.acquire();
+        try {
+            int length = 0;
+            for (int read; length < buffer.length
+                    && (read = entityStream.read(buffer, length, buffer.length - length)) > 0; ) {
+                length += read;
+            }
+            if (length > MAX_BODY_SIZE) {
+                throw new BadRequestException("Transfer request is too large");
+            }
+            return new Parser(buffer, length).parse();
+        } finally {
+            buffers.release(buffer);
+        }
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * parser of the body: object of the known fields with integer, string or null values; a number with fraction
+     * or exponent is taken if its value is integer, e.g. 100.0 or 1e2, otherwise it is rejected unlike Jackson,
+     * which truncates it
+     */
+    private static final class Parser {
+        private final byte[] body;
+        private final int length;
+        private int position;
+
+        private Parser(byte[] body, int length) {
+            this.body = body;
+            this.length = length;
+        }
+
+        private TransferRequest parse() {
+            Long fromAccountNumber = null;
+            Long toAccountNumber = null;
+            Long amount = null;
+            String idempotencyKey = null;
+            expect('{');
+            if (peek() == '}') {
+                position++;
+            } else {
+                do {
+                    int nameStart = skipWhitespace() + 1;
+                    expect('"');
+                    while (position < length && body[position] != '"' && body[position] != '\\') {
+                        position++;
+                    }
+                    int nameEnd = position;
+                    expect('"');
+                    expect(':');
+                    if (isName(nameStart, nameEnd, FROM_ACCOUNT_NUMBER)) {
+                        fromAccountNumber = parseValue();
+                    } else if (isName(nameStart, nameEnd, TO_ACCOUNT_NUMBER)) {
+                        toAccountNumber = parseValue();
+                    } else if (isName(nameStart, nameEnd, AMOUNT)) {
+                        amount = parseValue();
+                    } else if (isName(nameStart, nameEnd, IDEMPOTENCY_KEY)) {
+                        idempotencyKey = parseString();
+                    } else {
+                        throw invalid("unknown field "
+                                + new String(body, nameStart, nameEnd - nameStart, StandardCharsets.UTF_8));
+                    }
+                } while (next() == ',');
+                position--;
+                expect('}');
+            }
+            if (skipWhitespace() != length) {
+                throw invalid("unexpected content after object");
+            }
+            return new TransferRequest(fromAccountNumber, toAccountNumber, amount, idempotencyKey);
+        }
+
+        private String parseString() {
+            if (isNull()) {
+                return null;
+            }
+            expect('"');
+            int start = position;
+            while (position < length && body[position] != '"' && body[position] != '\\') {
+                position++;
+            }
+            if (position < length && body[position] == '"') {
+                //the usual key is ASCII without escapes
+                return new String(body, start, position++ - start, StandardCharsets.UTF_8);
+            }
+            StringBuilder value = new StringBuilder(new String(body, start, position - start, StandardCharsets.UTF_8));
+            while (true) {
+                if (position >= length) {
+                    throw invalid("unterminated string");
+                }
+                byte c = body[position++];
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c != '\\') {
+                    int end = position;
+                    while (end < length && body[end] != '"' && body[end] != '\\') {
+                        end++;
+                    }
+                    value.append(new String(body, position - 1, end - position + 1, StandardCharsets.UTF_8));
+                    position = end;
+                    continue;
+                }
+                if (position >= length) {
+                    throw invalid("unterminated string");
+                }
+                c = body[position++];
+                switch (c) {
+                    case '"':
+                    case '\\':
+                    case '/':
+                        value.append((char) c);
+                        break;
+                    case 'b':
+                        value.append('\b');
+                        break;
+                    case 'f':
+                        value.append('\f');
+                        break;
+                    case 'n':
+                        value.append('\n');
+                        break;
+                    case 'r':
+                        value.append('\r');
+                        break;
+                    case 't':
+                        value.append('\t');
+                        break;
+                    case 'u':
+                        if (position + 4 > length) {
+                            throw invalid("invalid unicode escape");
+                        }
+                        try {
+                            value.append((char) Integer.parseInt(
+                                    new String(body, position, 4, StandardCharsets.US_ASCII), 16));
+                        } catch (NumberFormatException e) {
+                            throw invalid("invalid unicode escape");
+                        }
+                        position += 4;
+                        break;
+                    default:
+                        throw invalid("invalid escape");
+                }
+            }
+        }
+
+        private boolean isNull() {
+            skipWhitespace();
+            if (position + 4 <= length && body[position] == 'n' && body[position + 1] == 'u'
+                    && body[position + 2] == 'l' && body[position + 3] == 'l') {
+                position += 4;
+                return true;
+            }
+            return false;
+        }
+
+        private Long parseValue() {
+            if (isNull()) {
+                return null;
+            }
+            boolean negative = position < length && body[position] == '-';
+            if (negative) {
+                position++;
+            }
+            int start = position;
+            long value = 0;
+            while (position < length && body[position] >= '0' && body[position] <= '9') {
+                int digit = body[position++] - '0';
+                if (value < (Long.MIN_VALUE + digit) / 10) {
+                    throw invalid("number is out of range");
+                }
+                //accumulated negative, so that Long.MIN_VALUE fits
+                value = value * 10 - digit;
+            }
+            if (position == start) {
+                throw invalid("integer or null expected");
+            }
+            if (position < length && (body[position] == '.' || body[position] == 'e' || body[position] == 'E')) {
+                return parseDecimal(negative ? start - 1 : start);
+            }
+            if (!negative && value == Long.MIN_VALUE) {
+                throw invalid("number is out of range");
+            }
+            return negative ? value : -value;
+        }
+
+        /**
+         * number with fraction or exponent, e.g. 100.0 or 1e2, is accepted if its value is integer
+         * @param start position of the number
+         */
+        private Long parseDecimal(int start) {
+            if (body[position] == '.') {
+                position++;
+                skipDigits();
+            }
+            if (position < length && (body[position] == 'e' || body[position] == 'E')) {
+                position++;
+                if (position < length && (body[position] == '+' || body[position] == '-')) {
+                    position++;
+                }
+                skipDigits();
+            }
+            try {
+                return new BigDecimal(new String(body, start, position - start, StandardCharsets.US_ASCII))
+                        .longValueExact();
+            } catch (ArithmeticException e) {
+                throw invalid("integer value expected");
+            }
+        }
+
+        private void skipDigits() {
+            int start = position;
+            while (position < length && body[position] >= '0' && body[position] <= '9') {
+                position++;
+            }
+            if (position == start) {
+                throw invalid("digit expected");
+            }
+        }
+
+        private boolean isName(int start, int end, byte[] name) {
+            if (end - start != name.length) {
+                return false;
+            }
+            for (int i = 0; i < name.length; i++) {
+                if (body[start + i] != name[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int skipWhitespace() {
+            while (position < length && (body[position] == ' ' || body[position] == '\t'
+                    || body[position] == '\n' || body[position] == '\r')) {
+                position++;
+            }
+            return position;
+        }
+
+        private int peek() {
+            skipWhitespace();
+            return position < length ? body[position] : -1;
+        }
+
+        private int next() {
+            int c = peek();
+            position++;
+            return c;
+        }
+
+        private void expect(char c) {
+            if (next() != c) {
+                throw invalid("'" + c + "' expected at " + (position - 1));
+            }
+        }
+
+        private BadRequestException invalid(String reason) {
+            return new BadRequestException("Invalid transfer request: " + reason);
+        }
+    }
+}
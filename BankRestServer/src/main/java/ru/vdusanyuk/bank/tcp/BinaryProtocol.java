@@ -0,0 +1,83 @@
+package ru.vdusanyuk.bank.tcp;
+
+import ru.vdusanyuk.bank.dao.model.OperationResult;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Fixed-size binary frames of the TCP transfer protocol, all the fields are big-endian.
+ * Request, 40 bytes: correlation id (long), operation (int), flags (int) and three long arguments:
+ * TRANSFER - from account, to account, amount; BALANCE - account number; TOTAL - none.
+ * Response, 40 bytes: correlation id and operation of the request (long, int), status (int),
+ * account number, balance and transfer id (long each, {@link #NO_VALUE} if absent).
+ * Requests may be pipelined, responses come in the order of completion, so they are matched by correlation id
+ */
+public final class BinaryProtocol {
+
+    public static final int REQUEST_SIZE = 40;
+    public static final int RESPONSE_SIZE = 40;
+
+    public static final int OP_TRANSFER = 1;
+    public static final int OP_BALANCE = 2;
+    public static final int OP_TOTAL = 3;
+
+    /**
+     * request flag: transfer is responded when it is PROCESSED by batch, not when accepted
+     */
+    public static final int FLAG_AWAIT_PROCESSED = 1;
+
+    public static final int STATUS_SUCCESS = 0;
+    public static final int STATUS_INVALID_REQUEST = 1;
+    public static final int STATUS_ACCOUNT_NOT_FOUND = 2;
+    public static final int STATUS_BALANCE_NOT_ENOUGH = 3;
+    public static final int STATUS_SERVICE_OVERLOADED = 4;
+    public static final int STATUS_UNKNOWN_OPERATION = 5;
+    public static final int STATUS_INTERNAL_ERROR = 6;
+    public static final int STATUS_READ_ONLY = 7;
+
+    /**
+     * value of absent response field
+     */
+    public static final long NO_VALUE = Long.MIN_VALUE;
+
+    private BinaryProtocol() {
+    }
+
+    /**
+     * put request frame
+     */
+    public static void putRequest(ByteBuffer buffer, long correlationId, int operation, int flags,
+                                  long arg1, long arg2, long arg3) {
+        buffer.putLong(correlationId).putInt(operation).putInt(flags).putLong(arg1).putLong(arg2).putLong(arg3);
+    }
+
+    /**
+     * put response frame
+     */
+    public static void putResponse(ByteBuffer buffer, long correlationId, int operation, int status,
+                                   long accountNumber, long balance, long transferId) {
+        buffer.putLong(correlationId).putInt(operation).putInt(status)
+              .putLong(accountNumber).putLong(balance).putLong(transferId);
+    }
+
+    /**
+     * put response frame of operation result, statuses are the same as of REST responses
+     */
+    static void putResult(ByteBuffer buffer, long correlationId, int operation, OperationResult result) {
+        if (result.getCode() == 2 || result.getCode() == 3) {
+            putResponse(buffer, correlationId, operation,
+                        result.getCode() == 2 ? STATUS_SERVICE_OVERLOADED : STATUS_READ_ONLY,
+                        NO_VALUE, NO_VALUE, NO_VALUE);
+            return;
+        }
+        int status = result.getCode() == 0 ? STATUS_SUCCESS
+                : result.getBalance() == null ? STATUS_ACCOUNT_NOT_FOUND : STATUS_BALANCE_NOT_ENOUGH;
+        putResponse(buffer, correlationId, operation, status,
+                    status == STATUS_SUCCESS ? valueOf(result.getAccountNumber()) : NO_VALUE,
+                    valueOf(result.getBalance()), valueOf(result.getTransferId()));
+    }
+
+    private static long valueOf(Long value) {
+        return value == null ? NO_VALUE : value;
+    }
+}
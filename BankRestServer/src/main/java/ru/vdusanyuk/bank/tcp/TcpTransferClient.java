@@ -0,0 +1,121 @@
+package ru.vdusanyuk.bank.tcp;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Blocking client of the binary transfer protocol, not thread safe.
+ * Requests are buffered by {@link #send} and written when the buffer is full, on {@link #flush()}
+ * or before reading a response, so several requests can be pipelined before reading their responses
+ */
+public class TcpTransferClient implements AutoCloseable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final SocketChannel channel;
+    private final ByteBuffer output = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final ByteBuffer input = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    public TcpTransferClient(String host, int port) throws IOException {
+        channel = SocketChannel.open(new InetSocketAddress(host, port));
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        input.flip();
+    }
+
+    /**
+     * buffer request, see {@link BinaryProtocol} for the operations and their arguments
+     */
+    public void send(long correlationId, int operation, int flags, long arg1, long arg2, long arg3)
+            throws IOException {
+        if (output.remaining() < BinaryProtocol.REQUEST_SIZE) {
+            flush();
+        }
+        BinaryProtocol.putRequest(output, correlationId, operation, flags, arg1, arg2, arg3);
+    }
+
+    /**
+     * write the buffered requests
+     */
+    public void flush() throws IOException {
+        output.flip();
+        while (output.hasRemaining()) {
+            channel.write(output);
+        }
+        output.clear();
+    }
+
+    /**
+     * read the next response, the buffered requests are written first
+     */
+    public Response receive() throws IOException {
+        if (output.position() > 0) {
+            flush();
+        }
+        if (input.remaining() < BinaryProtocol.RESPONSE_SIZE) {
+            input.compact();
+            while (input.position() < BinaryProtocol.RESPONSE_SIZE) {
+                if (channel.read(input) < 0) {
+                    throw new EOFException("Connection is closed by server");
+                }
+            }
+            input.flip();
+        }
+        return new Response(input.getLong(), input.getInt(), input.getInt(),
+                            input.getLong(), input.getLong(), input.getLong());
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * response frame
+     */
+    public static final class Response {
+        private final long correlationId;
+        private final int operation;
+        private final int status;
+        private final long accountNumber;
+        private final long balance;
+        private final long transferId;
+
+        private Response(long correlationId, int operation, int status, long accountNumber, long balance,
+                         long transferId) {
+            this.correlationId = correlationId;
+            this.operation = operation;
+            this.status = status;
+            this.accountNumber = accountNumber;
+            this.balance = balance;
+            this.transferId = transferId;
+        }
+
+        public long getCorrelationId() {
+            return correlationId;
+        }
+
+        public int getOperation() {
+            return operation;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public long getAccountNumber() {
+            return accountNumber;
+        }
+
+        public long getBalance() {
+            return balance;
+        }
+
+        public long getTransferId() {
+            return transferId;
+        }
+    }
+}
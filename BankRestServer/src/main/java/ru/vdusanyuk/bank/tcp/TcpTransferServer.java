@@ -0,0 +1,396 @@
+package ru.vdusanyuk.bank.tcp;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.vdusanyuk.bank.dao.BankHolder;
+import ru.vdusanyuk.bank.dao.model.OperationResult;
+import ru.vdusanyuk.bank.metrics.Metrics;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static ru.vdusanyuk.bank.tcp.BinaryProtocol.*;
+
+/**
+ * NIO listener of the binary transfer protocol ({@link BinaryProtocol}) for high-frequency clients, next to
+ * the REST service and calling the same {@link BankHolder} operations.
+ * Accepted connections are spread over I/O threads, each runs a selector: the frames are decoded from and
+ * the responses are encoded to per connection direct buffers. The I/O thread never blocks on the bank:
+ * lock-free balance lookup and invalid requests are responded inline, transfers (they may wait for the locks
+ * or for a queue slot) and totals (they wait for the commits) run on the request threads, and their responses
+ * come back through the connection queue, in order of completion, matched by correlation id; so is the transfer
+ * completed later (ACK_ON_FSYNC or FLAG_AWAIT_PROCESSED) by its completing thread.
+ * While the responses cannot be written to the socket or the connection has too many requests in progress,
+ * the connection is not read, so slow client is throttled
+ */
+public class TcpTransferServer implements AutoCloseable {
+
+    private final static Logger logger = LoggerFactory.getLogger(TcpTransferServer.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int ACCEPT_BACKLOG = 1024;
+    /**
+     * requests of connection in progress on the request threads, their responses fit the output buffer
+     */
+    private static final int MAX_IN_FLIGHT = BUFFER_SIZE / BinaryProtocol.RESPONSE_SIZE;
+
+    private final BankHolder bankHolder;
+    private final ServerSocketChannel serverChannel;
+    private final Worker[] workers;
+    private final ExecutorService requestExecutor;
+    private final Thread acceptor;
+    private final AtomicInteger connections = new AtomicInteger();
+    private volatile boolean closed;
+
+    /**
+     * constructor, binds the port and starts the threads
+     * @param bankHolder bank to serve
+     * @param port port to listen, 0 for any free port
+     * @param ioThreads number of I/O threads
+     * @param requestThreads number of threads running the requests which may block
+     */
+    public TcpTransferServer(BankHolder bankHolder, int port, int ioThreads, int requestThreads) throws IOException {
+        this.bankHolder = bankHolder;
+        AtomicInteger requestThreadCount = new AtomicInteger();
+        requestExecutor = Executors.newFixedThreadPool(Math.max(requestThreads, 1), task -> {
+            Thread thread = new Thread(task, "bank-tcp-request-" + requestThreadCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port), ACCEPT_BACKLOG);
+        workers = new Worker[Math.max(ioThreads, 1)];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker("bank-tcp-io-" + i);
+        }
+        acceptor = new Thread(this::acceptConnections, "bank-tcp-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        Metrics.getInstance().gauge("bank_tcp_connections", "Open connections of binary TCP protocol",
+                                    connections::get);
+        logger.info("TCP transfer server is listening on port {} with {} I/O threads and {} request threads",
+                    getPort(), workers.length, Math.max(requestThreads, 1));
+    }
+
+    /**
+     * getter, port listened
+     */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * stop accepting, close all the connections and stop the threads
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            serverChannel.close();
+        } catch (IOException e) {
+            logger.warn("Unable to close TCP server channel", e);
+        }
+        for (Worker worker : workers) {
+            worker.selector.wakeup();
+        }
+        try {
+            acceptor.join(TimeUnit.SECONDS.toMillis(5));
+            for (Worker worker : workers) {
+                worker.thread.join(TimeUnit.SECONDS.toMillis(5));
+            }
+            requestExecutor.shutdown();
+            requestExecutor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void acceptConnections() {
+        int nextWorker = 0;
+        while (!closed) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                Worker worker = workers[nextWorker];
+                nextWorker = (nextWorker + 1) % workers.length;
+                worker.newChannels.add(channel);
+                worker.selector.wakeup();
+            } catch (ClosedChannelException e) {
+                break;
+            } catch (IOException e) {
+                logger.error("Unable to accept TCP connection", e);
+            }
+        }
+    }
+
+    /**
+     * I/O thread with its selector
+     */
+    private final class Worker implements Runnable {
+        private final Selector selector;
+        private final Thread thread;
+        private final Queue<SocketChannel> newChannels = new ConcurrentLinkedQueue<>();
+        /**
+         * connections having responses completed by other threads
+         */
+        private final Queue<Connection> completedConnections = new ConcurrentLinkedQueue<>();
+
+        private Worker(String name) throws IOException {
+            selector = Selector.open();
+            thread = new Thread(this, name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        @Override
+        public void run() {
+            while (!closed) {
+                try {
+                    selector.select();
+                } catch (IOException e) {
+                    logger.error("TCP selector failure", e);
+                    break;
+                }
+                for (SocketChannel channel; (channel = newChannels.poll()) != null; ) {
+                    register(channel);
+                }
+                for (Connection connection; (connection = completedConnections.poll()) != null; ) {
+                    connection.process();
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    Connection connection = (Connection) key.attachment();
+                    if (key.isValid() && key.isReadable()) {
+                        connection.read();
+                    } else if (key.isValid() && key.isWritable()) {
+                        connection.process();
+                    }
+                }
+            }
+            for (SelectionKey key : selector.keys()) {
+                ((Connection) key.attachment()).close();
+            }
+            for (SocketChannel channel; (channel = newChannels.poll()) != null; ) {
+                closeQuietly(channel);
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                logger.warn("Unable to close TCP selector", e);
+            }
+        }
+
+        private void register(SocketChannel channel) {
+            try {
+                SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                key.attach(new Connection(this, channel, key));
+                connections.incrementAndGet();
+            } catch (IOException e) {
+                logger.warn("Unable to register TCP connection", e);
+                closeQuietly(channel);
+            }
+        }
+    }
+
+    /**
+     * connection state: buffers of received requests and of responses to write
+     */
+    private final class Connection {
+        private final Worker worker;
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final ByteBuffer input = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final ByteBuffer output = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        /**
+         * responses completed by other threads, waiting to be put into output buffer
+         */
+        private final Queue<ByteBuffer> completedResponses = new ConcurrentLinkedQueue<>();
+        /**
+         * requests dispatched to the request threads or waiting for completion, not responded yet
+         */
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        private Connection(Worker worker, SocketChannel channel, SelectionKey key) {
+            this.worker = worker;
+            this.channel = channel;
+            this.key = key;
+        }
+
+        private void read() {
+            try {
+                if (channel.read(input) < 0) {
+                    close();
+                    return;
+                }
+            } catch (IOException e) {
+                logger.debug("TCP connection read failure", e);
+                close();
+                return;
+            }
+            process();
+        }
+
+        /**
+         * put completed responses and responses to the received requests into output buffer and write it,
+         * read the socket again only when all of them are written
+         */
+        private void process() {
+            if (!channel.isOpen()) {
+                return;
+            }
+            for (ByteBuffer response; output.remaining() >= RESPONSE_SIZE
+                    && (response = completedResponses.poll()) != null; ) {
+                output.put(response);
+            }
+            input.flip();
+            while (input.remaining() >= REQUEST_SIZE && output.remaining() >= RESPONSE_SIZE
+                    && inFlight.get() < MAX_IN_FLIGHT) {
+                handleRequest();
+            }
+            input.compact();
+            output.flip();
+            try {
+                channel.write(output);
+            } catch (IOException e) {
+                logger.debug("TCP connection write failure", e);
+                close();
+                return;
+            } finally {
+                output.compact();
+            }
+            boolean throttled = inFlight.get() >= MAX_IN_FLIGHT;
+            boolean pending = output.position() > 0 || !completedResponses.isEmpty()
+                    || input.position() >= REQUEST_SIZE && !throttled;
+            //the throttled connection is processed again when a request in progress is completed
+            key.interestOps(pending ? SelectionKey.OP_WRITE : throttled ? 0 : SelectionKey.OP_READ);
+        }
+
+        private void handleRequest() {
+            long correlationId = input.getLong();
+            int operation = input.getInt();
+            int flags = input.getInt();
+            long arg1 = input.getLong();
+            long arg2 = input.getLong();
+            long arg3 = input.getLong();
+            try {
+                switch (operation) {
+                    case OP_TRANSFER:
+                        transfer(correlationId, arg1, arg2, arg3, (flags & FLAG_AWAIT_PROCESSED) != 0);
+                        break;
+                    case OP_BALANCE:
+                        putResult(output, correlationId, operation, bankHolder.getAccount(arg1));
+                        break;
+                    case OP_TOTAL:
+                        dispatch(correlationId, operation, () -> {
+                            ByteBuffer response = ByteBuffer.allocate(RESPONSE_SIZE);
+                            putResponse(response, correlationId, operation, STATUS_SUCCESS,
+                                        NO_VALUE, bankHolder.getTotalBalance(), NO_VALUE);
+                            respond(response);
+                        });
+                        break;
+                    default:
+                        putResponse(output, correlationId, operation, STATUS_UNKNOWN_OPERATION,
+                                    NO_VALUE, NO_VALUE, NO_VALUE);
+                }
+            } catch (RuntimeException e) {
+                logger.error("TCP request of operation " + operation + " failed", e);
+                putResponse(output, correlationId, operation, STATUS_INTERNAL_ERROR, NO_VALUE, NO_VALUE, NO_VALUE);
+            }
+        }
+
+        private void transfer(long correlationId, long fromAcntNumber, long toAcntNumber, long amount,
+                              boolean awaitProcessed) {
+            //the same validation as of REST request
+            if (fromAcntNumber <= 0 || toAcntNumber <= 0 || amount <= 0 || fromAcntNumber == toAcntNumber) {
+                putResponse(output, correlationId, OP_TRANSFER, STATUS_INVALID_REQUEST, NO_VALUE, NO_VALUE, NO_VALUE);
+                return;
+            }
+            dispatch(correlationId, OP_TRANSFER, () ->
+                    bankHolder.submitTransfer(fromAcntNumber, toAcntNumber, amount, awaitProcessed)
+                            .whenComplete((result, failure) -> complete(correlationId, result, failure)));
+        }
+
+        /**
+         * run the request on the request threads, its task responds by {@link #respond(ByteBuffer)}
+         * or the failure is responded as internal error
+         */
+        private void dispatch(long correlationId, int operation, Runnable request) {
+            inFlight.incrementAndGet();
+            try {
+                requestExecutor.execute(() -> {
+                    try {
+                        request.run();
+                    } catch (RuntimeException e) {
+                        logger.error("TCP request of operation " + operation + " failed", e);
+                        ByteBuffer response = ByteBuffer.allocate(RESPONSE_SIZE);
+                        putResponse(response, correlationId, operation, STATUS_INTERNAL_ERROR,
+                                    NO_VALUE, NO_VALUE, NO_VALUE);
+                        respond(response);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                inFlight.decrementAndGet();
+                throw e;
+            }
+        }
+
+        /**
+         * respond the transfer, called on the completing thread
+         */
+        private void complete(long correlationId, OperationResult result, Throwable failure) {
+            ByteBuffer response = ByteBuffer.allocate(RESPONSE_SIZE);
+            if (failure == null) {
+                putResult(response, correlationId, OP_TRANSFER, result);
+            } else {
+                logger.error("TCP transfer request failed", failure);
+                putResponse(response, correlationId, OP_TRANSFER, STATUS_INTERNAL_ERROR, NO_VALUE, NO_VALUE, NO_VALUE);
+            }
+            respond(response);
+        }
+
+        /**
+         * queue the response of request completed off the I/O thread and wake the I/O thread up to write it
+         */
+        private void respond(ByteBuffer response) {
+            response.flip();
+            completedResponses.add(response);
+            inFlight.decrementAndGet();
+            worker.completedConnections.add(this);
+            worker.selector.wakeup();
+        }
+
+        private void close() {
+            if (channel.isOpen()) {
+                key.cancel();
+                closeQuietly(channel);
+                connections.decrementAndGet();
+            }
+        }
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.debug("Unable to close TCP connection", e);
+        }
+    }
+}
@@ -1,11 +1,12 @@
 package ru.vdusanyuk.bank.util;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -13,21 +14,19 @@ import java.util.function.Consumer;
 
 /**
  * This class implements asynchronous task execution with specified delay for batch collecting.
+ * In ADAPTIVE mode batch is flushed by size threshold or latency deadline and its size is tuned by processing time,
+ * see {@link BatchingMode}
  *
  * @param <T> Type of items to be processed
  */
 public class AsyncBatchExecutor<T> {
 
-    /**
-     * Items batch collecting size
-     */
-    private static final int BATCH_PROCESSING_SIZE = 100;
+    private final static Logger logger = LoggerFactory.getLogger(AsyncBatchExecutor.class);
 
     /**
-     * Items batch collecting size
+     * weight of the latest batch in the moving average of item processing time
      */
-    private static final int BATCH_PROCESSING_INTERVAL = 200;
-
+    private static final double ITEM_TIME_SMOOTHING = 0.2;
 
     /**
      * Inner Scheduled Executor which implements separate thread execution and delay logic
@@ -42,50 +41,147 @@ public class AsyncBatchExecutor<T> {
     /**
      * Queue implementation of items to process
      */
-    private final BlockingQueue<T> queue = new LinkedBlockingDeque<>();
+    private final BatchQueue<T> queue;
 
     /**
      * Task processing behavior provided
      */
     private final Consumer<? super Collection<T>> task;
 
+    private final BatchSettings settings;
+
     /**
      * Task processing delay (Tasks will start processing after this delay will expire)
      */
     private final int taskProcessingInterval;
 
     /**
-     * Constructor
+     * ADAPTIVE mode: current limit of batch size
+     */
+    private int batchLimit;
+
+    /**
+     * ADAPTIVE mode: moving average of processing time per item, ns
+     */
+    private double itemProcessingNanos;
+
+    /**
+     * Constructor with default settings (FIXED mode)
      *
      * @param task                Consumer which provides collection of items processing logic
      */
     public AsyncBatchExecutor(Consumer<? super Collection<T>> task) {
+        this(task, new BatchSettings());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param task                Consumer which provides collection of items processing logic
+     * @param settings            batch collecting settings
+     */
+    public AsyncBatchExecutor(Consumer<? super Collection<T>> task, BatchSettings settings) {
         this.task = task;
-        this.taskProcessingInterval = BATCH_PROCESSING_INTERVAL;
+        this.settings = settings;
+        this.queue = BatchQueue.create(settings);
+        this.taskProcessingInterval = settings.getMaxLatencyMs();
+        this.batchLimit = settings.getBatchSize();
+        if (settings.getMode() == BatchingMode.ADAPTIVE) {
+            executor.execute(this::processAdaptive);
+        }
     }
 
     /**
      * Add item for async processing
      *
      * @param item item to process
+     * @return false if item was rejected by the bounded queue
+     */
+    public boolean addProcessingItem(T item) {
+        long slot = claimSlot();
+        if (slot < 0) {
+            return false;
+        }
+        addProcessingItem(slot, item);
+        return true;
+    }
+
+    /**
+     * Claim queue slot for item to be added later, applying the overflow policy of bounded queue.
+     * The slot must be filled by {@link #addProcessingItem(long, Object)}
+     *
+     * @return slot or -1 if the queue is full and the item should be rejected
+     */
+    public long claimSlot() {
+        return queue.claim();
+    }
+
+    /**
+     * Add item for async processing into the claimed slot
+     *
+     * @param slot slot returned by {@link #claimSlot()}
+     * @param item item to process or null to release the slot
+     */
+    public void addProcessingItem(long slot, T item) {
+        queue.publish(slot, item);
+
+        if (settings.getMode() == BatchingMode.FIXED && isTaskProcessing.compareAndSet(false, true)) {
+            submitTask();
+        }
+    }
+
+    /**
+     * Claim consecutive queue slots for several items to be added at once by {@link #addProcessingItems(long, List)}
+     *
+     * @param count number of slots
+     * @return first slot or -1 if the queue has no room for all the items and they should be rejected
      */
-    public void addProcessingItem(T item) {
-        queue.add(item);
+    public long claimSlots(int count) {
+        return queue.claim(count);
+    }
 
-        if (isTaskProcessing.compareAndSet(false, true)) {
+    /**
+     * Add items for async processing into the slots claimed by {@link #claimSlots(int)}, in one hand-off
+     *
+     * @param firstSlot first slot returned by {@link #claimSlots(int)}
+     * @param items items to process, null item releases its slot
+     */
+    public void addProcessingItems(long firstSlot, List<T> items) {
+        for (int i = 0; i < items.size(); i++) {
+            queue.publish(firstSlot + i, items.get(i));
+        }
+
+        if (settings.getMode() == BatchingMode.FIXED && isTaskProcessing.compareAndSet(false, true)) {
             submitTask();
         }
     }
 
+    /**
+     * getter, number of items waiting for processing
+     */
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    /**
+     * Stops the inner executor, the items still in queue are not processed
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
      /**
      * updateState method is used to control inner state after async jobs was done
      */
     private void updateState() {
-        if (queue.isEmpty()) {
+        if (queue.size() == 0) {
             isTaskProcessing.set(false);
-        } else {
-            submitTask();
+            //an item could be added after the check, while the flag was still set
+            if (queue.size() == 0 || !isTaskProcessing.compareAndSet(false, true)) {
+                return;
+            }
         }
+        submitTask();
     }
 
     /**
@@ -100,13 +196,68 @@ public class AsyncBatchExecutor<T> {
      */
     private void processTask() {
         try {
-            List<T> batch = new ArrayList<>(BATCH_PROCESSING_SIZE);
-            while (!queue.isEmpty() && batch.size() < BATCH_PROCESSING_SIZE) {
-                batch.add(queue.poll());
-            }
+            List<T> batch = new ArrayList<>(settings.getBatchSize());
+            queue.drainTo(batch, settings.getBatchSize());
             task.accept(batch);
         } finally {
             updateState();
         }
     }
+
+    /**
+     * ADAPTIVE mode processing loop, occupies the executor thread till shutdown.
+     * Waits for the first item, then collects the batch till size threshold or latency deadline of the oldest item,
+     * drains everything available up to the batch limit and processes the batch
+     */
+    private void processAdaptive() {
+        long maxLatencyNanos = TimeUnit.MILLISECONDS.toNanos(settings.getMaxLatencyMs());
+        long lastDrainTime = System.nanoTime();
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                List<T> batch = new ArrayList<>(Math.min(batchLimit, queue.size() + 1));
+                long deadline;
+                if (queue.awaitItems(0, TimeUnit.NANOSECONDS)) {
+                    //the item has been waiting at most since the previous drain
+                    deadline = lastDrainTime + maxLatencyNanos;
+                } else {
+                    queue.awaitItems(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+                    deadline = System.nanoTime() + maxLatencyNanos;
+                }
+                int drained = queue.drainTo(batch, batchLimit);
+                while (drained < settings.getBatchSize()) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0 || !queue.awaitItems(remaining, TimeUnit.NANOSECONDS)) {
+                        break;
+                    }
+                    drained += queue.drainTo(batch, batchLimit - drained);
+                }
+                if (batch.isEmpty()) {
+                    continue;
+                }
+                lastDrainTime = System.nanoTime();
+                try {
+                    task.accept(batch);
+                } catch (RuntimeException e) {
+                    logger.error("Batch processing failed, size=" + batch.size(), e);
+                }
+                adjustBatchLimit(batch.size(), System.nanoTime() - lastDrainTime);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * tune batch limit so that the batch processing time is close to the target one
+     *
+     * @param batchSize size of processed batch
+     * @param processingNanos time of batch processing
+     */
+    private void adjustBatchLimit(int batchSize, long processingNanos) {
+        double itemNanos = (double) processingNanos / batchSize;
+        itemProcessingNanos = itemProcessingNanos == 0 ? itemNanos :
+                itemProcessingNanos * (1 - ITEM_TIME_SMOOTHING) + itemNanos * ITEM_TIME_SMOOTHING;
+        double limit = TimeUnit.MILLISECONDS.toNanos(settings.getTargetApplyMs()) / Math.max(itemProcessingNanos, 1);
+        batchLimit = (int) Math.max(settings.getBatchSize(), Math.min(settings.getMaxBatchSize(), limit));
+    }
 }
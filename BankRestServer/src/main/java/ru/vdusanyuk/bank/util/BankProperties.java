@@ -0,0 +1,69 @@
+package ru.vdusanyuk.bank.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Properties;
+
+/**
+ * Application settings loaded once from application.properties on class path.
+ * Any setting can be overridden by JVM system property with the same name (e.g. -Dbank.lockingMode=ACCOUNT)
+ */
+public final class BankProperties {
+
+    private static final String PROPERTIES_FILE = "application.properties";
+
+    private static final Properties properties = load();
+
+    private BankProperties() {
+    }
+
+    /**
+     * getter for all loaded settings (system property overrides are not included)
+     * @return properties loaded from application.properties
+     */
+    public static Properties getProperties() {
+        return properties;
+    }
+
+    /**
+     * read setting value
+     * @param key setting name
+     * @param defaultValue value used when setting is absent
+     * @return trimmed setting value
+     */
+    public static String getProperty(String key, String defaultValue) {
+        String value = System.getProperty(key, properties.getProperty(key, defaultValue));
+        return value != null ? value.trim() : null;
+    }
+
+    public static int getInt(String key, int defaultValue) {
+        return Integer.parseInt(getProperty(key, String.valueOf(defaultValue)));
+    }
+
+    public static long getLong(String key, long defaultValue) {
+        return Long.parseLong(getProperty(key, String.valueOf(defaultValue)));
+    }
+
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        return Boolean.parseBoolean(getProperty(key, String.valueOf(defaultValue)));
+    }
+
+    public static <E extends Enum<E>> E getEnum(String key, Class<E> enumClass, E defaultValue) {
+        return Enum.valueOf(enumClass, getProperty(key, defaultValue.name()).toUpperCase());
+    }
+
+    private static Properties load() {
+        Properties properties = new Properties();
+        try (InputStream input = BankProperties.class.getClassLoader().getResourceAsStream(PROPERTIES_FILE)) {
+            if (input == null) {
+                System.out.println("Unable to find " + PROPERTIES_FILE);
+            } else {
+                properties.load(input);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to load " + PROPERTIES_FILE, e);
+        }
+        return properties;
+    }
+}
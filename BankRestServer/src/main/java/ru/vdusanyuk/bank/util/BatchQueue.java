@@ -0,0 +1,84 @@
+package ru.vdusanyuk.bank.util;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Multi-producer, single consumer queue of {@link AsyncBatchExecutor}.
+ * Producer claims a slot first and publishes the item into it later, so the queue capacity can be checked
+ * before the item is prepared. Every claimed slot must be published, possibly with null item
+ *
+ * @param <T> Type of items
+ */
+public interface BatchQueue<T> {
+
+    /**
+     * claim slot for the next item, applying the overflow policy when the queue is full
+     * @return slot sequence or -1 if rejected
+     */
+    default long claim() {
+        return claim(1);
+    }
+
+    /**
+     * claim consecutive slots for several items at once, applying the overflow policy when there is no room for all
+     * @param count number of slots
+     * @return sequence of the first slot or -1 if rejected
+     */
+    long claim(int count);
+
+    /**
+     * publish item into the claimed slot
+     * @param sequence slot sequence returned by {@link #claim()}
+     * @param item item or null if the slot is not used
+     */
+    void publish(long sequence, T item);
+
+    /**
+     * claim and publish item
+     * @param item item to add
+     * @return false if item was rejected
+     */
+    default boolean offer(T item) {
+        long sequence = claim();
+        if (sequence < 0) {
+            return false;
+        }
+        publish(sequence, item);
+        return true;
+    }
+
+    /**
+     * move published items to batch, it is called by the consumer thread only
+     * @param batch collection to add items to
+     * @param maxItems max number of slots to drain
+     * @return number of slots drained (including the ones published with null item)
+     */
+    int drainTo(Collection<? super T> batch, int maxItems);
+
+    /**
+     * wait for published item, it is called by the consumer thread only
+     * @param timeout max wait time
+     * @param unit time unit
+     * @return true if an item is available
+     * @throws InterruptedException if consumer thread is interrupted
+     */
+    boolean awaitItems(long timeout, TimeUnit unit) throws InterruptedException;
+
+    /**
+     * number of claimed slots, not yet drained
+     */
+    int size();
+
+    /**
+     * create queue by settings
+     * @param settings batch settings
+     * @param <T> Type of items
+     * @return new queue
+     */
+    static <T> BatchQueue<T> create(BatchSettings settings) {
+        return settings.getQueueType() == QueueType.RING ?
+                new RingBatchQueue<>(settings.getQueueCapacity(), settings.getOverflowPolicy()) :
+                new LinkedBatchQueue<>();
+    }
+}
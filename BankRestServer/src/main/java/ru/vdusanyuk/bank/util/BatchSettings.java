@@ -0,0 +1,154 @@
+package ru.vdusanyuk.bank.util;
+
+/**
+ * Settings of {@link AsyncBatchExecutor}, read from application settings with the given name prefix:
+ * [prefix].mode, [prefix].size, [prefix].maxLatencyMs, [prefix].maxSize, [prefix].targetApplyMs,
+ * [prefix].queue, [prefix].queueCapacity, [prefix].overflowPolicy
+ */
+public class BatchSettings {
+
+    /**
+     * default batch collecting size
+     */
+    private static final int DEFAULT_BATCH_SIZE = 100;
+
+    /**
+     * default batch collecting interval, ms
+     */
+    private static final int DEFAULT_MAX_LATENCY_MS = 200;
+
+    private static final int DEFAULT_MAX_BATCH_SIZE = 10000;
+    private static final int DEFAULT_TARGET_APPLY_MS = 20;
+    private static final int DEFAULT_QUEUE_CAPACITY = 65536;
+
+    private BatchingMode mode = BatchingMode.FIXED;
+
+    /**
+     * FIXED mode: max size of batch; ADAPTIVE mode: queue size which triggers batch flush
+     */
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    /**
+     * FIXED mode: delay of batch processing; ADAPTIVE mode: max time the oldest item waits for flush
+     */
+    private int maxLatencyMs = DEFAULT_MAX_LATENCY_MS;
+
+    /**
+     * ADAPTIVE mode: upper bound of batch size
+     */
+    private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+
+    /**
+     * ADAPTIVE mode: batch processing time the batch size is tuned for
+     */
+    private int targetApplyMs = DEFAULT_TARGET_APPLY_MS;
+
+    private QueueType queueType = QueueType.LINKED;
+
+    /**
+     * RING queue: number of slots
+     */
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+
+    /**
+     * RING queue: behaviour when it is full
+     */
+    private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+
+    /**
+     * read settings with the name prefix, absent ones keep default values
+     * @param prefix settings name prefix, e.g. "bank.batch"
+     * @return settings
+     */
+    public static BatchSettings fromProperties(String prefix) {
+        BatchSettings settings = new BatchSettings();
+        settings.setMode(BankProperties.getEnum(prefix + ".mode", BatchingMode.class, settings.getMode()));
+        settings.setBatchSize(BankProperties.getInt(prefix + ".size", settings.getBatchSize()));
+        settings.setMaxLatencyMs(BankProperties.getInt(prefix + ".maxLatencyMs", settings.getMaxLatencyMs()));
+        settings.setMaxBatchSize(BankProperties.getInt(prefix + ".maxSize", settings.getMaxBatchSize()));
+        settings.setTargetApplyMs(BankProperties.getInt(prefix + ".targetApplyMs", settings.getTargetApplyMs()));
+        settings.setQueueType(BankProperties.getEnum(prefix + ".queue", QueueType.class, settings.getQueueType()));
+        settings.setQueueCapacity(BankProperties.getInt(prefix + ".queueCapacity", settings.getQueueCapacity()));
+        settings.setOverflowPolicy(BankProperties.getEnum(prefix + ".overflowPolicy", OverflowPolicy.class,
+                                                          settings.getOverflowPolicy()));
+        return settings;
+    }
+
+    public BatchingMode getMode() {
+        return mode;
+    }
+
+    public void setMode(BatchingMode mode) {
+        this.mode = mode;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public int getMaxLatencyMs() {
+        return maxLatencyMs;
+    }
+
+    public void setMaxLatencyMs(int maxLatencyMs) {
+        this.maxLatencyMs = maxLatencyMs;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public int getTargetApplyMs() {
+        return targetApplyMs;
+    }
+
+    public void setTargetApplyMs(int targetApplyMs) {
+        this.targetApplyMs = targetApplyMs;
+    }
+
+    public QueueType getQueueType() {
+        return queueType;
+    }
+
+    public void setQueueType(QueueType queueType) {
+        this.queueType = queueType;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchSettings{" +
+                "mode=" + mode +
+                ", batchSize=" + batchSize +
+                ", maxLatencyMs=" + maxLatencyMs +
+                ", maxBatchSize=" + maxBatchSize +
+                ", targetApplyMs=" + targetApplyMs +
+                ", queueType=" + queueType +
+                ", queueCapacity=" + queueCapacity +
+                ", overflowPolicy=" + overflowPolicy +
+                '}';
+    }
+}
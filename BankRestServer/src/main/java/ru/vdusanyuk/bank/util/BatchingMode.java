@@ -0,0 +1,16 @@
+package ru.vdusanyuk.bank.util;
+
+/**
+ * enum for batch collecting strategies of {@link AsyncBatchExecutor}
+ */
+public enum BatchingMode {
+    /**
+     * fixed size batch is collected once per fixed interval
+     */
+    FIXED,
+    /**
+     * batch is flushed as soon as the size threshold or the latency deadline of the oldest item is reached,
+     * everything available is drained up to the limit sized from observed processing time
+     */
+    ADAPTIVE
+}
@@ -0,0 +1,99 @@
+package ru.vdusanyuk.bank.util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Byte buffers of fixed size for the request codecs. A platform thread keeps its own buffer in thread local.
+ * A virtual thread runs one request only, so its thread local buffer would be allocated for every request;
+ * virtual threads borrow the buffers from a small lock-free array of free ones instead, a new buffer is allocated
+ * only when all of them are in use. The application is built for Java 8, so Thread.isVirtual() is looked up
+ * by reflection
+ */
+public class BufferPool {
+
+    private static final MethodHandle IS_VIRTUAL = findIsVirtual();
+
+    private final int bufferSize;
+    private final ThreadLocal<byte[]> threadBuffers;
+    private final AtomicReferenceArray<byte[]> freeBuffers;
+
+    /**
+     * constructor
+     * @param bufferSize size of every buffer
+     * @param sharedBuffers number of free buffers kept for virtual threads
+     */
+    public BufferPool(int bufferSize, int sharedBuffers) {
+        this.bufferSize = bufferSize;
+        threadBuffers = ThreadLocal.withInitial(() -> new byte[bufferSize]);
+        freeBuffers = new AtomicReferenceArray<>(Math.max(sharedBuffers, 1));
+    }
+
+    /**
+     * take buffer, it must be returned by {@link #release(byte[])} from the same thread
+     * @return buffer of thread local or shared one
+     */
+    public byte[] acquire() {
+        if (!isVirtual(Thread.currentThread())) {
+            return threadBuffers.get();
+        }
+        int start = probe();
+        for (int i = 0; i < freeBuffers.length(); i++) {
+            int slot = (start + i) % freeBuffers.length();
+            byte[] buffer = freeBuffers.get(slot);
+            if (buffer != null && freeBuffers.compareAndSet(slot, buffer, null)) {
+                return buffer;
+            }
+        }
+        return new byte[bufferSize];
+    }
+
+    /**
+     * return buffer taken by {@link #acquire()}, the buffer is dropped if the shared array is full
+     */
+    public void release(byte[] buffer) {
+        if (!isVirtual(Thread.currentThread())) {
+            return;
+        }
+        int start = probe();
+        for (int i = 0; i < freeBuffers.length(); i++) {
+            int slot = (start + i) % freeBuffers.length();
+            if (freeBuffers.get(slot) == null && freeBuffers.compareAndSet(slot, null, buffer)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * check whether the thread is virtual one
+     * @return false for platform thread or on Java without virtual threads
+     */
+    public static boolean isVirtual(Thread thread) {
+        if (IS_VIRTUAL == null) {
+            return false;
+        }
+        try {
+            return (boolean) IS_VIRTUAL.invokeExact(thread);
+        } catch (Throwable e) {
+            return false;
+        }
+    }
+
+    /**
+     * the first slot to look at, spreads the threads over the array
+     */
+    private int probe() {
+        return (int) (Thread.currentThread().getId() % freeBuffers.length());
+    }
+
+    private static MethodHandle findIsVirtual() {
+        try {
+            return MethodHandles.publicLookup().findVirtual(Thread.class, "isVirtual",
+                                                            MethodType.methodType(boolean.class));
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package ru.vdusanyuk.bank.util;
+
+import java.util.Collection;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unbounded {@link BatchQueue} on top of {@link LinkedBlockingQueue}, claim never fails
+ *
+ * @param <T> Type of items
+ */
+public class LinkedBatchQueue<T> implements BatchQueue<T> {
+
+    private final BlockingQueue<T> queue = new LinkedBlockingQueue<>();
+
+    /**
+     * item taken from the queue by {@link #awaitItems(long, TimeUnit)}, it is drained first
+     */
+    private T head;
+
+    @Override
+    public long claim(int count) {
+        return 0;
+    }
+
+    @Override
+    public void publish(long sequence, T item) {
+        if (item != null) {
+            queue.add(item);
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<? super T> batch, int maxItems) {
+        if (maxItems <= 0) {
+            return 0;
+        }
+        int drained = 0;
+        if (head != null) {
+            batch.add(head);
+            head = null;
+            drained++;
+        }
+        return drained + queue.drainTo(batch, maxItems - drained);
+    }
+
+    @Override
+    public boolean awaitItems(long timeout, TimeUnit unit) throws InterruptedException {
+        if (head == null) {
+            head = queue.poll(timeout, unit);
+        }
+        return head != null;
+    }
+
+    @Override
+    public int size() {
+        return queue.size() + (head != null ? 1 : 0);
+    }
+}
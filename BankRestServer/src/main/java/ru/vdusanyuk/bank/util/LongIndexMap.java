@@ -0,0 +1,143 @@
+package ru.vdusanyuk.bank.util;
+
+/**
+ * Open addressing hash map of primitive long keys to non-negative int values with linear probing.
+ * Two flat arrays hold all the entries, so there is no boxing and no node per entry, and GC does not trace them.
+ * Updates are not thread safe; concurrent reads are safe while the map is not modified
+ */
+public class LongIndexMap {
+
+    /**
+     * value returned for absent key
+     */
+    public static final int NO_VALUE = -1;
+
+    private static final double LOAD_FACTOR = 0.75;
+    private static final int MIN_CAPACITY = 16;
+
+    /**
+     * consumer of map entries
+     */
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(long key, int value);
+    }
+
+    private long[] keys;
+    /**
+     * value + 1, zero marks empty slot
+     */
+    private int[] values;
+    private int size;
+    private int threshold;
+
+    /**
+     * constructor
+     * @param expectedSize number of entries the map is sized for without rehash
+     */
+    public LongIndexMap(int expectedSize) {
+        long capacity = Math.max(MIN_CAPACITY, (long) (expectedSize / LOAD_FACTOR) + 1);
+        allocate((int) Math.min(Integer.MAX_VALUE - 8, capacity));
+    }
+
+    /**
+     * get value by key
+     * @param key key
+     * @return value or {@link #NO_VALUE} if key is absent
+     */
+    public int get(long key) {
+        long[] keys = this.keys;
+        int[] values = this.values;
+        for (int slot = slotOf(key, keys.length); ; slot = nextSlot(slot, keys.length)) {
+            int value = values[slot];
+            if (value == 0) {
+                return NO_VALUE;
+            }
+            if (keys[slot] == key) {
+                return value - 1;
+            }
+        }
+    }
+
+    /**
+     * put value for key
+     * @param key key
+     * @param value non-negative value
+     * @return previous value or {@link #NO_VALUE} if key was absent
+     */
+    public int put(long key, int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative value: " + value);
+        }
+        if (size >= threshold) {
+            rehash(keys.length * 2L);
+        }
+        int previous = insert(keys, values, key, value);
+        if (previous == NO_VALUE) {
+            size++;
+        }
+        return previous;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * pass every entry to consumer, in table order
+     */
+    public void forEach(EntryConsumer consumer) {
+        long[] keys = this.keys;
+        int[] values = this.values;
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (values[slot] != 0) {
+                consumer.accept(keys[slot], values[slot] - 1);
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private void rehash(long newCapacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate((int) Math.min(Integer.MAX_VALUE - 8, newCapacity));
+        for (int slot = 0; slot < oldKeys.length; slot++) {
+            if (oldValues[slot] != 0) {
+                insert(keys, values, oldKeys[slot], oldValues[slot] - 1);
+            }
+        }
+    }
+
+    private static int insert(long[] keys, int[] values, long key, int value) {
+        for (int slot = slotOf(key, keys.length); ; slot = nextSlot(slot, keys.length)) {
+            if (values[slot] == 0) {
+                keys[slot] = key;
+                values[slot] = value + 1;
+                return NO_VALUE;
+            }
+            if (keys[slot] == key) {
+                int previous = values[slot] - 1;
+                values[slot] = value + 1;
+                return previous;
+            }
+        }
+    }
+
+    /**
+     * slot of key: high bits of multiplicative hash mapped onto the table range without modulo,
+     * so that the table size need not be power of 2
+     */
+    private static int slotOf(long key, int capacity) {
+        long hash = (key * 0x9E3779B97F4A7C15L) >>> 32;
+        return (int) ((hash * capacity) >>> 32);
+    }
+
+    private static int nextSlot(int slot, int capacity) {
+        return slot + 1 < capacity ? slot + 1 : 0;
+    }
+}
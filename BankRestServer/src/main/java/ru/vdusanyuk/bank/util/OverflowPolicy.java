@@ -0,0 +1,19 @@
+package ru.vdusanyuk.bank.util;
+
+/**
+ * enum for behaviour of bounded {@link BatchQueue} when it is full
+ */
+public enum OverflowPolicy {
+    /**
+     * producer is parked till space is available
+     */
+    BLOCK,
+    /**
+     * producer busy-waits (yielding) till space is available
+     */
+    SPIN,
+    /**
+     * item is rejected at once
+     */
+    REJECT
+}
@@ -0,0 +1,15 @@
+package ru.vdusanyuk.bank.util;
+
+/**
+ * enum for {@link BatchQueue} implementations
+ */
+public enum QueueType {
+    /**
+     * unbounded linked queue, {@link LinkedBatchQueue}
+     */
+    LINKED,
+    /**
+     * bounded preallocated ring buffer, {@link RingBatchQueue}
+     */
+    RING
+}
@@ -0,0 +1,51 @@
+package ru.vdusanyuk.bank.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free limiter of diagnostic messages: up to the given number of permits per second,
+ * the rest are counted as suppressed, so that the next permitted message can report them
+ */
+public class RateLimiter {
+
+    private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final int permitsPerSecond;
+    private final AtomicLong windowStart = new AtomicLong(System.nanoTime());
+    private final AtomicInteger permits = new AtomicInteger();
+    private final AtomicLong suppressed = new AtomicLong();
+
+    /**
+     * constructor
+     * @param permitsPerSecond number of permits per second
+     */
+    public RateLimiter(int permitsPerSecond) {
+        this.permitsPerSecond = permitsPerSecond;
+    }
+
+    /**
+     * take permit
+     * @return true if the message may be written, false if it is suppressed
+     */
+    public boolean tryAcquire() {
+        long now = System.nanoTime();
+        long start = windowStart.get();
+        if (now - start >= WINDOW_NANOS && windowStart.compareAndSet(start, now)) {
+            permits.set(0);
+        }
+        if (permits.incrementAndGet() <= permitsPerSecond) {
+            return true;
+        }
+        suppressed.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * number of messages suppressed since the previous call
+     */
+    public long takeSuppressed() {
+        return suppressed.getAndSet(0);
+    }
+}
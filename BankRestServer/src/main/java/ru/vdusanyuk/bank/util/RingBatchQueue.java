@@ -0,0 +1,161 @@
+package ru.vdusanyuk.bank.util;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded preallocated ring buffer {@link BatchQueue} with Disruptor-style sequencing:
+ * producers claim sequences by CAS on the claim cursor, mark the slot published with the sequence number,
+ * the single consumer reads slots in sequence order while they are published and then moves its cursor,
+ * freeing the slots for producers. No node is allocated per item
+ *
+ * @param <T> Type of items
+ */
+public class RingBatchQueue<T> implements BatchQueue<T> {
+
+    /**
+     * producer park time between attempts in BLOCK policy, ns
+     */
+    private static final long PRODUCER_PARK_NANOS = 50_000L;
+
+    private final int capacity;
+    private final int mask;
+    private final OverflowPolicy overflowPolicy;
+
+    private final AtomicReferenceArray<T> slots;
+
+    /**
+     * sequence published into the slot, slot is readable for sequence s when it holds s
+     */
+    private final AtomicLongArray published;
+
+    /**
+     * next sequence to claim
+     */
+    private final AtomicLong claimCursor = new AtomicLong();
+
+    /**
+     * next sequence to consume, written by consumer only
+     */
+    private volatile long consumeCursor;
+
+    /**
+     * consumer thread parked in {@link #awaitItems(long, TimeUnit)}, null when it is running
+     */
+    private volatile Thread waitingConsumer;
+
+    /**
+     * constructor
+     * @param capacity number of slots, rounded up to power of 2
+     * @param overflowPolicy behaviour of claim when the buffer is full
+     */
+    public RingBatchQueue(int capacity, OverflowPolicy overflowPolicy) {
+        this.capacity = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        this.mask = this.capacity - 1;
+        this.overflowPolicy = overflowPolicy;
+        this.slots = new AtomicReferenceArray<>(this.capacity);
+        this.published = new AtomicLongArray(this.capacity);
+        for (int i = 0; i < this.capacity; i++) {
+            published.set(i, -1L);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * More slots than the buffer capacity are never available, such a claim is rejected under any policy
+     */
+    @Override
+    public long claim(int count) {
+        if (count > capacity) {
+            return -1;
+        }
+        while (true) {
+            long sequence = claimCursor.get();
+            if (sequence + count - consumeCursor > capacity) {
+                if (overflowPolicy == OverflowPolicy.REJECT || Thread.currentThread().isInterrupted()) {
+                    return -1;
+                }
+                if (overflowPolicy == OverflowPolicy.BLOCK) {
+                    LockSupport.parkNanos(this, PRODUCER_PARK_NANOS);
+                } else {
+                    Thread.yield();
+                }
+            } else if (claimCursor.compareAndSet(sequence, sequence + count)) {
+                return sequence;
+            }
+        }
+    }
+
+    @Override
+    public void publish(long sequence, T item) {
+        int index = (int) sequence & mask;
+        slots.lazySet(index, item);
+        published.set(index, sequence);
+        Thread consumer = waitingConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<? super T> batch, int maxItems) {
+        long sequence = consumeCursor;
+        int drained = 0;
+        while (drained < maxItems) {
+            int index = (int) sequence & mask;
+            if (published.get(index) != sequence) {
+                break;
+            }
+            T item = slots.get(index);
+            slots.lazySet(index, null);
+            if (item != null) {
+                batch.add(item);
+            }
+            sequence++;
+            drained++;
+        }
+        consumeCursor = sequence;
+        return drained;
+    }
+
+    @Override
+    public boolean awaitItems(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!isPublished(consumeCursor)) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            waitingConsumer = Thread.currentThread();
+            //re-check after the consumer is visible to producers, so that wake up is not missed
+            if (!isPublished(consumeCursor)) {
+                LockSupport.parkNanos(this, remaining);
+            }
+            waitingConsumer = null;
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int size() {
+        return (int) (claimCursor.get() - consumeCursor);
+    }
+
+    /**
+     * getter, number of slots
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    private boolean isPublished(long sequence) {
+        return published.get((int) sequence & mask) == sequence;
+    }
+}
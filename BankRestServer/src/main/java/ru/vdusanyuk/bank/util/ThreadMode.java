@@ -0,0 +1,15 @@
+package ru.vdusanyuk.bank.util;
+
+/**
+ * enum for threads handling the http requests
+ */
+public enum ThreadMode {
+    /**
+     * bounded pool of platform threads
+     */
+    PLATFORM,
+    /**
+     * new virtual thread per task, Java 21 or later
+     */
+    VIRTUAL
+}
@@ -0,0 +1,148 @@
+package ru.vdusanyuk.bank;
+
+import jnr.unixsocket.UnixSocketAddress;
+import jnr.unixsocket.UnixSocketChannel;
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpURI;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.http.MetaData;
+import org.eclipse.jetty.http2.api.Session;
+import org.eclipse.jetty.http2.api.Stream;
+import org.eclipse.jetty.http2.client.HTTP2Client;
+import org.eclipse.jetty.http2.frames.DataFrame;
+import org.eclipse.jetty.http2.frames.HeadersFrame;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.FuturePromise;
+import org.eclipse.jetty.util.Promise;
+import org.glassfish.jersey.jetty.JettyHttpContainer;
+import org.glassfish.jersey.server.ContainerFactory;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import ru.vdusanyuk.bank.dao.BankHolder;
+import ru.vdusanyuk.bank.rest.EntryPoint;
+import ru.vdusanyuk.bank.rest.ServiceResponseWriter;
+import ru.vdusanyuk.bank.rest.TransferRequestReader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * test cases for h2c and Unix domain socket connectors
+ */
+public class ConnectorsTest {
+
+    private Server server;
+    private ServerConnector h2cConnector;
+    private File socketFile;
+
+    @Before
+    public void setUp() throws Exception {
+        BankHolder.getInstance().initBankAccounts(10);
+        socketFile = new File(Files.createTempDirectory("bank").toFile(), "bank.sock");
+        server = new Server();
+        h2cConnector = Connectors.h2c(server, 0);
+        server.addConnector(h2cConnector);
+        server.addConnector(Connectors.unixSocket(server, socketFile.getPath()));
+        server.setHandler(ContainerFactory.createContainer(JettyHttpContainer.class,
+                new ResourceConfig(EntryPoint.class, ServiceResponseWriter.class, TransferRequestReader.class)));
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+        assertFalse(socketFile.exists());
+        socketFile.getParentFile().delete();
+    }
+
+    @Test
+    public void testH2cStreams() throws Exception {
+        HTTP2Client client = new HTTP2Client();
+        client.start();
+        try {
+            FuturePromise<Session> session = new FuturePromise<>();
+            client.connect(new InetSocketAddress("localhost", h2cConnector.getLocalPort()),
+                           new Session.Listener.Adapter(), session);
+            //both requests are multiplexed over one connection
+            CompletableFuture<String> transfer = get(session.get(5, TimeUnit.SECONDS),
+                    "/bankService/transfer?fromAccountNumber=1&toAccountNumber=2&amount=30&await=processed");
+            CompletableFuture<String> account = get(session.get(), "/bankService/account/3");
+            assertEquals("200 {\"responseStatus\":\"SUCCESS\",\"errorMessage\":null,"
+                         + "\"accountNumber\":3,\"balance\":100}", account.get(5, TimeUnit.SECONDS));
+            String transferResponse = transfer.get(5, TimeUnit.SECONDS);
+            assertTrue(transferResponse, transferResponse.startsWith("200 {\"responseStatus\":\"SUCCESS\""));
+            assertTrue(transferResponse, transferResponse.contains("\"accountNumber\":1,\"balance\":70"));
+        } finally {
+            client.stop();
+        }
+    }
+
+    @Test
+    public void testUnixSocket() throws Exception {
+        assertTrue(socketFile.exists());
+        try (UnixSocketChannel channel = UnixSocketChannel.open(new UnixSocketAddress(socketFile))) {
+            OutputStream output = Channels.newOutputStream(channel);
+            output.write(("GET /bankService/total HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n")
+                                 .getBytes(StandardCharsets.US_ASCII));
+            output.flush();
+            InputStream input = Channels.newInputStream(channel);
+            ByteArrayOutputStream response = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            for (int read; (read = input.read(buffer)) > 0; ) {
+                response.write(buffer, 0, read);
+            }
+            String text = new String(response.toByteArray(), StandardCharsets.US_ASCII);
+            assertTrue(text, text.startsWith("HTTP/1.1 200 "));
+            assertTrue(text, text.endsWith("\r\n\r\n1000"));
+        }
+    }
+
+    /**
+     * GET request on new stream of the session
+     * @return status code and body separated by space
+     */
+    private static CompletableFuture<String> get(Session session, String pathQuery) {
+        CompletableFuture<String> response = new CompletableFuture<>();
+        MetaData.Request request = new MetaData.Request("GET", new HttpURI("http://localhost" + pathQuery),
+                                                        HttpVersion.HTTP_2, new HttpFields());
+        Stream.Listener listener = new Stream.Listener.Adapter() {
+            private final StringBuilder text = new StringBuilder();
+
+            @Override
+            public void onHeaders(Stream stream, HeadersFrame frame) {
+                text.append(((MetaData.Response) frame.getMetaData()).getStatus()).append(' ');
+                if (frame.isEndStream()) {
+                    response.complete(text.toString());
+                }
+            }
+
+            @Override
+            public void onData(Stream stream, DataFrame frame, Callback callback) {
+                text.append(BufferUtil.toString(frame.getData(), StandardCharsets.UTF_8));
+                callback.succeeded();
+                if (frame.isEndStream()) {
+                    response.complete(text.toString());
+                }
+            }
+        };
+        session.newStream(new HeadersFrame(request, null, true), new Promise.Adapter<>(), listener);
+        return response;
+    }
+}
@@ -10,16 +10,27 @@ import org.junit.Before;
 import org.junit.Test;
 import ru.vdusanyuk.bank.json.ServiceResponse;
 import ru.vdusanyuk.bank.json.TransferRequest;
+import ru.vdusanyuk.bank.json.TransferStatusResponse;
 import ru.vdusanyuk.bank.dao.BankHolder;
+import ru.vdusanyuk.bank.dao.model.AccountStore;
 import ru.vdusanyuk.bank.rest.EntryPoint;
+import ru.vdusanyuk.bank.rest.MetricsEndpoint;
+import ru.vdusanyuk.bank.rest.MetricsFilter;
+import ru.vdusanyuk.bank.rest.ServiceResponseWriter;
+import ru.vdusanyuk.bank.rest.TransferRequestReader;
 
 import javax.ws.rs.client.Entity;
 import javax.ws.rs.core.Application;
+import javax.ws.rs.core.GenericType;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import java.util.Arrays;
+import java.util.List;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 /**
  * test cases based on Jersy servlet + Jetty container
@@ -28,12 +39,15 @@ import static org.junit.Assert.assertNotEquals;
 public class BankEntryPointTest extends JerseyTest {
     private final static Logger logger = LoggerFactory.getLogger(BankEntryPointTest.class);
     private static String TRANSFER_MONEY_PATH = "/bankService/transfer";
+    private static String TRANSFERS_PATH = "/bankService/transfers";
+    private static String ACCOUNTS_PATH = "/bankService/accounts";
 
     @Override
     public Application configure() {
         enable(TestProperties.LOG_TRAFFIC);
         enable(TestProperties.DUMP_ENTITY);
-        return new ResourceConfig(EntryPoint.class);
+        return new ResourceConfig(EntryPoint.class, MetricsEndpoint.class, MetricsFilter.class,
+                                  ServiceResponseWriter.class, TransferRequestReader.class);
     }
 
     @Before
@@ -85,12 +99,12 @@ public class BankEntryPointTest extends JerseyTest {
         serviceResponse = doAccountRequest(3);
         assertEquals("Should return responseStatus SUCCESS", "SUCCESS", serviceResponse.getResponseStatus());
         assertEquals(67L, (long) serviceResponse.getBalance());
-        bankHolder.getBankAccounts().values().forEach(System.out::println);
+        bankHolder.getAccountStore().forEachAccount(System.out::println);
         checkTotalBalance();
         //wait for asynchronos processing the pending transactions
         Thread.sleep(300);
         //additional check after pending queue processed
-        bankHolder.getBankAccounts().values().forEach(System.out::println);
+        bankHolder.getAccountStore().forEachAccount(System.out::println);
         serviceResponse = doAccountRequest(9L);
         assertEquals("Should return responseStatus SUCCESS", "SUCCESS", serviceResponse.getResponseStatus());
         assertEquals(133L, (long) serviceResponse.getBalance());
@@ -117,6 +131,239 @@ public class BankEntryPointTest extends JerseyTest {
         checkTotalBalance();
     }
 
+    @Test
+    public void testBulkTransfer() {
+        logger.info("Strart testBulkTransfer");
+        List<TransferRequest> transfers = Arrays.asList(new TransferRequest(1L, 2L, 30L),
+                                                        new TransferRequest(1L, 3L, 80L),
+                                                        new TransferRequest(4L, 11L, 10L),
+                                                        new TransferRequest(2L, 1L, 5L));
+        Response output = target(TRANSFERS_PATH).request()
+                .post(Entity.entity(transfers, MediaType.APPLICATION_JSON));
+        assertEquals("should return status 200", 200, output.getStatus());
+        List<ServiceResponse> responses = output.readEntity(new GenericType<List<ServiceResponse>>() {});
+        assertEquals(4, responses.size());
+        assertEquals("SUCCESS", responses.get(0).getResponseStatus());
+        assertEquals(70L, (long) responses.get(0).getBalance());
+        //exceeds balance after the first transfer of the bulk
+        assertEquals("ERROR", responses.get(1).getResponseStatus());
+        assertEquals("ERROR", responses.get(2).getResponseStatus());
+        assertEquals("SUCCESS", responses.get(3).getResponseStatus());
+        assertEquals(125L, (long) responses.get(3).getBalance());
+        assertEquals(75L, (long) doAccountRequest(1L).getBalance());
+        checkTotalBalance();
+    }
+
+    @Test
+    public void testBulkTransferNdjson() {
+        logger.info("Strart testBulkTransferNdjson");
+        String body = "{\"fromAccountNumber\":5,\"toAccountNumber\":6,\"amount\":10}\n"
+                + "{\"fromAccountNumber\":6,\"toAccountNumber\":6,\"amount\":10}\n"
+                + "{\"fromAccountNumber\":6,\"toAccountNumber\":7,\"amount\":110}\n";
+        Response output = target(TRANSFERS_PATH).request()
+                .post(Entity.entity(body, EntryPoint.APPLICATION_NDJSON));
+        assertEquals("should return status 200", 200, output.getStatus());
+        List<ServiceResponse> responses = output.readEntity(new GenericType<List<ServiceResponse>>() {});
+        assertEquals(3, responses.size());
+        assertEquals("SUCCESS", responses.get(0).getResponseStatus());
+        //same account on both sides
+        assertEquals("ERROR", responses.get(1).getResponseStatus());
+        assertEquals("SUCCESS", responses.get(2).getResponseStatus());
+        assertEquals(210L, (long) doAccountRequest(7L).getBalance());
+        checkTotalBalance();
+    }
+
+    @Test
+    public void testBulkTransferTooLarge() {
+        logger.info("Strart testBulkTransferTooLarge");
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i <= 10000; i++) {
+            body.append("{\"fromAccountNumber\":5,\"toAccountNumber\":6,\"amount\":1}\n");
+        }
+        Response output = target(TRANSFERS_PATH).request()
+                .post(Entity.entity(body.toString(), EntryPoint.APPLICATION_NDJSON));
+        assertEquals(413, output.getStatus());
+        assertEquals(100L, (long) doAccountRequest(5L).getBalance());
+        checkTotalBalance();
+    }
+
+    @Test
+    public void testBulkTransferIdempotencyKeys() {
+        logger.info("Strart testBulkTransferIdempotencyKeys");
+        List<TransferRequest> transfers = Arrays.asList(new TransferRequest(1L, 2L, 60L),
+                                                        new TransferRequest(1L, 3L, 30L, "bulk-1-3"),
+                                                        new TransferRequest(2L, 3L, 10L),
+                                                        //retry of the keyed transfer, not a new one
+                                                        new TransferRequest(1L, 3L, 30L, "bulk-1-3"),
+                                                        new TransferRequest(1L, 4L, 5L, "bulk-1-3"),
+                                                        new TransferRequest(1L, 4L, 5L, ""));
+        Response output = target(TRANSFERS_PATH).request()
+                .post(Entity.entity(transfers, MediaType.APPLICATION_JSON));
+        assertEquals("should return status 200", 200, output.getStatus());
+        List<ServiceResponse> responses = output.readEntity(new GenericType<List<ServiceResponse>>() {});
+        assertEquals(6, responses.size());
+        assertEquals("SUCCESS", responses.get(0).getResponseStatus());
+        //the keyed transfer is submitted in its turn, after the first one
+        assertEquals("SUCCESS", responses.get(1).getResponseStatus());
+        assertEquals(10L, (long) responses.get(1).getBalance());
+        assertEquals("SUCCESS", responses.get(2).getResponseStatus());
+        assertEquals(responses.get(1).getTransferId(), responses.get(3).getTransferId());
+        assertEquals("ERROR", responses.get(4).getResponseStatus());
+        assertEquals("ERROR", responses.get(5).getResponseStatus());
+        assertEquals(10L, (long) doAccountRequest(1L).getBalance());
+        assertEquals(140L, (long) doAccountRequest(3L).getBalance());
+        checkTotalBalance();
+    }
+
+    @Test
+    public void testTransferAwaitProcessed() {
+        logger.info("Strart testTransferAwaitProcessed");
+        Response output = target(TRANSFER_MONEY_PATH).queryParam("await", "processed").request()
+                .post(Entity.entity(new TransferRequest(8L, 9L, 30L), MediaType.APPLICATION_JSON));
+        assertEquals("should return status 200", 200, output.getStatus());
+        ServiceResponse response = output.readEntity(ServiceResponse.class);
+        assertEquals("SUCCESS", response.getResponseStatus());
+        assertEquals(70L, (long) response.getBalance());
+        //the response is sent when the transfer is processed, so the balances are saved already
+        AccountStore store = BankHolder.getInstance().getAccountStore();
+        assertEquals(70L, store.get(8L).getSavedBalance());
+        assertEquals(130L, store.get(9L).getSavedBalance());
+
+        output = target(TRANSFER_MONEY_PATH).queryParam("fromAccountNumber", 9L).queryParam("toAccountNumber", 8L)
+                .queryParam("amount", 30L).queryParam("await", "never").request().get();
+        assertEquals(400, output.getStatus());
+        checkTotalBalance();
+    }
+
+    @Test
+    public void testIdempotentRetry() {
+        logger.info("Strart testIdempotentRetry");
+        ServiceResponse first = target(TRANSFER_MONEY_PATH).queryParam("await", "processed").request()
+                .post(Entity.entity(new TransferRequest(6L, 7L, 25L, "retry-6-7"), MediaType.APPLICATION_JSON),
+                      ServiceResponse.class);
+        assertEquals("SUCCESS", first.getResponseStatus());
+        //the retry by header gets the first response, no new transfer
+        ServiceResponse retry = target(TRANSFER_MONEY_PATH).queryParam("fromAccountNumber", 6L)
+                .queryParam("toAccountNumber", 7L).queryParam("amount", 25L).request()
+                .header(EntryPoint.IDEMPOTENCY_KEY_HEADER, "retry-6-7").get(ServiceResponse.class);
+        assertEquals(first.getTransferId(), retry.getTransferId());
+        assertEquals(75L, (long) retry.getBalance());
+        assertEquals(75L, (long) BankHolder.getInstance().getAccount(6L).getBalance());
+        assertEquals(125L, (long) BankHolder.getInstance().getAccount(7L).getBalance());
+
+        ServiceResponse other = target(TRANSFER_MONEY_PATH).queryParam("fromAccountNumber", 6L)
+                .queryParam("toAccountNumber", 7L).queryParam("amount", 25L).request()
+                .header(EntryPoint.IDEMPOTENCY_KEY_HEADER, "retry-6-7-2").get(ServiceResponse.class);
+        assertEquals(50L, (long) other.getBalance());
+
+        //the key of another transfer is not a retry
+        Response reused = target(TRANSFER_MONEY_PATH).queryParam("fromAccountNumber", 6L)
+                .queryParam("toAccountNumber", 7L).queryParam("amount", 5L).request()
+                .header(EntryPoint.IDEMPOTENCY_KEY_HEADER, "retry-6-7").get();
+        assertEquals(422, reused.getStatus());
+        assertEquals("ERROR", reused.readEntity(ServiceResponse.class).getResponseStatus());
+        assertEquals(50L, (long) BankHolder.getInstance().getAccount(6L).getBalance());
+
+        Response output = target(TRANSFER_MONEY_PATH).queryParam("fromAccountNumber", 6L)
+                .queryParam("toAccountNumber", 7L).queryParam("amount", 25L).request()
+                .header(EntryPoint.IDEMPOTENCY_KEY_HEADER, "").get();
+        assertEquals(400, output.getStatus());
+        checkTotalBalance();
+    }
+
+    @Test
+    public void testTransferStatus() {
+        logger.info("Strart testTransferStatus");
+        ServiceResponse response = target(TRANSFER_MONEY_PATH).queryParam("fromAccountNumber", 4L)
+                .queryParam("toAccountNumber", 5L).queryParam("amount", 20L).queryParam("await", "processed")
+                .request().get(ServiceResponse.class);
+        assertEquals("SUCCESS", response.getResponseStatus());
+        assertNotNull(response.getTransferId());
+
+        TransferStatusResponse status = target(TRANSFER_MONEY_PATH + "/" + response.getTransferId()).request()
+                .get(TransferStatusResponse.class);
+        assertEquals("SUCCESS", status.getResponseStatus());
+        assertEquals(4L, (long) status.getFromAccountNumber());
+        assertEquals(5L, (long) status.getToAccountNumber());
+        assertEquals(20L, (long) status.getAmount());
+        assertEquals("PROCESSED", status.getTransferStatus());
+
+        //rejected transfer is looked up too
+        response = target(TRANSFER_MONEY_PATH).queryParam("fromAccountNumber", 4L).queryParam("toAccountNumber", 5L)
+                .queryParam("amount", 1000L).request().get(ServiceResponse.class);
+        assertEquals("ERROR", response.getResponseStatus());
+        status = target(TRANSFER_MONEY_PATH + "/" + response.getTransferId()).request()
+                .get(TransferStatusResponse.class);
+        assertEquals("ERROR", status.getTransferStatus());
+
+        status = target(TRANSFER_MONEY_PATH + "/" + Long.MAX_VALUE).request().get(TransferStatusResponse.class);
+        assertEquals("ERROR", status.getResponseStatus());
+    }
+
+    @Test
+    public void testMetrics() {
+        logger.info("Strart testMetrics");
+        ServiceResponse response = target(TRANSFER_MONEY_PATH).queryParam("fromAccountNumber", 1L)
+                .queryParam("toAccountNumber", 2L).queryParam("amount", 1L).queryParam("await", "processed")
+                .request().get(ServiceResponse.class);
+        assertEquals("SUCCESS", response.getResponseStatus());
+
+        Response output = target("/metrics").request().get();
+        assertEquals("should return status 200", 200, output.getStatus());
+        String metrics = output.readEntity(String.class);
+        assertTrue(metrics, metrics.contains("bank_request_duration_seconds_count{endpoint=\"getTransferMoney\"}"));
+        assertTrue(metrics, metrics.contains("bank_lock_wait_seconds_count{lock=\"account\"}"));
+        assertTrue(metrics, metrics.contains("bank_transfer_settlement_seconds{quantile=\"0.99\"}"));
+        assertTrue(metrics, metrics.contains("bank_batch_size_count "));
+        assertTrue(metrics, metrics.contains("# TYPE bank_batch_queue_depth gauge"));
+    }
+
+    @Test
+    public void testMultiAccountLookup() {
+        logger.info("Strart testMultiAccountLookup");
+        Response output = target(ACCOUNTS_PATH).queryParam("ids", "1,3,x,42").request().get();
+        assertEquals("should return status 200", 200, output.getStatus());
+        List<ServiceResponse> responses = output.readEntity(new GenericType<List<ServiceResponse>>() {});
+        assertEquals(4, responses.size());
+        assertEquals(1L, (long) responses.get(0).getAccountNumber());
+        assertEquals(100L, (long) responses.get(0).getBalance());
+        assertEquals(3L, (long) responses.get(1).getAccountNumber());
+        assertEquals("ERROR", responses.get(2).getResponseStatus());
+        assertEquals("ERROR", responses.get(3).getResponseStatus());
+
+        output = target(ACCOUNTS_PATH).request()
+                .post(Entity.entity(Arrays.asList(2L, 42L), MediaType.APPLICATION_JSON));
+        assertEquals("should return status 200", 200, output.getStatus());
+        responses = output.readEntity(new GenericType<List<ServiceResponse>>() {});
+        assertEquals(2, responses.size());
+        assertEquals("SUCCESS", responses.get(0).getResponseStatus());
+        assertEquals("ERROR", responses.get(1).getResponseStatus());
+    }
+
+    @Test
+    public void testExportAccounts() {
+        logger.info("Strart testExportAccounts");
+        String ndjson = target(ACCOUNTS_PATH + "/export").request().get(String.class);
+        String[] lines = ndjson.split("\n");
+        assertEquals(10, lines.length);
+        assertTrue(Arrays.asList(lines).contains("{\"accountNumber\":5,\"balance\":100}"));
+
+        Response output = target(ACCOUNTS_PATH + "/export").queryParam("format", "csv").request().get();
+        assertEquals("should return status 200", 200, output.getStatus());
+        assertEquals(EntryPoint.TEXT_CSV, output.getMediaType().toString());
+        lines = output.readEntity(String.class).split("\n");
+        assertEquals(11, lines.length);
+        assertEquals("accountNumber,balance", lines[0]);
+        long total = 0;
+        for (int i = 1; i < lines.length; i++) {
+            total += Long.parseLong(lines[i].split(",")[1]);
+        }
+        assertEquals(1000L, total);
+
+        output = target(ACCOUNTS_PATH + "/export").queryParam("format", "xml").request().get();
+        assertEquals(400, output.getStatus());
+    }
+
     private ServiceResponse doTrasferRequest(long fromAccountNumber, long toAccountNumber, long amount) throws Exception {
         TransferRequest transfer = new TransferRequest(fromAccountNumber, toAccountNumber, amount);
         Response output = target(TRANSFER_MONEY_PATH).request().post(Entity.entity(transfer, MediaType.APPLICATION_JSON));
@@ -0,0 +1,109 @@
+package ru.vdusanyuk.bank.dao;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.vdusanyuk.bank.dao.model.OperationResult;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * test cases for BankHolder with hot account: deposits to account 10 are deferred to batch
+ */
+public class BankHotAccountTest {
+    private final static Logger logger = LoggerFactory.getLogger(BankHotAccountTest.class);
+
+    private final BankHolder bankHolder = BankHolder.getInstance();
+
+    @Before
+    public void setUp() {
+        bankHolder.setHotAccounts(10L);
+    }
+
+    @After
+    public void tearDown() {
+        bankHolder.setLockingMode(LockingMode.GLOBAL);
+        bankHolder.setHotAccounts();
+        bankHolder.initBankAccounts();
+        logger.info("End test");
+    }
+
+    @Test
+    public void testSingleDeposit() throws Exception {
+        for (LockingMode mode : new LockingMode[] {LockingMode.GLOBAL, LockingMode.ACCOUNT}) {
+            bankHolder.setLockingMode(mode);
+            bankHolder.initBankAccounts();
+            assertEquals(0, bankHolder.submitTransfer(3L, 10L, 30L).getCode());
+            //the deposit is seen by reads before it is folded
+            assertEquals(130L, (long) bankHolder.getAccount(10L).getBalance());
+            assertEquals(1000L, (long) bankHolder.getTotalBalance());
+
+            OperationResult result = bankHolder.submitTransfer(4L, 10L, 40L, true).get(10, TimeUnit.SECONDS);
+            assertEquals(0, result.getCode());
+            assertEquals(170L, bankHolder.getAccountStore().get(10L).getSavedBalance());
+            assertEquals(170L, (long) bankHolder.getAccounts(Collections.singletonList(10L))
+                    .get(0).getBalance());
+            //withdraw from hot account is validated as usual
+            assertEquals(0, bankHolder.submitTransfer(10L, 1L, 170L).getCode());
+            assertEquals(1, bankHolder.submitTransfer(10L, 2L, 1L).getCode());
+            assertEquals(1000L, (long) bankHolder.getTotalBalance());
+        }
+    }
+
+    @Test
+    public void testMultithreadDepositsKeepTotal() throws Exception {
+        for (LockingMode mode : new LockingMode[] {LockingMode.GLOBAL, LockingMode.ACCOUNT}) {
+            bankHolder.setLockingMode(mode);
+            bankHolder.initBankAccounts();
+            ExecutorService executor = Executors.newFixedThreadPool(8);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 2000; i++) {
+                futures.add(executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    long from = random.nextInt(10) + 1;
+                    //most of transfers go to the hot account, a few go back from it
+                    long to = from != 10 && random.nextInt(10) > 0 ? 10 : from % 9 + 1;
+                    bankHolder.submitTransfer(from, to, random.nextInt(20) + 1);
+                }));
+                if (i % 100 == 0) {
+                    futures.add(executor.submit(() -> assertEquals(1000L, (long) bankHolder.getTotalBalance())));
+                }
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+            //the last transfer is processed after all the others; withdraw from the hot account is rejected
+            //till its deposits are folded by a batch
+            OperationResult last = bankHolder.submitTransfer(10L, 1L, 1L, true).get(10, TimeUnit.SECONDS);
+            for (int attempt = 0; last.getCode() == 1 && attempt < 100; attempt++) {
+                Thread.sleep(100);
+                last = bankHolder.submitTransfer(10L, 1L, 1L, true).get(10, TimeUnit.SECONDS);
+            }
+            assertEquals(0, last.getCode());
+
+            long total = 0;
+            for (long accountNumber = 1; accountNumber <= 10; accountNumber++) {
+                long balance = bankHolder.getAccount(accountNumber).getBalance();
+                assertTrue(balance >= 0);
+                assertEquals(balance, bankHolder.getAccountStore().get(accountNumber).getSavedBalance());
+                total += balance;
+            }
+            assertEquals(1000L, total);
+            assertEquals(1000L, (long) bankHolder.getTotalBalance());
+        }
+    }
+}
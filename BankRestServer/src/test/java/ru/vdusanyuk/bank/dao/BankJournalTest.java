@@ -0,0 +1,90 @@
+package ru.vdusanyuk.bank.dao;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import ru.vdusanyuk.bank.dao.journal.JournalRecord;
+import ru.vdusanyuk.bank.dao.model.OperationResult;
+import ru.vdusanyuk.bank.dao.model.TransferStatus;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * test cases for write-ahead journal of BankHolder: the transfer is committed only if it is journaled
+ */
+public class BankJournalTest {
+
+    /**
+     * segment of 4 records, so that the journal rolls over to a new segment file often
+     */
+    private static final long SEGMENT_SIZE = JournalRecord.SIZE * 4;
+
+    private Path directory;
+
+    @Before
+    public void setUp() throws IOException {
+        //the singleton is created without journal before the journal settings of the test
+        BankHolder.getInstance();
+        directory = Files.createTempDirectory("bank-journal");
+        System.setProperty("bank.journal.dir", directory.toString());
+        System.setProperty("bank.journal.segmentSize", String.valueOf(SEGMENT_SIZE));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        System.clearProperty("bank.journal.dir");
+        System.clearProperty("bank.journal.segmentSize");
+        if (Files.exists(directory)) {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    @Test
+    public void testRecoveryFromJournal() throws Exception {
+        BankHolder bank = new BankHolder(false);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(0, bank.submitTransfer(1L, 2L, 3L).getCode());
+        }
+        assertEquals(0, bank.submitTransfer(2L, 3L, 5L, true).get(10, TimeUnit.SECONDS).getCode());
+
+        BankHolder recovered = new BankHolder(false);
+        assertEquals(70L, (long) recovered.getAccount(1L).getBalance());
+        assertEquals(125L, (long) recovered.getAccount(2L).getBalance());
+        assertEquals(105L, (long) recovered.getAccount(3L).getBalance());
+        assertEquals(1000L, (long) recovered.getTotalBalance());
+    }
+
+    @Test
+    public void testTransferNotJournaledIsNotCommitted() throws IOException {
+        BankHolder bank = new BankHolder(false);
+        assertEquals(0, bank.submitTransfer(1L, 2L, 10L).getCode());
+        //the next segment file cannot be created without the directory
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(path -> path.toFile().delete());
+        }
+        Files.delete(directory);
+
+        OperationResult rejected = null;
+        for (int i = 0; i < 4 && rejected == null; i++) {
+            OperationResult result = bank.submitTransfer(1L, 2L, 10L);
+            if (result.getCode() != 0) {
+                rejected = result;
+            }
+        }
+        assertEquals(2, rejected.getCode());
+        assertEquals(TransferStatus.ERROR, bank.getTransfer(rejected.getTransferId()).getStatus());
+        //nothing of the rejected transfer is published or processed
+        long withdrawn = 100L - bank.getAccount(1L).getBalance();
+        assertEquals(100L + withdrawn, (long) bank.getAccount(2L).getBalance());
+        assertEquals(1000L, (long) bank.getTotalBalance());
+    }
+}
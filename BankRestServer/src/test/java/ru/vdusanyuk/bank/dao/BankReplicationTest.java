@@ -0,0 +1,81 @@
+package ru.vdusanyuk.bank.dao;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.vdusanyuk.bank.dao.model.OperationResult;
+import ru.vdusanyuk.bank.replication.ReplicationClient;
+import ru.vdusanyuk.bank.replication.ReplicationServer;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * test cases for read-only replica following the primary BankHolder over localhost
+ */
+public class BankReplicationTest {
+    private final static Logger logger = LoggerFactory.getLogger(BankReplicationTest.class);
+
+    private static final long TIMEOUT_MS = TimeUnit.SECONDS.toMillis(20);
+
+    private final BankHolder primary = BankHolder.getInstance();
+    private ReplicationServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        primary.initBankAccounts();
+        server = new ReplicationServer(primary, 0);
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+        logger.info("End test");
+    }
+
+    @Test
+    public void testReplicaFollowsPrimary() throws Exception {
+        //transfers before the follower connects come with the snapshot
+        assertEquals(0, primary.submitTransfer(1L, 2L, 10L, true).get(10, TimeUnit.SECONDS).getCode());
+        BankHolder replica = new BankHolder(true);
+        try (ReplicationClient ignored = new ReplicationClient(replica, "localhost", server.getPort())) {
+            await(() -> replica.getReplicationLagMs() >= 0);
+            assertEquals(110L, (long) replica.getAccount(2L).getBalance());
+            assertEquals(1000L, (long) replica.getTotalBalance());
+
+            //transfers after it are streamed
+            for (int i = 0; i < 2000; i++) {
+                long from = ThreadLocalRandom.current().nextLong(1, 11);
+                long to = from % 10 + 1;
+                primary.submitTransfer(from, to, ThreadLocalRandom.current().nextLong(1, 20));
+            }
+            primary.submitTransfer(3L, 4L, 1L, true).get(10, TimeUnit.SECONDS);
+            long primaryVersion = primary.getReplicatedVersion();
+            await(() -> replica.getReplicatedVersion() == primaryVersion);
+            for (long accountNumber = 1; accountNumber <= 10; accountNumber++) {
+                assertEquals(primary.getAccount(accountNumber).getBalance(),
+                             replica.getAccount(accountNumber).getBalance());
+            }
+            assertEquals(1000L, (long) replica.getTotalBalance());
+            assertTrue(replica.getReplicationLagMs() < TIMEOUT_MS);
+
+            OperationResult rejected = replica.submitTransfer(1L, 2L, 1L);
+            assertEquals(3, rejected.getCode());
+            assertEquals(3, replica.submitTransfers(new long[]{1L}, new long[]{2L}, new long[]{1L}).get(0).getCode());
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!condition.getAsBoolean()) {
+            assertTrue("replica is not in sync", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+}
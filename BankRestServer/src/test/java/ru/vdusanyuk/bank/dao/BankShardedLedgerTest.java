@@ -0,0 +1,99 @@
+package ru.vdusanyuk.bank.dao;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.vdusanyuk.bank.dao.model.OperationResult;
+import ru.vdusanyuk.bank.dao.model.TransferStatus;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * test cases for BankHolder in SHARDED locking mode
+ */
+public class BankShardedLedgerTest {
+    private final static Logger logger = LoggerFactory.getLogger(BankShardedLedgerTest.class);
+
+    private final BankHolder bankHolder = BankHolder.getInstance();
+
+    @BeforeClass
+    public static void setUpClass() {
+        //several shards whatever the number of cores, the ledger is started when the mode is set first
+        System.setProperty("bank.shards", "4");
+    }
+
+    @Before
+    public void setUp() {
+        bankHolder.setLockingMode(LockingMode.SHARDED);
+        bankHolder.initBankAccounts();
+    }
+
+    @After
+    public void tearDown() {
+        bankHolder.setLockingMode(LockingMode.GLOBAL);
+        logger.info("End test");
+    }
+
+    @Test
+    public void testSingleTransfer() throws Exception {
+        //accounts 3 and 9 are in different shards
+        OperationResult result = bankHolder.submitTransfer(3L, 9L, 33L, true).get(10, TimeUnit.SECONDS);
+        assertEquals(0, result.getCode());
+        assertEquals(67L, (long) result.getBalance());
+        assertEquals(TransferStatus.PROCESSED, bankHolder.getTransfer(result.getTransferId()).getStatus());
+        assertEquals(67L, (long) bankHolder.getAccount(3L).getBalance());
+        assertEquals(133L, (long) bankHolder.getAccount(9L).getBalance());
+        assertEquals(133L, bankHolder.getAccountStore().get(9L).getSavedBalance());
+        assertEquals(1000L, (long) bankHolder.getTotalBalance());
+
+        result = bankHolder.submitTransfer(3L, 9L, 68L);
+        assertEquals(1, result.getCode());
+        assertEquals(67L, (long) result.getBalance());
+    }
+
+    @Test
+    public void testMultithreadTransfersKeepTotalAndNoOverdraft() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(10);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            futures.add(executor.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long from = random.nextInt(10) + 1;
+                long to = (from + random.nextInt(9)) % 10 + 1;
+                bankHolder.submitTransfer(from, to, random.nextInt(50) + 1);
+            }));
+            if (i % 50 == 0) {
+                //transfers in flight between shards are counted in the total
+                futures.add(executor.submit(() -> assertEquals(1000L, (long) bankHolder.getTotalBalance())));
+            }
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+
+        CompletableFuture<List<OperationResult>> bulk = bankHolder.submitTransfers(
+                new long[] {1L, 2L, 3L}, new long[] {2L, 3L, 1L}, new long[] {1L, 1L, 1000L}, true);
+        List<OperationResult> results = bulk.get(10, TimeUnit.SECONDS);
+        assertEquals(3, results.size());
+        assertEquals(1, results.get(2).getCode());
+
+        assertEquals(1000L, (long) bankHolder.getTotalBalance());
+        bankHolder.getAccountStore().forEachAccount(account ->
+                assertTrue("balance should not be negative: " + account, account.getBalance() >= 0));
+    }
+}
@@ -0,0 +1,84 @@
+package ru.vdusanyuk.bank.dao;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.vdusanyuk.bank.dao.model.Account;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * test cases for BankHolder in ACCOUNT (striped) locking mode
+ */
+public class BankStripedLockTest {
+    private final static Logger logger = LoggerFactory.getLogger(BankStripedLockTest.class);
+
+    private final BankHolder bankHolder = BankHolder.getInstance();
+
+    @Before
+    public void setUp() {
+        bankHolder.setLockingMode(LockingMode.ACCOUNT);
+        bankHolder.initBankAccounts();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        //need some time for pending transfers processed
+        Thread.sleep(1000);
+        bankHolder.setLockingMode(LockingMode.GLOBAL);
+        logger.info("End test");
+    }
+
+    @Test
+    public void testSingleTransfer() throws Exception {
+        assertEquals(0, bankHolder.submitTransfer(3L, 9L, 33L).getCode());
+        assertEquals(67L, (long) bankHolder.getAccount(3L).getBalance());
+        assertEquals(133L, (long) bankHolder.getAccount(9L).getBalance());
+        assertEquals(1000L, (long) bankHolder.getTotalBalance());
+        //wait for asynchronos processing the pending transactions
+        Account account = bankHolder.getAccountStore().get(9L);
+        long deadline = System.currentTimeMillis() + 10000;
+        while (account.getSavedBalance() != 133L && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals(133L, account.getSavedBalance());
+        assertEquals(1000L, (long) bankHolder.getTotalBalance());
+    }
+
+    @Test
+    public void testMultithreadTransfersKeepTotalAndNoOverdraft() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(10);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            futures.add(executor.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long from = random.nextInt(10) + 1;
+                long to = from % 10 + 1;
+                bankHolder.submitTransfer(from, to, random.nextInt(50) + 1);
+            }));
+            if (i % 50 == 0) {
+                futures.add(executor.submit(() -> assertEquals(1000L, (long) bankHolder.getTotalBalance())));
+            }
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+
+        assertEquals(1000L, (long) bankHolder.getTotalBalance());
+        bankHolder.getAccountStore().forEachAccount(account ->
+                assertTrue("balance should not be negative: " + account, account.getBalance() >= 0));
+    }
+}
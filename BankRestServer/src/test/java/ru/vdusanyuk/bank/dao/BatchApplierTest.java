@@ -0,0 +1,67 @@
+package ru.vdusanyuk.bank.dao;
+
+import org.junit.Test;
+import ru.vdusanyuk.bank.dao.model.AccountStore;
+import ru.vdusanyuk.bank.dao.model.Transfer;
+import ru.vdusanyuk.bank.dao.model.TransferStatus;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * test cases for BatchApplier
+ */
+public class BatchApplierTest {
+
+    private final BatchApplier applier = new BatchApplier(ForkJoinPool.commonPool());
+
+    @Test
+    public void testNetDeltaPerAccount() {
+        AccountStore store = store(4);
+        List<Transfer> transfers = new ArrayList<>();
+        transfers.add(new Transfer(1L, store.get(1L), store.get(2L), 10L));
+        transfers.add(new Transfer(2L, store.get(2L), store.get(1L), 3L));
+        transfers.add(new Transfer(3L, store.get(1L), store.get(4L), 5L));
+        transfers.add(new Transfer(4L, store.get(3L), store.get(4L), 1L));
+
+        //account 4 is hot, its deposits are applied by the fold
+        assertEquals(3, applier.apply(store, transfers, new HotDeposits(new long[] {4L}, 64)));
+        assertEquals(88L, store.get(1L).getSavedBalance());
+        assertEquals(107L, store.get(2L).getSavedBalance());
+        assertEquals(99L, store.get(3L).getSavedBalance());
+        assertEquals(100L, store.get(4L).getSavedBalance());
+        for (Transfer transfer : transfers) {
+            assertEquals(TransferStatus.PROCESSED, transfer.getStatus());
+        }
+    }
+
+    @Test
+    public void testParallelApply() {
+        int accountCount = 10000;
+        AccountStore store = store(accountCount);
+        List<Transfer> transfers = new ArrayList<>();
+        for (long accountNumber = 1; accountNumber <= accountCount; accountNumber++) {
+            long to = accountNumber % accountCount + 1;
+            transfers.add(new Transfer(accountNumber, store.get(accountNumber), store.get(to), accountNumber));
+        }
+        assertEquals(accountCount, applier.apply(store, transfers, new HotDeposits(new long[0], 64)));
+        long total = 0;
+        for (long accountNumber = 1; accountNumber <= accountCount; accountNumber++) {
+            long expected = 100L - accountNumber + (accountNumber == 1 ? accountCount : accountNumber - 1);
+            assertEquals(expected, store.get(accountNumber).getSavedBalance());
+            total += store.get(accountNumber).getSavedBalance();
+        }
+        assertEquals(100L * accountCount, total);
+    }
+
+    private static AccountStore store(int accountCount) {
+        AccountStore store = new AccountStore(accountCount);
+        for (long accountNumber = 1; accountNumber <= accountCount; accountNumber++) {
+            store.add(accountNumber, 100L);
+        }
+        return store;
+    }
+}
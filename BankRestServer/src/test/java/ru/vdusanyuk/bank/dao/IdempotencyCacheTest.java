@@ -0,0 +1,73 @@
+package ru.vdusanyuk.bank.dao;
+
+import org.junit.Test;
+import ru.vdusanyuk.bank.dao.model.OperationResult;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * test cases for IdempotencyCache
+ */
+public class IdempotencyCacheTest {
+
+    private final AtomicInteger submitted = new AtomicInteger();
+
+    @Test
+    public void testReplayAndEviction() throws Exception {
+        IdempotencyCache cache = new IdempotencyCache(4, 60_000L);
+        //the retry of pending request gets the same result
+        CompletableFuture<OperationResult> pending = new CompletableFuture<>();
+        CompletableFuture<OperationResult> first = cache.computeIfAbsent("a", 1L, 2L, 10L, () -> {
+            submitted.incrementAndGet();
+            return pending;
+        });
+        assertSame(first, cache.computeIfAbsent("a", 1L, 2L, 10L, this::submit));
+        pending.complete(new OperationResult(0, null, 1L, 90L, 7L));
+        assertEquals(7L, (long) cache.computeIfAbsent("a", 1L, 2L, 10L, this::submit).get().getTransferId());
+        assertEquals(1, submitted.get());
+        assertEquals(2L, cache.getReplays());
+
+        //the key of another transfer is rejected, the first result stays
+        assertEquals(4, cache.computeIfAbsent("a", 1L, 2L, 11L, this::submit).get().getCode());
+        assertEquals(4, cache.computeIfAbsent("a", 1L, 3L, 10L, this::submit).get().getCode());
+        assertEquals(7L, (long) cache.computeIfAbsent("a", 1L, 2L, 10L, this::submit).get().getTransferId());
+        assertEquals(1, submitted.get());
+        assertEquals(2L, cache.getMismatches());
+
+        //overloaded request is submitted again
+        cache.computeIfAbsent("b", 1L, 2L, 10L, () -> CompletableFuture.completedFuture(
+                new OperationResult(2, "Service overloaded", 1L, null)));
+        assertEquals(0, cache.computeIfAbsent("b", 1L, 2L, 10L, this::submit).get().getCode());
+        assertEquals(2, submitted.get());
+
+        //only the latest 4 keys are kept
+        for (String key : new String[] {"c", "d", "e", "f"}) {
+            cache.computeIfAbsent(key, 1L, 2L, 10L, this::submit);
+        }
+        assertEquals(4, cache.size());
+        cache.computeIfAbsent("a", 1L, 2L, 10L, this::submit);
+        assertEquals(7, submitted.get());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testExpiration() throws Exception {
+        IdempotencyCache cache = new IdempotencyCache(4, 1L);
+        cache.computeIfAbsent("a", 1L, 2L, 10L, this::submit);
+        Thread.sleep(5);
+        cache.computeIfAbsent("a", 1L, 2L, 10L, this::submit);
+        assertEquals(2, submitted.get());
+        assertEquals(1, cache.size());
+    }
+
+    private CompletableFuture<OperationResult> submit() {
+        return CompletableFuture.completedFuture(
+                new OperationResult(0, null, 1L, 100L - submitted.incrementAndGet(), (long) submitted.get()));
+    }
+}
@@ -0,0 +1,42 @@
+package ru.vdusanyuk.bank.dao;
+
+import org.junit.Test;
+import ru.vdusanyuk.bank.dao.model.Account;
+import ru.vdusanyuk.bank.dao.model.Transfer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * test cases for RecentTransfers
+ */
+public class RecentTransfersTest {
+
+    private final Account fromAccount = new Account(1L, 100L);
+    private final Account toAccount = new Account(2L, 100L);
+
+    @Test
+    public void testLookupAndEviction() {
+        RecentTransfers recentTransfers = new RecentTransfers(8);
+        Transfer[] transfers = new Transfer[20];
+        for (int id = 1; id < transfers.length; id++) {
+            transfers[id] = new Transfer(id, fromAccount, toAccount, id);
+            recentTransfers.add(transfers[id]);
+        }
+        //only the latest 8 ids are kept
+        for (int id = 1; id < 12; id++) {
+            assertNull(recentTransfers.get(id));
+        }
+        for (int id = 12; id < transfers.length; id++) {
+            assertSame(transfers[id], recentTransfers.get(id));
+        }
+        assertNull(recentTransfers.get(0L));
+        assertNull(recentTransfers.get(-12L));
+        assertNull(recentTransfers.get(27L));
+
+        recentTransfers.clear();
+        assertNull(recentTransfers.get(19L));
+        assertEquals(8, recentTransfers.capacity());
+    }
+}
@@ -0,0 +1,49 @@
+package ru.vdusanyuk.bank.dao.audit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ru.vdusanyuk.bank.util.OverflowPolicy;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * test cases for AuditLog
+ */
+public class AuditLogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testConcurrentRecordsWritten() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("audit.log");
+        //the small buffer makes the producers wait for the writer
+        AuditLog auditLog = new AuditLog(file, 16, OverflowPolicy.BLOCK);
+        IntStream.rangeClosed(1, 10_000).parallel()
+                .forEach(id -> assertTrue(auditLog.record(id, 1L, 2L, id, 0, 100L - id)));
+        auditLog.record(0L, 3L, 42L, 5L, 1, AuditLog.NO_BALANCE);
+        auditLog.close();
+
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        assertEquals(10_001, lines.size());
+        long idSum = 0;
+        for (String line : lines.subList(0, 10_000)) {
+            String[] fields = line.split(",");
+            assertEquals(7, fields.length);
+            idSum += Long.parseLong(fields[1]);
+            assertEquals(fields[1], fields[4]);
+        }
+        assertEquals(50_005_000L, idSum);
+        assertTrue(lines.get(10_000), lines.get(10_000).endsWith(",0,3,42,5,1,"));
+        assertEquals(0, auditLog.getBacklog());
+        assertEquals(0, auditLog.getDropped());
+    }
+}
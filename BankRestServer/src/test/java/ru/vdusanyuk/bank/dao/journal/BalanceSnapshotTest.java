@@ -0,0 +1,73 @@
+package ru.vdusanyuk.bank.dao.journal;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * test cases for BalanceSnapshot
+ */
+public class BalanceSnapshotTest {
+
+    private static final int ACCOUNTS = 100_000;
+
+    private Path directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("balance-snapshot");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testWriteAndRead() {
+        assertNull(BalanceSnapshot.read(directory, (accountNumber, balance) -> { }));
+
+        BalanceSnapshot written = BalanceSnapshot.write(directory, 42L, 77L, handler -> {
+            for (long n = 1; n <= ACCOUNTS; n++) {
+                handler.accept(n, n * 3);
+            }
+        });
+        assertEquals(ACCOUNTS, written.getAccountCount());
+
+        Map<Long, Long> balances = new HashMap<>();
+        BalanceSnapshot read = BalanceSnapshot.read(directory, balances::put);
+        assertEquals(42L, read.getVersion());
+        assertEquals(77L, read.getLastTransferId());
+        assertEquals(ACCOUNTS, read.getAccountCount());
+        assertEquals(ACCOUNTS, balances.size());
+        assertEquals(Long.valueOf(3L * ACCOUNTS), balances.get((long) ACCOUNTS));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testCorruptedSnapshotIsRejected() throws IOException {
+        BalanceSnapshot.write(directory, 1L, 1L, handler -> {
+            handler.accept(1L, 100L);
+            handler.accept(2L, 100L);
+        });
+        try (RandomAccessFile file = new RandomAccessFile(directory.resolve(BalanceSnapshot.FILE_NAME).toFile(), "rw")) {
+            //balance of the first entry, after 32 bytes of header and 8 bytes of account number
+            file.seek(40);
+            file.writeLong(1_000L);
+        }
+        BalanceSnapshot.read(directory, (accountNumber, balance) -> { });
+    }
+}
@@ -0,0 +1,150 @@
+package ru.vdusanyuk.bank.dao.journal;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * test cases for TransferJournal
+ */
+public class TransferJournalTest {
+
+    private static final int THREADS = 8;
+    private static final int RECORDS_PER_THREAD = 500;
+    /**
+     * small segments to make appends roll over many segment files
+     */
+    private static final long SEGMENT_SIZE = JournalRecord.SIZE * 100;
+
+    private Path directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("transfer-journal");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testConcurrentAppendAndReplayAfterReopen() throws Exception {
+        TransferJournal journal = new TransferJournal(directory, SEGMENT_SIZE);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            executor.execute(() -> {
+                for (int i = 0; i < RECORDS_PER_THREAD; i++) {
+                    long id = thread * RECORDS_PER_THREAD + i + 1;
+                    journal.append(new JournalRecord(id, id, thread, thread + 1, id * 10));
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        journal.sync();
+        journal.close();
+
+        TransferJournal reopened = new TransferJournal(directory, SEGMENT_SIZE);
+        Set<Long> ids = new HashSet<>();
+        long end = reopened.replay(record -> {
+            assertEquals(record.getTransferId() * 10, record.getAmount());
+            assertEquals(record.getFromAccountNumber() + 1, record.getToAccountNumber());
+            ids.add(record.getTransferId());
+        });
+        assertEquals(THREADS * RECORDS_PER_THREAD, ids.size());
+        assertEquals((long) THREADS * RECORDS_PER_THREAD * JournalRecord.SIZE, end);
+
+        //new records go after the recovered ones
+        reopened.append(new JournalRecord(0L, 0L, 1L, 2L, 5L));
+        reopened.sync();
+        List<JournalRecord> records = new ArrayList<>();
+        reopened.replay(records::add);
+        assertEquals(THREADS * RECORDS_PER_THREAD + 1, records.size());
+        assertEquals(5L, records.get(records.size() - 1).getAmount());
+    }
+
+    @Test
+    public void testCorruptedRecordIsSkipped() throws Exception {
+        TransferJournal journal = new TransferJournal(directory, SEGMENT_SIZE);
+        for (long id = 1; id <= 3; id++) {
+            journal.append(new JournalRecord(id, id, 1L, 2L, 10L));
+        }
+        journal.close();
+        //damage amount of the second record
+        try (RandomAccessFile file = new RandomAccessFile(directory.resolve("journal-00000000.log").toFile(), "rw")) {
+            file.seek(JournalRecord.SIZE + 40);
+            file.writeLong(1_000_000L);
+        }
+
+        List<Long> ids = new ArrayList<>();
+        new TransferJournal(directory, SEGMENT_SIZE).replay(record -> ids.add(record.getTransferId()));
+        assertEquals(2, ids.size());
+        assertEquals(Long.valueOf(1L), ids.get(0));
+        assertEquals(Long.valueOf(3L), ids.get(1));
+    }
+
+    @Test
+    public void testSyncMapsNextSegmentAhead() {
+        TransferJournal journal = new TransferJournal(directory, SEGMENT_SIZE);
+        for (long id = 1; id <= 40; id++) {
+            journal.append(new JournalRecord(id, id, 1L, 2L, 10L));
+        }
+        journal.sync();
+        assertFalse(Files.exists(directory.resolve("journal-00000001.log")));
+        for (long id = 41; id <= 60; id++) {
+            journal.append(new JournalRecord(id, id, 1L, 2L, 10L));
+        }
+        //the current segment is half written, the append crossing into the next one finds it mapped
+        journal.sync();
+        assertTrue(Files.exists(directory.resolve("journal-00000001.log")));
+        journal.close();
+
+        List<Long> ids = new ArrayList<>();
+        TransferJournal reopened = new TransferJournal(directory, SEGMENT_SIZE,
+                                                       record -> ids.add(record.getTransferId()));
+        assertEquals(60, ids.size());
+        assertEquals(60L * JournalRecord.SIZE, reopened.getWritePosition());
+    }
+
+    @Test
+    public void testTruncateBeforePosition() {
+        TransferJournal journal = new TransferJournal(directory, SEGMENT_SIZE);
+        for (long id = 1; id <= 250; id++) {
+            journal.append(new JournalRecord(id, id, 1L, 2L, 10L));
+        }
+        //the third segment holds records 201..250 and is kept
+        journal.truncateBefore(journal.getWritePosition());
+        journal.append(new JournalRecord(251L, 251L, 1L, 2L, 10L));
+        journal.close();
+
+        //the records are recovered by the same pass that finds the write position
+        List<Long> ids = new ArrayList<>();
+        TransferJournal reopened = new TransferJournal(directory, SEGMENT_SIZE,
+                                                       record -> ids.add(record.getTransferId()));
+        assertEquals(51, ids.size());
+        assertEquals(Long.valueOf(201L), ids.get(0));
+        assertEquals(251L * JournalRecord.SIZE, reopened.getWritePosition());
+    }
+}
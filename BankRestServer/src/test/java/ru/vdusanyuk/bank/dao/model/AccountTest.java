@@ -0,0 +1,114 @@
+package ru.vdusanyuk.bank.dao.model;
+
+import org.junit.Test;
+import ru.vdusanyuk.bank.dao.VersionClock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * test cases for Account balances kept in AccountStore
+ */
+public class AccountTest {
+
+    @Test
+    public void testCommittedAndSavedBalance() {
+        Account from = new Account(1L, 100L);
+        Account to = new Account(2L, 100L);
+        Transfer transfer = new Transfer(1L, from, to, 30L);
+
+        assertEquals(70L, (long) from.addPendingTransaction(transfer, true).getBalance());
+        assertEquals(130L, (long) to.addPendingTransaction(transfer, false).getBalance());
+        //validated transfer is not seen till it is committed
+        assertEquals(100L, from.getBalance());
+        assertEquals(100L, to.getBalance());
+
+        from.commitPendingTransaction(transfer, true, 1L, VersionClock.NO_PINNED_VERSION);
+        to.commitPendingTransaction(transfer, false, 1L, VersionClock.NO_PINNED_VERSION);
+        transfer.setStatus(TransferStatus.PENDING);
+        assertEquals(70L, from.getBalance());
+        assertEquals(130L, to.getBalance());
+        assertEquals(100L, from.getSavedBalance());
+
+        from.applyPendingTransactions();
+        to.applyPendingTransactions();
+        assertEquals(70L, from.getSavedBalance());
+        assertEquals(130L, to.getSavedBalance());
+        assertEquals(70L, from.getBalance());
+        assertEquals(130L, to.getBalance());
+    }
+
+    @Test
+    public void testWithdrawValidationCountsPendingTransfers() {
+        Account from = new Account(1L, 100L);
+        Account to = new Account(2L, 100L);
+
+        Transfer first = new Transfer(1L, from, to, 60L);
+        assertEquals(0, from.addPendingTransaction(first, true).getCode());
+        from.commitPendingTransaction(first, true, 1L, VersionClock.NO_PINNED_VERSION);
+        OperationResult result = from.addPendingTransaction(new Transfer(2L, from, to, 50L), true);
+        assertEquals(1, result.getCode());
+        assertEquals(40L, (long) result.getBalance());
+        assertEquals(0, from.addPendingTransaction(new Transfer(3L, from, to, 40L), true).getCode());
+    }
+
+    @Test
+    public void testCommittedBalanceHistoryKeptForPinnedVersion() {
+        Account from = new Account(1L, 100L);
+        Account to = new Account(2L, 100L);
+        for (long version = 1; version <= 3; version++) {
+            Transfer transfer = new Transfer(version, from, to, 10L);
+            from.addPendingTransaction(transfer, true);
+            to.addPendingTransaction(transfer, false);
+            //snapshot pinned at version 1 is still in use
+            from.commitPendingTransaction(transfer, true, version, 1L);
+            to.commitPendingTransaction(transfer, false, version, 1L);
+        }
+        assertEquals(90L, from.getCommittedBalance(1L));
+        assertEquals(80L, from.getCommittedBalance(2L));
+        assertEquals(70L, from.getCommittedBalance(3L));
+        assertEquals(120L, to.getCommittedBalance(2L));
+
+        //no snapshot pinned any more: the history is dropped, any version reads the latest balance
+        Transfer transfer = new Transfer(4L, from, to, 10L);
+        from.addPendingTransaction(transfer, true);
+        from.commitPendingTransaction(transfer, true, 4L, VersionClock.NO_PINNED_VERSION);
+        assertEquals(60L, from.getCommittedBalance(4L));
+        assertEquals(60L, from.getCommittedBalance(1L));
+    }
+
+    @Test
+    public void testHistoryPrunedWhenReadersAreGone() {
+        AccountStore store = new AccountStore(2);
+        int index = store.add(1L, 100L);
+        int other = store.add(2L, 100L);
+        //snapshot pinned at version 1 overlaps commits 2 and 3
+        store.commit(index, -10L, 2L, 1L);
+        store.commit(index, -10L, 3L, 1L);
+        store.commit(other, 10L, 3L, 1L);
+
+        store.pruneHistory(1L);
+        assertEquals(100L, store.getCommittedBalance(index, 1L));
+        assertEquals(90L, store.getCommittedBalance(index, 2L));
+        store.pruneHistory(2L);
+        assertEquals(90L, store.getCommittedBalance(index, 1L));
+        assertEquals(100L, store.getCommittedBalance(other, 2L));
+
+        //the reader is gone: no history left, any version reads the latest balance
+        store.pruneHistory(3L);
+        assertEquals(80L, store.getCommittedBalance(index, 1L));
+        assertEquals(110L, store.getCommittedBalance(other, 1L));
+    }
+
+    @Test
+    public void testStoreLookupAndGrowth() {
+        AccountStore store = new AccountStore(2);
+        for (long accountNumber = 1; accountNumber <= 1000; accountNumber++) {
+            assertEquals(accountNumber - 1, store.add(accountNumber * 7919, accountNumber));
+        }
+        assertEquals(1000, store.size());
+        assertEquals(500L, store.get(500L * 7919).getBalance());
+        assertEquals(-1, store.indexOf(3L));
+        assertNull(store.get(3L));
+    }
+}
@@ -0,0 +1,60 @@
+package ru.vdusanyuk.bank.metrics;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * test cases for Histogram and Metrics exposition
+ */
+public class HistogramTest {
+
+    @Test
+    public void testBuckets() {
+        for (long value : new long[] {0, 1, 7, 8, 15, 16, 17, 1000, 123_456_789L, (1L << 44) - 1}) {
+            int bucket = Histogram.bucketOf(value);
+            assertTrue(Histogram.lowestValueOf(bucket) <= value);
+            assertTrue(Histogram.highestValueOf(bucket) >= value);
+            //relative error is below 1/8
+            assertTrue(Histogram.highestValueOf(bucket) - Histogram.lowestValueOf(bucket) <= value / 8);
+        }
+    }
+
+    @Test
+    public void testQuantiles() {
+        Histogram histogram = new Histogram();
+        IntStream.rangeClosed(1, 10_000).parallel().forEach(histogram::record);
+        histogram.record(-5);
+
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(10_001, snapshot.getCount());
+        assertEquals(50_005_000L, snapshot.getSum());
+        assertEquals(10_000, snapshot.getMax());
+        assertEquals(10_000, snapshot.valueAtQuantile(1.0));
+        long median = snapshot.valueAtQuantile(0.5);
+        assertTrue("median " + median, median >= 5_000 && median <= 5_000 * 9 / 8);
+        long p99 = snapshot.valueAtQuantile(0.99);
+        assertTrue("p99 " + p99, p99 >= 9_900 && p99 <= 10_000);
+        assertEquals(0, new Histogram().snapshot().valueAtQuantile(0.5));
+    }
+
+    @Test
+    public void testPrometheusFormat() throws Exception {
+        Metrics metrics = new Metrics();
+        metrics.histogram("test_latency_seconds", "Test latency", Metrics.NANOS, "endpoint", "a").record(2_000_000);
+        metrics.gauge("test_depth", "Test depth", () -> 42);
+
+        StringWriter writer = new StringWriter();
+        metrics.writeTo(writer);
+        String text = writer.toString();
+        assertTrue(text, text.contains("# TYPE test_latency_seconds summary\n"));
+        assertTrue(text, text.contains("test_latency_seconds{endpoint=\"a\",quantile=\"0.5\"} "));
+        assertTrue(text, text.contains("test_latency_seconds_sum{endpoint=\"a\"} 0.002\n"));
+        assertTrue(text, text.contains("test_latency_seconds_count{endpoint=\"a\"} 1\n"));
+        assertTrue(text, text.contains("# TYPE test_depth gauge\ntest_depth 42\n"));
+    }
+}
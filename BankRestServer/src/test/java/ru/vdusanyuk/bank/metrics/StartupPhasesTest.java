@@ -0,0 +1,38 @@
+package ru.vdusanyuk.bank.metrics;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * test cases for StartupPhases and their exposition
+ */
+public class StartupPhasesTest {
+
+    @Test
+    public void testPhases() throws Exception {
+        StartupPhases phases = StartupPhases.getInstance();
+        phases.mainStarted();
+        long now = System.nanoTime();
+        phases.record("slow", now - TimeUnit.MILLISECONDS.toNanos(250));
+        phases.record("fast", now - TimeUnit.MILLISECONDS.toNanos(20));
+        phases.responseReady();
+
+        assertTrue(phases.getPhaseMillis("slow") >= 250);
+        assertEquals(-1L, phases.getPhaseMillis("unknown"));
+        //the phases are listed from the fastest
+        assertTrue(phases.toString(), phases.toString().matches("fast = \\d+ ms, slow = \\d+ ms"));
+
+        StringWriter exposition = new StringWriter();
+        Metrics.getInstance().writeTo(exposition);
+        String text = exposition.toString();
+        assertTrue(text.contains("# TYPE bank_startup_phase_milliseconds gauge"));
+        assertTrue(text.contains("bank_startup_phase_milliseconds{phase=\"jvm\"}"));
+        assertTrue(text.contains("bank_startup_phase_milliseconds{phase=\"slow\"} " + phases.getPhaseMillis("slow")));
+        assertTrue(text.contains("bank_startup_first_response_milliseconds "));
+    }
+}
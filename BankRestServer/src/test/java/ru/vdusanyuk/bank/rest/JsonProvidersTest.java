@@ -0,0 +1,128 @@
+package ru.vdusanyuk.bank.rest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Assume;
+import org.junit.Test;
+import ru.vdusanyuk.bank.VirtualThreadPool;
+import ru.vdusanyuk.bank.json.ServiceResponse;
+import ru.vdusanyuk.bank.json.TransferRequest;
+
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.core.MediaType;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * test cases for ServiceResponseWriter and TransferRequestReader against Jackson binding
+ */
+public class JsonProvidersTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ServiceResponseWriter writer = new ServiceResponseWriter();
+    private final TransferRequestReader reader = new TransferRequestReader();
+
+    @Test
+    public void testWriteAsJackson() throws Exception {
+        ServiceResponse withTransfer = new ServiceResponse("SUCCESS", null, 12L, 0L);
+        withTransfer.setTransferId(Long.MAX_VALUE);
+        ServiceResponse[] responses = {
+                new ServiceResponse("SUCCESS", null, 1L, 95L),
+                new ServiceResponse("ERROR", "Balance Not Enough.", null, -1234567890123L),
+                new ServiceResponse("ERROR", "Quote \" and \\ and \n", null, Long.MIN_VALUE),
+                withTransfer
+        };
+        for (ServiceResponse response : responses) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            writer.writeTo(response, ServiceResponse.class, ServiceResponse.class, null,
+                           MediaType.APPLICATION_JSON_TYPE, null, out);
+            assertEquals(mapper.writeValueAsString(response), out.toString("UTF-8"));
+        }
+    }
+
+    @Test
+    public void testRead() throws Exception {
+        TransferRequest request = read(" {\"fromAccountNumber\" : 2,\n\"toAccountNumber\":7, \"amount\":45} ");
+        assertEquals(2L, (long) request.getFromAccountNumber());
+        assertEquals(7L, (long) request.getToAccountNumber());
+        assertEquals(45L, (long) request.getAmount());
+
+        request = read("{\"amount\":-9223372036854775808,\"fromAccountNumber\":null}");
+        assertEquals(Long.MIN_VALUE, (long) request.getAmount());
+        assertNull(request.getFromAccountNumber());
+        assertNull(request.getToAccountNumber());
+        assertNull(read("{}").getAmount());
+
+        //integer value with fraction or exponent is taken, fractional value is rejected unlike Jackson
+        assertEquals(100L, (long) read("{\"amount\":100.0}").getAmount());
+        assertEquals(100L, (long) read("{\"amount\":1e2}").getAmount());
+        assertEquals(15L, (long) read("{\"amount\":1.5E+1}").getAmount());
+        assertEquals(-3L, (long) read("{\"amount\":-300e-2}").getAmount());
+
+        assertEquals("retry-7f3a", read("{\"amount\":5,\"idempotencyKey\":\"retry-7f3a\"}").getIdempotencyKey());
+        assertNull(read("{\"idempotencyKey\":null}").getIdempotencyKey());
+        String escapedKey = "{\"idempotencyKey\":\"k\\\"\\\\\\/\\n\\u00e9-\u043a\u043b\u044e\u0447\"}";
+        assertEquals(mapper.readValue(escapedKey, TransferRequest.class).getIdempotencyKey(),
+                     read(escapedKey).getIdempotencyKey());
+
+        for (String invalid : new String[] {"", "{", "[]", "{\"amount\":1.5}", "{\"amount\":\"5\"}",
+                "{\"amount\":1.}", "{\"amount\":1e}", "{\"amount\":1e-1}", "{\"amount\":1e19}",
+                "{\"amount\":9223372036854775808}", "{\"amount\":1,}", "{\"amount\":1} x", "{\"other\":1}",
+                "{\"idempotencyKey\":5}", "{\"idempotencyKey\":\"a}", "{\"idempotencyKey\":\"\\x\"}"}) {
+            try {
+                read(invalid);
+                fail("should be rejected: " + invalid);
+            } catch (BadRequestException e) {
+                //expected
+            }
+        }
+    }
+
+    @Test
+    public void testReadAndWriteOnVirtualThreads() throws Exception {
+        Assume.assumeTrue("virtual threads are not supported", VirtualThreadPool.isSupported());
+        VirtualThreadPool pool = new VirtualThreadPool();
+        pool.start();
+        int tasks = 1000;
+        CountDownLatch done = new CountDownLatch(tasks);
+        Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        try {
+            for (int i = 0; i < tasks; i++) {
+                long amount = i + 1;
+                pool.execute(() -> {
+                    try {
+                        TransferRequest request = read("{\"fromAccountNumber\":1,\"toAccountNumber\":2,\"amount\":"
+                                                       + amount + "}");
+                        ServiceResponse response = new ServiceResponse("SUCCESS", null, 1L, request.getAmount());
+                        ByteArrayOutputStream out = new ByteArrayOutputStream();
+                        writer.writeTo(response, ServiceResponse.class, ServiceResponse.class, null,
+                                       MediaType.APPLICATION_JSON_TYPE, null, out);
+                        assertEquals(mapper.writeValueAsString(response), out.toString("UTF-8"));
+                    } catch (Throwable e) {
+                        failures.add(e);
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            }
+            assertTrue(done.await(30, TimeUnit.SECONDS));
+        } finally {
+            pool.stop();
+        }
+        assertTrue(String.valueOf(failures.peek()), failures.isEmpty());
+    }
+
+    private TransferRequest read(String body) throws Exception {
+        return reader.readFrom(TransferRequest.class, TransferRequest.class, null, MediaType.APPLICATION_JSON_TYPE,
+                               null, new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+    }
+}
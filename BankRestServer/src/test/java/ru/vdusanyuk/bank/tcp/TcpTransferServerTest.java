@@ -0,0 +1,90 @@
+package ru.vdusanyuk.bank.tcp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import ru.vdusanyuk.bank.dao.BankHolder;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static ru.vdusanyuk.bank.tcp.BinaryProtocol.*;
+
+/**
+ * test cases for binary protocol over TcpTransferServer
+ */
+public class TcpTransferServerTest {
+
+    private TcpTransferServer server;
+    private TcpTransferClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        BankHolder.getInstance().initBankAccounts(10);
+        server = new TcpTransferServer(BankHolder.getInstance(), 0, 2, 4);
+        client = new TcpTransferClient("localhost", server.getPort());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void testPipelinedRequests() throws Exception {
+        client.send(11L, OP_TRANSFER, FLAG_AWAIT_PROCESSED, 1L, 2L, 30L);
+        client.send(12L, OP_TRANSFER, 0, 3L, 4L, 500L);
+        client.send(13L, OP_TRANSFER, 0, 5L, 5L, 1L);
+        client.send(14L, OP_TRANSFER, 0, 1L, 99L, 1L);
+        client.send(15L, OP_BALANCE, 0, 3L, 0L, 0L);
+        client.send(16L, OP_TOTAL, 0, 0L, 0L, 0L);
+        client.send(17L, 42, 0, 0L, 0L, 0L);
+
+        //responses are matched by correlation id, the awaited transfer is responded after the others
+        Map<Long, TcpTransferClient.Response> responses = new HashMap<>();
+        for (int i = 0; i < 7; i++) {
+            TcpTransferClient.Response response = client.receive();
+            responses.put(response.getCorrelationId(), response);
+        }
+        TcpTransferClient.Response transfer = responses.get(11L);
+        assertEquals(STATUS_SUCCESS, transfer.getStatus());
+        assertEquals(OP_TRANSFER, transfer.getOperation());
+        assertEquals(1L, transfer.getAccountNumber());
+        assertEquals(70L, transfer.getBalance());
+        assertTrue(transfer.getTransferId() > 0);
+        assertEquals(STATUS_BALANCE_NOT_ENOUGH, responses.get(12L).getStatus());
+        assertEquals(100L, responses.get(12L).getBalance());
+        assertEquals(STATUS_INVALID_REQUEST, responses.get(13L).getStatus());
+        assertEquals(STATUS_ACCOUNT_NOT_FOUND, responses.get(14L).getStatus());
+        assertEquals(NO_VALUE, responses.get(14L).getTransferId());
+        assertEquals(STATUS_SUCCESS, responses.get(15L).getStatus());
+        assertEquals(100L, responses.get(15L).getBalance());
+        assertEquals(1000L, responses.get(16L).getBalance());
+        assertEquals(STATUS_UNKNOWN_OPERATION, responses.get(17L).getStatus());
+    }
+
+    @Test
+    public void testManyRequests() throws Exception {
+        //windows of requests larger than the connection buffers
+        int window = 2_000;
+        for (int start = 0; start < 10 * window; start += window) {
+            for (int i = start; i < start + window; i++) {
+                client.send(i, OP_TRANSFER, 0, 1 + i % 10, 1 + (i + 1) % 10, 1L);
+            }
+            //transfers run on several request threads, so the responses come in order of completion
+            BitSet responded = new BitSet();
+            for (int i = start; i < start + window; i++) {
+                TcpTransferClient.Response response = client.receive();
+                assertEquals(STATUS_SUCCESS, response.getStatus());
+                responded.set((int) response.getCorrelationId() - start);
+            }
+            assertEquals(window, responded.cardinality());
+        }
+        client.send(0L, OP_TOTAL, 0, 0L, 0L, 0L);
+        assertEquals(1000L, client.receive().getBalance());
+    }
+}
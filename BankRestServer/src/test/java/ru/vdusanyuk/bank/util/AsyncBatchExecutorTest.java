@@ -0,0 +1,103 @@
+package ru.vdusanyuk.bank.util;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * test cases for AsyncBatchExecutor batch collecting modes
+ */
+public class AsyncBatchExecutorTest {
+
+    private AsyncBatchExecutor<Integer> executor;
+
+    @After
+    public void tearDown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testFixedModeProcessesAllItems() throws Exception {
+        List<Integer> processed = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(250);
+        executor = new AsyncBatchExecutor<>(batch -> consume(batch, processed, done));
+        for (int i = 0; i < 250; i++) {
+            executor.addProcessingItem(i);
+        }
+        assertTrue("all items should be processed", done.await(5, TimeUnit.SECONDS));
+        assertEquals(250, processed.size());
+    }
+
+    @Test
+    public void testAdaptiveModeFlushesBySizeBeforeDeadline() throws Exception {
+        BatchSettings settings = adaptiveSettings(10, 60000);
+        List<Integer> processed = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(10);
+        executor = new AsyncBatchExecutor<>(batch -> consume(batch, processed, done), settings);
+        for (int i = 0; i < 10; i++) {
+            executor.addProcessingItem(i);
+        }
+        assertTrue("batch should be flushed by size", done.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testAdaptiveModeFlushesByDeadline() throws Exception {
+        BatchSettings settings = adaptiveSettings(1000, 50);
+        List<Integer> processed = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(3);
+        executor = new AsyncBatchExecutor<>(batch -> consume(batch, processed, done), settings);
+        long startTime = System.nanoTime();
+        for (int i = 0; i < 3; i++) {
+            executor.addProcessingItem(i);
+        }
+        assertTrue("batch should be flushed by deadline", done.await(5, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - startTime >= TimeUnit.MILLISECONDS.toNanos(40));
+        assertEquals(3, processed.size());
+    }
+
+    @Test
+    public void testAdaptiveModeDrainsBacklogInLargeBatches() throws Exception {
+        BatchSettings settings = adaptiveSettings(10, 10);
+        List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(20000);
+        CountDownLatch started = new CountDownLatch(1);
+        executor = new AsyncBatchExecutor<>(batch -> {
+            batchSizes.add(batch.size());
+            started.countDown();
+            consume(batch, new ArrayList<>(), done);
+        }, settings);
+        //first batch holds the executor while the backlog is growing
+        executor.addProcessingItem(-1);
+        started.await(5, TimeUnit.SECONDS);
+        for (int i = 1; i < 20000; i++) {
+            executor.addProcessingItem(i);
+        }
+        assertTrue("all items should be processed", done.await(10, TimeUnit.SECONDS));
+        assertTrue("backlog should be drained over fixed batch size: " + batchSizes,
+                   batchSizes.stream().anyMatch(size -> size > 10));
+    }
+
+    private static BatchSettings adaptiveSettings(int batchSize, int maxLatencyMs) {
+        BatchSettings settings = new BatchSettings();
+        settings.setMode(BatchingMode.ADAPTIVE);
+        settings.setBatchSize(batchSize);
+        settings.setMaxLatencyMs(maxLatencyMs);
+        return settings;
+    }
+
+    private static void consume(Collection<Integer> batch, List<Integer> processed, CountDownLatch done) {
+        processed.addAll(batch);
+        batch.forEach(item -> done.countDown());
+    }
+}
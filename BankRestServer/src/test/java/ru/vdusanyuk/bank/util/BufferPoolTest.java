@@ -0,0 +1,70 @@
+package ru.vdusanyuk.bank.util;
+
+import org.junit.Assume;
+import org.junit.Test;
+import ru.vdusanyuk.bank.VirtualThreadPool;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * test cases for BufferPool on platform and virtual threads
+ */
+public class BufferPoolTest {
+
+    @Test
+    public void testPlatformThreadKeepsItsBuffer() {
+        BufferPool pool = new BufferPool(16, 2);
+        assertFalse(BufferPool.isVirtual(Thread.currentThread()));
+        byte[] buffer = pool.acquire();
+        assertEquals(16, buffer.length);
+        pool.release(buffer);
+        assertSame(buffer, pool.acquire());
+    }
+
+    @Test
+    public void testVirtualThreadsShareBuffers() throws Exception {
+        Assume.assumeTrue("virtual threads are not supported", VirtualThreadPool.isSupported());
+        BufferPool pool = new BufferPool(16, 1);
+        byte[] first = onVirtualThread(() -> {
+            assertTrue(BufferPool.isVirtual(Thread.currentThread()));
+            byte[] buffer = pool.acquire();
+            //the only shared buffer is taken, so the next one is allocated
+            assertNotSame(buffer, pool.acquire());
+            pool.release(buffer);
+            return buffer;
+        });
+        //a new virtual thread gets the buffer released by the previous one
+        byte[] second = onVirtualThread(() -> {
+            byte[] buffer = pool.acquire();
+            pool.release(buffer);
+            return buffer;
+        });
+        assertSame(first, second);
+    }
+
+    private static byte[] onVirtualThread(Supplier<byte[]> task) throws Exception {
+        VirtualThreadPool threads = new VirtualThreadPool();
+        threads.start();
+        try {
+            CompletableFuture<byte[]> result = new CompletableFuture<>();
+            threads.execute(() -> {
+                try {
+                    result.complete(task.get());
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                }
+            });
+            return result.get(10, TimeUnit.SECONDS);
+        } finally {
+            threads.stop();
+        }
+    }
+}
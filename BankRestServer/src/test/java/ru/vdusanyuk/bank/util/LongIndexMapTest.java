@@ -0,0 +1,50 @@
+package ru.vdusanyuk.bank.util;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * test cases for LongIndexMap
+ */
+public class LongIndexMapTest {
+
+    @Test
+    public void testPutGetAndRehash() {
+        LongIndexMap map = new LongIndexMap(4);
+        for (int i = 0; i < 100_000; i++) {
+            assertEquals(LongIndexMap.NO_VALUE, map.put(key(i), i));
+        }
+        assertEquals(100_000, map.size());
+        for (int i = 0; i < 100_000; i++) {
+            assertEquals(i, map.get(key(i)));
+        }
+        assertEquals(LongIndexMap.NO_VALUE, map.get(1L));
+        assertEquals(LongIndexMap.NO_VALUE, map.get(key(100_000)));
+    }
+
+    @Test
+    public void testOverwriteAndForEach() {
+        LongIndexMap map = new LongIndexMap(10);
+        map.put(0L, 1);
+        map.put(-5L, 2);
+        map.put(Long.MAX_VALUE, 3);
+        assertEquals(2, map.put(-5L, 4));
+        assertEquals(3, map.size());
+        assertEquals(4, map.get(-5L));
+        assertEquals(1, map.get(0L));
+
+        AtomicLong valueSum = new AtomicLong();
+        map.forEach((key, value) -> valueSum.addAndGet(value));
+        assertEquals(8L, valueSum.get());
+    }
+
+    /**
+     * sparse keys, negative ones included
+     */
+    private static long key(int i) {
+        return (i - 50_000) * 1_000_003L;
+    }
+}
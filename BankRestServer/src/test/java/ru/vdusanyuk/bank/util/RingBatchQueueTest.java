@@ -0,0 +1,128 @@
+package ru.vdusanyuk.bank.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * test cases for RingBatchQueue
+ */
+public class RingBatchQueueTest {
+
+    @Test
+    public void testCapacityRoundedToPowerOfTwo() {
+        assertEquals(8, new RingBatchQueue<Integer>(5, OverflowPolicy.REJECT).getCapacity());
+        assertEquals(8, new RingBatchQueue<Integer>(8, OverflowPolicy.REJECT).getCapacity());
+    }
+
+    @Test
+    public void testRejectWhenFullAndDrainInOrder() {
+        RingBatchQueue<Integer> queue = new RingBatchQueue<>(4, OverflowPolicy.REJECT);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(queue.offer(i));
+        }
+        assertFalse("full queue should reject", queue.offer(4));
+        assertEquals(-1L, queue.claim());
+
+        List<Integer> batch = new ArrayList<>();
+        assertEquals(3, queue.drainTo(batch, 3));
+        assertEquals(1, queue.size());
+        assertTrue(queue.offer(5));
+        assertEquals(2, queue.drainTo(batch, 10));
+        assertEquals(5, batch.size());
+        assertEquals(Integer.valueOf(5), batch.get(4));
+        for (int i = 0; i < 4; i++) {
+            assertEquals(Integer.valueOf(i), batch.get(i));
+        }
+    }
+
+    @Test
+    public void testUnpublishedSlotStopsDrainAndReleasedSlotIsSkipped() throws Exception {
+        RingBatchQueue<Integer> queue = new RingBatchQueue<>(8, OverflowPolicy.REJECT);
+        long first = queue.claim();
+        long second = queue.claim();
+        queue.publish(second, 2);
+        List<Integer> batch = new ArrayList<>();
+        assertFalse(queue.awaitItems(10, TimeUnit.MILLISECONDS));
+        assertEquals(0, queue.drainTo(batch, 10));
+        //slot released without item
+        queue.publish(first, null);
+        assertTrue(queue.awaitItems(0, TimeUnit.MILLISECONDS));
+        assertEquals(2, queue.drainTo(batch, 10));
+        assertEquals(1, batch.size());
+        assertEquals(Integer.valueOf(2), batch.get(0));
+    }
+
+    @Test
+    public void testBlockedProducerResumesAfterDrain() throws Exception {
+        RingBatchQueue<Integer> queue = new RingBatchQueue<>(2, OverflowPolicy.BLOCK);
+        queue.offer(1);
+        queue.offer(2);
+        CountDownLatch added = new CountDownLatch(1);
+        Thread producer = new Thread(() -> {
+            queue.offer(3);
+            added.countDown();
+        });
+        producer.start();
+        assertFalse("producer should wait for free slot", added.await(100, TimeUnit.MILLISECONDS));
+        queue.drainTo(new ArrayList<>(), 1);
+        assertTrue("producer should resume", added.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testMultipleProducersSingleConsumer() throws Exception {
+        RingBatchQueue<Long> queue = new RingBatchQueue<>(1024, OverflowPolicy.SPIN);
+        int producers = 4;
+        int itemsPerProducer = 50000;
+        AtomicLong sequence = new AtomicLong();
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        for (int p = 0; p < producers; p++) {
+            executor.submit(() -> {
+                for (int i = 0; i < itemsPerProducer; i++) {
+                    queue.offer(sequence.incrementAndGet());
+                }
+            });
+        }
+        Set<Long> consumed = new HashSet<>();
+        List<Long> batch = new ArrayList<>();
+        long deadline = System.currentTimeMillis() + 20000;
+        while (consumed.size() < producers * itemsPerProducer && System.currentTimeMillis() < deadline) {
+            if (queue.awaitItems(10, TimeUnit.MILLISECONDS)) {
+                batch.clear();
+                queue.drainTo(batch, 256);
+                consumed.addAll(batch);
+            }
+        }
+        executor.shutdown();
+        assertEquals(producers * itemsPerProducer, consumed.size());
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void testClaimSeveralSlots() {
+        RingBatchQueue<Integer> queue = new RingBatchQueue<>(8, OverflowPolicy.REJECT);
+        assertEquals(-1L, queue.claim(9));
+        long first = queue.claim(5);
+        assertEquals(0L, first);
+        assertEquals(-1L, queue.claim(4));
+        for (int i = 0; i < 5; i++) {
+            queue.publish(first + i, i % 2 == 0 ? i : null);
+        }
+        List<Integer> batch = new ArrayList<>();
+        assertEquals(5, queue.drainTo(batch, 10));
+        assertEquals(3, batch.size());
+        assertEquals(5L, queue.claim(8));
+    }
+}